@@ -0,0 +1,109 @@
+package bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/*
+* Malý měřicí nástroj pro benchmarky rasterizerů (bez knihoven, jen JDK)
+*
+* Chová se podobně jako JMH v režimu průměrného času:
+* - zahřívací iterace, které se nepočítají (JIT přeloží měřený kód)
+* - měřené iterace, každá běží aspoň ITERATION_NANOS a počet operací v ní se určí při zahřívání
+* - výsledek je průměrný čas na operaci a rozptyl mezi iteracemi
+* - místo gc profileru se měří alokované bajty na operaci (ThreadMXBean měřícího vlákna)
+*   a počet a čas běhů GC během měření
+*
+* Výsledky měřených operací se sčítají do sink, aby je JIT nemohl zahodit jako mrtvý kód*/
+public final class Bench {
+    private static final long ITERATION_NANOS = 200_000_000L;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+
+    //měřená operace - vrací libovolné číslo, které se "spotřebuje"
+    @FunctionalInterface
+    public interface Operation {
+        long run();
+    }
+
+    private static volatile long sink;
+
+    private final String filter;
+
+    public Bench(String filter) {
+        this.filter = filter;
+    }
+
+    //jestli se benchmark s tímto jménem má spustit (filtr je část jména, jako regex u JMH)
+    public boolean accepts(String name) {
+        return filter == null || name.contains(filter);
+    }
+
+    public static void header() {
+        System.out.printf(Locale.ROOT, "%-48s %14s %10s %14s %8s %8s%n",
+                "benchmark", "ns/op", "± %", "B/op", "gc", "gc ms");
+    }
+
+    public void run(String name, Operation operation) {
+        if (!accepts(name)) return;
+
+        //zahřátí - zároveň se odhadne, kolik operací se vejde do jedné iterace
+        long opsPerIteration = 1;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long ops = 0;
+            long sum = 0;
+            while (System.nanoTime() - start < ITERATION_NANOS) {
+                sum += operation.run();
+                ops++;
+            }
+            sink += sum;
+            opsPerIteration = Math.max(1, ops);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+
+        double[] nanosPerOp = new double[MEASURE_ITERATIONS];
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long sum = 0;
+            long start = System.nanoTime();
+            for (long op = 0; op < opsPerIteration; op++) {
+                sum += operation.run();
+            }
+            nanosPerOp[i] = (double) (System.nanoTime() - start) / opsPerIteration;
+            sink += sum;
+        }
+
+        double bytesPerOp = (double) (threads.getThreadAllocatedBytes(threadId) - allocated)
+                / (opsPerIteration * MEASURE_ITERATIONS);
+        double mean = 0;
+        for (double v : nanosPerOp) mean += v;
+        mean /= MEASURE_ITERATIONS;
+        double variance = 0;
+        for (double v : nanosPerOp) variance += (v - mean) * (v - mean);
+        double errorPercent = mean == 0 ? 0 : 100 * Math.sqrt(variance / (MEASURE_ITERATIONS - 1)) / mean;
+
+        System.out.printf(Locale.ROOT, "%-48s %14.1f %10.1f %14.1f %8d %8d%n",
+                name, mean, errorPercent, bytesPerOp, gcCount() - gcCount, gcMillis() - gcMillis);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,335 @@
+package bench;
+
+import model.BrushTip;
+import model.ColorDistance;
+import model.FillRule;
+import model.LineStyle;
+import model.Point;
+import model.Resampling;
+import rasterizer.*;
+import ui.DrawingPanel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/*
+* Benchmarky rasterizerů a překreslení DrawingPanel
+*
+* Spuštění (bez okna):
+*   java --add-modules jdk.incubator.vector -cp <třídy src a bench> bench.RasterBenchmarks [filtr]
+* filtr je část jména benchmarku, třeba "fill" nebo "line/len=1000"
+*
+* Každý benchmark kreslí do vlastního plátna, které si připraví předem - měří se jen samotné kreslení.
+* Výplně se střídají mezi dvěma barvami, takže každé měření vyplní stejnou oblast znovu*/
+public class RasterBenchmarks {
+    private static final int SIZE = 1024;
+    private static final Color A = Color.RED;
+    private static final Color B = Color.GREEN;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Bench bench = new Bench(args.length > 0 ? args[0] : null);
+        Bench.header();
+
+        lines(bench);
+        circles(bench);
+        polygons(bench);
+        fills(bench);
+        brush(bench);
+        selection(bench);
+        selectionTransforms(bench);
+        mipmaps(bench);
+        paint(bench);
+    }
+
+    private static Raster canvas(int width, int height) {
+        Raster raster = new Raster(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+        raster.fill(Color.BLACK.getRGB());
+        return raster;
+    }
+
+    //délky, tloušťky a všechny styly čáry - čára jde šikmo, aby se střídaly oba směry kroku
+    private static void lines(Bench bench) {
+        LineRasterizer lineRasterizer = new LineRasterizer();
+        LineRasterizer antialiased = new LineRasterizer();
+        antialiased.setAntialiased(true);
+        Raster raster = canvas(SIZE, SIZE);
+        for (int length : new int[]{16, 256, 1000}) {
+            for (int thickness : new int[]{1, 5, 15}) {
+                for (LineStyle style : LineStyle.values()) {
+                    Point p1 = new Point(10, 10);
+                    Point p2 = new Point(10 + length, 10 + length / 3);
+                    bench.run("line/len=" + length + "/t=" + thickness + "/" + style, () -> {
+                        lineRasterizer.drawLine(raster, p1, p2, A, thickness, style);
+                        return raster.takeDamage().width;
+                    });
+                }
+                //vyhlazená plná čára - srovnání s nevyhlazenou SOLID výše
+                Point p1 = new Point(10, 10);
+                Point p2 = new Point(10 + length, 10 + length / 3);
+                bench.run("line/len=" + length + "/t=" + thickness + "/SOLID/aa", () -> {
+                    antialiased.drawLine(raster, p1, p2, A, thickness, LineStyle.SOLID);
+                    return raster.takeDamage().width;
+                });
+            }
+        }
+    }
+
+    private static void circles(Bench bench) {
+        CircleRasterizer circleRasterizer = new CircleRasterizer();
+        CircleRasterizer antialiased = new CircleRasterizer();
+        antialiased.setAntialiased(true);
+        Raster raster = canvas(SIZE, SIZE);
+        Point center = new Point(SIZE / 2, SIZE / 2);
+        for (int radius : new int[]{16, 128, 500}) {
+            for (int thickness : new int[]{1, 8}) {
+                Point edge = new Point(center.x + radius, center.y);
+                bench.run("circle/r=" + radius + "/t=" + thickness, () -> {
+                    circleRasterizer.drawCircle(raster, center, edge, A, thickness, LineStyle.SOLID);
+                    return raster.takeDamage().width;
+                });
+                bench.run("circle/r=" + radius + "/t=" + thickness + "/aa", () -> {
+                    antialiased.drawCircle(raster, center, edge, A, thickness, LineStyle.SOLID);
+                    return raster.takeDamage().width;
+                });
+            }
+            Point edge = new Point(center.x + radius, center.y);
+            bench.run("circle/r=" + radius + "/filled", () -> {
+                circleRasterizer.drawCircle(raster, center, edge, A, 1, LineStyle.SOLID, true);
+                return raster.takeDamage().width;
+            });
+            bench.run("circle/r=" + radius + "/filled/aa", () -> {
+                antialiased.drawCircle(raster, center, edge, A, 1, LineStyle.SOLID, true);
+                return raster.takeDamage().width;
+            });
+        }
+    }
+
+    /*plný polygon - hvězda a laso s tisíci vrcholy (náhodná procházka kolem kruhu)
+    * pro srovnání stará cesta: obrys a flood fill zevnitř*/
+    private static void polygons(Bench bench) {
+        PolygonRasterizer polygonRasterizer = new PolygonRasterizer(new LineRasterizer());
+        FillRasterizer fillRasterizer = new FillRasterizer();
+        Raster raster = canvas(SIZE, SIZE);
+        Random random = new Random(7);
+        for (int n : new int[]{16, 1000, 5000}) {
+            int[] xs = new int[n];
+            int[] ys = new int[n];
+            for (int i = 0; i < n; i++) {
+                double angle = 2 * Math.PI * i / n;
+                double radius = n == 16 ? (i % 2 == 0 ? 450 : 180) : 400 + random.nextInt(60);
+                xs[i] = SIZE / 2 + (int) Math.round(Math.cos(angle) * radius);
+                ys[i] = SIZE / 2 + (int) Math.round(Math.sin(angle) * radius);
+            }
+            for (FillRule rule : FillRule.values()) {
+                bench.run("polygon/n=" + n + "/fill/" + rule, () -> {
+                    polygonRasterizer.fillPolygon(raster, xs, ys, n, A.getRGB(), rule);
+                    return raster.takeDamage().width;
+                });
+            }
+            int[] toggle = {0};
+            bench.run("polygon/n=" + n + "/outline+flood", () -> {
+                Color color = (toggle[0]++ & 1) == 0 ? B : A;
+                polygonRasterizer.clear();
+                for (int i = 0; i < n; i++) {
+                    polygonRasterizer.addPoint(new Point(xs[i], ys[i]));
+                }
+                polygonRasterizer.drawPolygon(raster, color, 1, LineStyle.SOLID, true);
+                fillRasterizer.floodFill(raster, new Point(SIZE / 2, SIZE / 2), color, false);
+                return raster.takeDamage().width;
+            });
+            polygonRasterizer.clear();
+            raster.fill(Color.BLACK.getRGB());
+        }
+    }
+
+    //výplň na prázdném plátně, v bludišti (dlouhé úzké chodby) a v šumu (roztřepené okraje)
+    private static void fills(Bench bench) {
+        FillRasterizer fillRasterizer = new FillRasterizer();
+        Point seed = new Point(1, 1);
+
+        Raster empty = canvas(SIZE, SIZE);
+        Raster maze = canvas(SIZE, SIZE);
+        int wall = Color.WHITE.getRGB();
+        //svislé stěny každých 8 pixelů s průchodem střídavě nahoře a dole - jedna hadovitá chodba
+        for (int x = 4; x < SIZE; x += 8) {
+            boolean gapTop = (x / 8) % 2 == 1;
+            maze.fillRect(x, gapTop ? 4 : 0, 1, SIZE - 4, wall);
+        }
+        Raster noise = canvas(SIZE, SIZE);
+        Random random = new Random(42);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if (random.nextInt(100) < 30) noise.setPixel(x, y, wall);
+            }
+        }
+        noise.setPixel(seed.x, seed.y, Color.BLACK.getRGB());
+
+        for (Raster raster : new Raster[]{empty, maze, noise}) {
+            String name = raster == empty ? "empty" : raster == maze ? "maze" : "noise";
+            for (boolean eightConnected : new boolean[]{false, true}) {
+                int[] toggle = {0};
+                fillRasterizer.floodFill(raster, seed, A, eightConnected);
+                bench.run("fill/" + name + "/" + (eightConnected ? "8" : "4"), () -> {
+                    fillRasterizer.floodFill(raster, seed, (toggle[0]++ & 1) == 0 ? B : A, eightConnected);
+                    return raster.takeDamage().height;
+                });
+                //vrátí oblast na černou pro další variantu
+                fillRasterizer.floodFill(raster, seed, Color.BLACK, eightConnected);
+                raster.takeDamage();
+            }
+        }
+        //výplň s tolerancí malé oblasti (rámeček 32 x 32) na velkém plátně - cena má odpovídat oblasti, ne plátnu
+        Raster large = canvas(4096, 4096);
+        new RectangleRasterizer(new LineRasterizer()).drawRectangle(large, new Point(2000, 2000), new Point(2033, 2033),
+                Color.WHITE, 1, LineStyle.SOLID, false);
+        Point inside = new Point(2016, 2016);
+        int[] toggle = {0};
+        bench.run("fill/tolerance/box32/4096", () -> {
+            fillRasterizer.floodFillTolerance(large, inside, (toggle[0]++ & 1) == 0 ? B : A, 10, ColorDistance.PER_CHANNEL, false);
+            return large.takeDamage().height;
+        });
+    }
+
+    //tah štětcem přes 512 pixelů, jako při rychlém pohybu myši
+    private static void brush(Bench bench) {
+        BrushRasterizer brushRasterizer = new BrushRasterizer();
+        BrushRasterizer antialiased = new BrushRasterizer();
+        antialiased.setAntialiased(true);
+        Raster raster = canvas(SIZE, SIZE);
+        Point from = new Point(100, 100);
+        Point to = new Point(612, 300);
+        Color translucent = new Color(A.getRed(), A.getGreen(), A.getBlue(), 128);
+        for (int thickness : new int[]{1, 9, 31}) {
+            for (BrushTip tip : BrushTip.values()) {
+                bench.run("brush/stroke512/t=" + thickness + "/" + tip, () -> {
+                    brushRasterizer.beginStroke(raster, thickness, tip, A);
+                    brushRasterizer.strokeTo(from);
+                    brushRasterizer.strokeTo(to);
+                    brushRasterizer.endStroke();
+                    return raster.takeDamage().width;
+                });
+            }
+            bench.run("brush/stroke512/t=" + thickness + "/ROUND/aa", () -> {
+                antialiased.beginStroke(raster, thickness, BrushTip.ROUND, A);
+                antialiased.strokeTo(from);
+                antialiased.strokeTo(to);
+                antialiased.endStroke();
+                return raster.takeDamage().width;
+            });
+            bench.run("brush/stroke512/t=" + thickness + "/translucent", () -> {
+                brushRasterizer.beginStroke(raster, thickness, BrushTip.ROUND, translucent);
+                brushRasterizer.strokeTo(from);
+                brushRasterizer.strokeTo(to);
+                brushRasterizer.endStroke();
+                return raster.takeDamage().width;
+            });
+        }
+    }
+
+    /*výběr jako v DrawingPanel - kopie oblasti do obrázku výběru
+    * a vložení zpět: vrácení pixelů pod minulým vložením, záloha cílové oblasti a kopie na nové místo
+    * 1000 x 500 i na plátně 4096 x 4096 - cena má záviset na ploše výběru, ne na velikosti plátna*/
+    private static void selection(Bench bench) {
+        SelectionRasterizer selectionRasterizer = new SelectionRasterizer();
+        for (int canvasSize : new int[]{SIZE, 4096}) {
+            Raster raster = canvas(canvasSize, canvasSize);
+            new CircleRasterizer().drawCircle(raster, new Point(300, 300), new Point(500, 300), A, 20, LineStyle.SOLID);
+            int[][] sizes = canvasSize == SIZE ? new int[][]{{64, 64}, {256, 256}, {512, 512}, {800, 500}} : new int[][]{{1000, 500}};
+            for (int[] size : sizes) {
+                int w = size[0];
+                int h = size[1];
+                String name = (canvasSize == SIZE ? "" : "canvas=" + canvasSize + "/") + w + "x" + h;
+                Rectangle source = new Rectangle(100, 100, w, h);
+                RegionBuffer[] selected = {new RegionBuffer(raster, source)};
+                bench.run("selection/copy/" + name, () -> {
+                    selected[0] = new RegionBuffer(raster, source);
+                    return selected[0].getWidth();
+                });
+                RegionBuffer[] under = {null};
+                int[] offset = {0};
+                bench.run("selection/apply/" + name, () -> {
+                    int dx = 120 + (offset[0]++ & 15);
+                    if (under[0] != null) under[0].restore(raster);
+                    under[0] = selectionRasterizer.pasteSelection(raster, selected[0], dx, 100);
+                    return raster.takeDamage().width;
+                });
+                if (under[0] != null) under[0].restore(raster);
+                raster.takeDamage();
+            }
+        }
+    }
+
+    /*převzorkování výběru 1000 x 500 - zvětšení na dvojnásobek a otočení o 30°
+    * preview je náhled během tažení (nejbližší pixel do znovupoužitého obrázku)*/
+    private static void selectionTransforms(Bench bench) {
+        Raster raster = canvas(SIZE, SIZE);
+        new CircleRasterizer().drawCircle(raster, new Point(300, 300), new Point(500, 300), A, 20, LineStyle.SOLID);
+        RegionBuffer selected = new RegionBuffer(raster, new Rectangle(0, 0, 1000, 500));
+        SelectionTransformer transformer = new SelectionTransformer();
+        double angle = Math.toRadians(30);
+        for (Resampling resampling : Resampling.values()) {
+            bench.run("transform/scale2x/" + resampling, () ->
+                    transformer.transform(selected, 2000, 1000, 0, resampling).getWidth());
+            bench.run("transform/rotate30/" + resampling, () ->
+                    transformer.transform(selected, 1000, 500, angle, resampling).getWidth());
+        }
+        bench.run("transform/preview/rotate30+scale2x", () ->
+                transformer.preview(selected, 2000, 1000, angle).getWidth());
+    }
+
+    /*Mipmapy plátna 4096 x 4096 - postavení všech úrovní (tolik by stál každý oddálený snímek bez mipmap)
+    * a přepočet dlaždic po malé úpravě plátna*/
+    private static void mipmaps(Bench bench) {
+        int size = 4096;
+        Raster raster = canvas(size, size);
+        new CircleRasterizer().drawCircle(raster, new Point(2000, 2000), new Point(3500, 2000), A, 40, LineStyle.SOLID);
+        MipmapPyramid mipmaps = new MipmapPyramid(raster);
+        bench.run("mipmap/build/all", () -> {
+            mipmaps.invalidateAll();
+            return mipmaps.getLevel(MipmapPyramid.MAX_LEVEL).getWidth();
+        });
+        Random random = new Random(7);
+        bench.run("mipmap/update/rect64", () -> {
+            int x = random.nextInt(size - 64);
+            int y = random.nextInt(size - 64);
+            raster.fillRect(x, y, 64, 64, (x & 1) == 0 ? A.getRGB() : B.getRGB());
+            mipmaps.invalidate(x, y, 64, 64);
+            return mipmaps.getLevel(MipmapPyramid.MAX_LEVEL).getWidth();
+        });
+    }
+
+    //paintComponent do obrázku mimo obrazovku - celé okno a malý výřez (jako repaint damage)
+    private static void paint(Bench bench) {
+        int width = 1920;
+        int height = 640;
+        DrawingPanel panel = new DrawingPanel(width, height);
+        panel.setSize(width, height);
+        BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        bench.run("paint/full", () -> {
+            Graphics2D g = screen.createGraphics();
+            panel.paint(g);
+            g.dispose();
+            return screen.getRGB(0, 0);
+        });
+        bench.run("paint/clip64", () -> {
+            Graphics2D g = screen.createGraphics();
+            g.setClip(500, 300, 64, 64);
+            panel.paint(g);
+            g.dispose();
+            return screen.getRGB(500, 300);
+        });
+        //oddálený pohled kreslí hotovou úroveň mipmapy
+        panel.zoomAt(0, 0, -3);
+        bench.run("paint/full/zoom1:8", () -> {
+            Graphics2D g = screen.createGraphics();
+            panel.paint(g);
+            g.dispose();
+            return screen.getRGB(0, 0);
+        });
+        panel.resetView();
+    }
+}
@@ -0,0 +1,74 @@
+import batch.BatchRenderer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/*Spouštění dávkového vykreslování bez okna (třeba na serveru bez displeje)
+* java BatchApp [-j vlákna] [-o výstupní složka] [-m] skript.txt složka ...
+* u složky se vezmou všechny soubory *.txt v ní, formát skriptu popisuje batch.DrawScript
+* -m kreslí do souborů .dtw namapovaných do paměti (MappedRaster) místo PNG - pro obrázky větší než halda
+* vypíše časy každého skriptu a na konci celkovou propustnost*/
+
+
+public class BatchApp {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outputDir = Paths.get("out");
+        boolean mapped = false;
+        List<Path> scripts = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-j" -> threads = Integer.parseInt(args[++i]);
+                case "-o" -> outputDir = Paths.get(args[++i]);
+                case "-m" -> mapped = true;
+                default -> addScripts(Paths.get(args[i]), scripts);
+            }
+        }
+        if (scripts.isEmpty()) {
+            System.err.println("Použití: java BatchApp [-j vlákna] [-o výstupní složka] [-m] skript.txt|složka ...");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        List<BatchRenderer.Result> results = new BatchRenderer(outputDir, threads, mapped).run(scripts, BatchApp::printResult);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failed = 0;
+        long pixels = 0;
+        for (BatchRenderer.Result result : results) {
+            if (result.getError() != null) failed++;
+            pixels += result.getPixels();
+        }
+        System.out.printf(Locale.ROOT, "%d skriptů (%d chyb) za %.2f s na %d vláknech: %.1f skriptů/s, %.1f Mpx/s%n",
+                results.size(), failed, seconds, threads, results.size() / seconds, pixels / seconds / 1e6);
+        if (failed > 0) System.exit(1);
+    }
+
+    private static void addScripts(Path path, List<Path> scripts) throws IOException {
+        if (!Files.isDirectory(path)) {
+            scripts.add(path);
+            return;
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".txt")).sorted().forEach(scripts::add);
+        }
+    }
+
+    private static void printResult(BatchRenderer.Result result) {
+        if (result.getError() != null) {
+            System.out.println(result.getName() + "  CHYBA: " + result.getError().getMessage());
+            return;
+        }
+        System.out.printf(Locale.ROOT, "%s  %d příkazů  načtení %.2f ms  kreslení %.2f ms  zápis %.2f ms%n",
+                result.getName(), result.getCommands(), result.getParseNanos() / 1e6,
+                result.getRenderNanos() / 1e6, result.getWriteNanos() / 1e6);
+    }
+}
@@ -1,5 +1,6 @@
 import javax.swing.*;
 import java.awt.*;
+import metrics.Metrics;
 import ui.DrawingPanel;
 import ui.ToolPanel;
 
@@ -9,6 +10,10 @@ import ui.ToolPanel;
 
 public class DrawingApp {
     public static void main(String[] args) {
+        //s -Ddrawtwo.metrics=true se při ukončení vypíšou histogramy měření (metrics.Metrics)
+        if (Boolean.getBoolean("drawtwo.metrics")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(Metrics.report())));
+        }
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("DrawTwo");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -19,7 +24,16 @@ public class DrawingApp {
                     drawingPanel::setCurrentColor,
                     drawingPanel::setCurrentThickness,
                     drawingPanel::setCurrentStyle,
-                    drawingPanel::setCurrentTool
+                    drawingPanel::setCircleFilled,
+                    drawingPanel::setAntialiased,
+                    drawingPanel::setPolygonFill,
+                    drawingPanel::setResampling,
+                    drawingPanel::setCurrentTip,
+                    drawingPanel::setCurrentOpacity,
+                    drawingPanel::setCurrentTool,
+                    drawingPanel::setFillEightConnected,
+                    drawingPanel::setFillTolerance,
+                    drawingPanel::setFillDistance
                     );
 
             frame.add(toolPanel, BorderLayout.NORTH);
@@ -0,0 +1,189 @@
+package batch;
+
+import rasterizer.MappedRaster;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/*
+* Dávkové vykreslování skriptů bez okna
+*
+* Každý skript je samostatná úloha (načíst, vykreslit, uložit PNG), úlohy běží paralelně
+* na threads vláknech. Každé vlákno má vlastní ScriptRenderer, takže se mezi vlákny nic nesdílí.
+* U každého skriptu se měří čas načtení, kreslení a zápisu zvlášť.
+* Chyba v jednom skriptu ostatní nezastaví - skončí jako Result s chybou,
+* i když je to OutOfMemoryError u obrázku, který se nevejde do haldy
+*
+* S mapped se místo PNG kreslí rovnou do souboru .dtw namapovaného do paměti (MappedRaster),
+* obrázek tak může být větší než halda (sken nebo mapa 50k x 50k pixelů)*/
+public class BatchRenderer {
+    private final Path outputDir;
+    private final int threads;
+    private final boolean mapped;
+    private final ThreadLocal<ScriptRenderer> renderers = ThreadLocal.withInitial(ScriptRenderer::new);
+
+    public BatchRenderer(Path outputDir, int threads) {
+        this(outputDir, threads, false);
+    }
+
+    public BatchRenderer(Path outputDir, int threads, boolean mapped) {
+        if (threads <= 0) throw new IllegalArgumentException("Počet vláken musí být kladný");
+        this.outputDir = outputDir;
+        this.threads = threads;
+        this.mapped = mapped;
+    }
+
+    /*Vykreslí všechny skripty, progress se volá po dokončení každého (z vlákna volajícího)
+    * vrací výsledky ve stejném pořadí jako scripts*/
+    public List<Result> run(List<Path> scripts, Consumer<Result> progress) throws InterruptedException {
+        try {
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ExecutorCompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+            List<Future<Result>> futures = new ArrayList<>(scripts.size());
+            for (Path script : scripts) {
+                futures.add(completion.submit(() -> renderOne(script)));
+            }
+            for (int i = 0; i < scripts.size(); i++) {
+                progress.accept(get(completion.take()));
+            }
+            List<Result> results = new ArrayList<>(futures.size());
+            for (Future<Result> future : futures) {
+                results.add(get(future));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result get(Future<Result> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            //renderOne chyby zachytává sám, sem se dostane jen Error
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Result renderOne(Path script) {
+        String name = script.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        Result result = new Result(name);
+        try {
+            long t0 = System.nanoTime();
+            DrawScript drawScript;
+            try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+                drawScript = DrawScript.parse(name, reader);
+            }
+            long t1 = System.nanoTime();
+            long t2;
+            Path output;
+            if (mapped) {
+                //zápis je zapsání změněných stránek souboru na disk při zavření
+                output = outputDir.resolve(baseName + ".dtw");
+                Files.deleteIfExists(output);
+                try (MappedRaster raster = MappedRaster.create(output, drawScript.getWidth(), drawScript.getHeight())) {
+                    //nový soubor je černý, jiné pozadí se musí vyplnit
+                    int background = drawScript.getBackground().getRGB();
+                    if ((background & 0x00FFFFFF) != 0) raster.fill(background);
+                    renderers.get().draw(drawScript, raster);
+                    t2 = System.nanoTime();
+                }
+            } else {
+                BufferedImage image = renderers.get().render(drawScript);
+                t2 = System.nanoTime();
+                output = outputDir.resolve(baseName + ".png");
+                if (!ImageIO.write(image, "png", output.toFile())) {
+                    throw new IOException("Chybí zapisovač PNG");
+                }
+            }
+            long t3 = System.nanoTime();
+
+            result.commands = drawScript.getCommands().size();
+            result.pixels = (long) drawScript.getWidth() * drawScript.getHeight();
+            result.parseNanos = t1 - t0;
+            result.renderNanos = t2 - t1;
+            result.writeNanos = t3 - t2;
+            result.output = output;
+        } catch (IOException | RuntimeException e) {
+            result.error = e;
+        } catch (OutOfMemoryError e) {
+            //obrázek se nevešel do haldy - padne jen tento skript, jeho pixely už nikdo nedrží a ostatní běží dál
+            result.error = mapped ? e : new OutOfMemoryError("Obrázek se nevejde do haldy (" + e.getMessage()
+                    + "), velké obrázky kreslete s -m do souboru namapovaného do paměti");
+        }
+        return result;
+    }
+
+    //výsledek jednoho skriptu - časy v nanosekundách, error je null, když vše proběhlo
+    public static final class Result {
+        private final String name;
+        private int commands;
+        private long pixels;
+        private long parseNanos;
+        private long renderNanos;
+        private long writeNanos;
+        private Path output;
+        private Throwable error;
+
+        private Result(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCommands() {
+            return commands;
+        }
+
+        public long getPixels() {
+            return pixels;
+        }
+
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        public long getRenderNanos() {
+            return renderNanos;
+        }
+
+        public long getWriteNanos() {
+            return writeNanos;
+        }
+
+        public long getTotalNanos() {
+            return parseNanos + renderNanos + writeNanos;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package batch;
+
+import model.BrushTip;
+import model.FillRule;
+import model.LineStyle;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/*
+* Kreslicí skript pro dávkové vykreslování bez okna
+*
+* Textový formát, jeden příkaz na řádek, řádek začínající # je komentář:
+*   size 800 600            velikost obrázku (musí být první, výchozí 800 x 600)
+*   background #000000      barva pozadí
+*   color #FF0000           barva pro další příkazy (stejně jako v ToolPanel)
+*   thickness 3             tloušťka pro další příkazy
+*   style solid|dashed|dotted
+*   tip round|square        hrot štětce a gumy (výchozí kulatý)
+*   opacity 50              krytí štětce a gumy v procentech (výchozí 100)
+*   antialias on|off        vyhlazování čar, kruhů, polygonů a tahů (výchozí off)
+*   line x1 y1 x2 y2
+*   rect x1 y1 x2 y2 [square]
+*   circle cx cy ex ey [filled]   střed a bod na okraji, jako při tažení myší
+*   polygon x1 y1 x2 y2 x3 y3 ... [evenodd|nonzero]   uzavřený polygon, s pravidlem plný
+*   fill x y [8] [tolerance N] [euclidean]
+*   brush x1 y1 x2 y2 ...   tah štětcem přes body
+*   erase x1 y1 x2 y2 ...   tah gumou přes body
+*
+* Barva, tloušťka, styl, hrot, krytí a vyhlazování se u příkazu zapamatují v okamžiku, kdy se přečte
+* Slovo navíc za příkazem (překlep ve volbě) je chyba, stejně jako chybějící hodnota*/
+public class DrawScript {
+    //druh příkazu - odpovídá nástrojům v ToolType
+    public enum Kind {
+        LINE, RECTANGLE, CIRCLE, POLYGON, FILL, BRUSH, ERASER
+    }
+
+    //jeden příkaz skriptu - souřadnice jsou v args po dvojicích x, y
+    public static final class Command {
+        final Kind kind;
+        final int[] args;
+        final Color color;
+        final int thickness;
+        final LineStyle style;
+        //jen štětec a guma - krytí 0 - 255
+        final BrushTip tip;
+        final int opacity;
+        //vyhlazené čáry, kruhy a tahy
+        final boolean antialiased;
+        //obdélník: čtverec, kruh: plný, výplň: 8-okolí
+        final boolean flag;
+        //jen pro výplň
+        final int tolerance;
+        final boolean euclidean;
+        //jen polygon - plný podle pravidla, null kreslí obrys
+        final FillRule fillRule;
+
+        Command(Kind kind, int[] args, Color color, int thickness, LineStyle style, BrushTip tip, int opacity,
+                boolean antialiased, boolean flag, int tolerance, boolean euclidean, FillRule fillRule) {
+            this.kind = kind;
+            this.args = args;
+            this.color = color;
+            this.thickness = thickness;
+            this.style = style;
+            this.tip = tip;
+            this.opacity = opacity;
+            this.antialiased = antialiased;
+            this.flag = flag;
+            this.tolerance = tolerance;
+            this.euclidean = euclidean;
+            this.fillRule = fillRule;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+    }
+
+    private final String name;
+    private final int width;
+    private final int height;
+    private final Color background;
+    private final List<Command> commands;
+
+    private DrawScript(String name, int width, int height, Color background, List<Command> commands) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.background = background;
+        this.commands = Collections.unmodifiableList(commands);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Color getBackground() {
+        return background;
+    }
+
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    /*Přečte skript z readeru
+    * chyba ve skriptu skončí IllegalArgumentException s názvem skriptu a číslem řádku*/
+    public static DrawScript parse(String name, BufferedReader reader) throws IOException {
+        int width = 800;
+        int height = 600;
+        Color background = Color.BLACK;
+        Color color = Color.WHITE;
+        int thickness = 1;
+        LineStyle style = LineStyle.SOLID;
+        BrushTip tip = BrushTip.ROUND;
+        int opacity = 255;
+        boolean antialiased = false;
+        List<Command> commands = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty() || words[0].startsWith("#")) continue;
+
+            try {
+                switch (words[0].toLowerCase(Locale.ROOT)) {
+                    case "size" -> {
+                        if (!commands.isEmpty()) throw new IllegalArgumentException("size musí být před kreslením");
+                        width = positive(words, 1);
+                        height = positive(words, 2);
+                    }
+                    case "background" -> background = parseColor(word(words, 1));
+                    case "color" -> color = parseColor(word(words, 1));
+                    case "thickness" -> thickness = positive(words, 1);
+                    case "style" -> style = LineStyle.valueOf(word(words, 1).toUpperCase(Locale.ROOT));
+                    case "tip" -> tip = BrushTip.valueOf(word(words, 1).toUpperCase(Locale.ROOT));
+                    case "opacity" -> {
+                        int percent = positive(words, 1);
+                        if (percent > 100) throw new IllegalArgumentException("opacity: krytí je 1 až 100");
+                        opacity = Math.round(percent * 255 / 100f);
+                    }
+                    case "antialias" -> antialiased = switch (word(words, 1).toLowerCase(Locale.ROOT)) {
+                        case "on" -> true;
+                        case "off" -> false;
+                        default -> throw new IllegalArgumentException("antialias: on nebo off");
+                    };
+                    case "line" -> {
+                        int[] args = points(words, 2, 2);
+                        noMoreWords(words, 5);
+                        commands.add(new Command(Kind.LINE, args, color, thickness, style, tip, opacity, antialiased, false, 0, false, null));
+                    }
+                    case "rect" -> commands.add(new Command(Kind.RECTANGLE, points(words, 2, 2), color, thickness, style, tip, opacity, antialiased,
+                            option(words, 5, "square"), 0, false, null));
+                    case "circle" -> commands.add(new Command(Kind.CIRCLE, points(words, 2, 2), color, thickness, style, tip, opacity, antialiased,
+                            option(words, 5, "filled"), 0, false, null));
+                    case "polygon" -> {
+                        int[] args = points(words, 3, -1);
+                        FillRule fillRule = null;
+                        for (int i = 1 + args.length; i < words.length; i++) {
+                            switch (words[i].toLowerCase(Locale.ROOT)) {
+                                case "evenodd" -> fillRule = FillRule.EVEN_ODD;
+                                case "nonzero" -> fillRule = FillRule.NON_ZERO;
+                                default -> throw new IllegalArgumentException("polygon: neznámá volba " + words[i]);
+                            }
+                        }
+                        commands.add(new Command(Kind.POLYGON, args, color, thickness, style, tip, opacity, antialiased, false, 0, false, fillRule));
+                    }
+                    case "brush", "erase" -> {
+                        int[] args = points(words, 1, -1);
+                        noMoreWords(words, 1 + args.length);
+                        commands.add(new Command(words[0].equalsIgnoreCase("brush") ? Kind.BRUSH : Kind.ERASER, args,
+                                color, thickness, style, tip, opacity, antialiased, false, 0, false, null));
+                    }
+                    case "fill" -> {
+                        int tolerance = 0;
+                        boolean eightConnected = false;
+                        boolean euclidean = false;
+                        for (int i = 3; i < words.length; i++) {
+                            switch (words[i].toLowerCase(Locale.ROOT)) {
+                                case "8" -> eightConnected = true;
+                                case "euclidean" -> euclidean = true;
+                                case "tolerance" -> tolerance = number(words, ++i);
+                                default -> throw new IllegalArgumentException("fill: neznámá volba " + words[i]);
+                            }
+                        }
+                        commands.add(new Command(Kind.FILL, new int[]{number(words, 1), number(words, 2)}, color, thickness, style, tip, opacity, antialiased,
+                                eightConnected, tolerance, euclidean, null));
+                    }
+                    default -> throw new IllegalArgumentException("neznámý příkaz " + words[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(name + ":" + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return new DrawScript(name, width, height, background, commands);
+    }
+
+    //souřadnice od words[1] - aspoň min bodů, max -1 znamená libovolně
+    private static int[] points(String[] words, int min, int max) {
+        int count = 0;
+        while (1 + 2 * count + 1 < words.length && isNumber(words[1 + 2 * count]) && isNumber(words[2 + 2 * count])) {
+            count++;
+        }
+        if (count < min || (max != -1 && count > max)) {
+            throw new IllegalArgumentException(words[0] + " potřebuje " + (min == max ? min : "aspoň " + min) + " bodů");
+        }
+        int[] args = new int[2 * count];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Integer.parseInt(words[1 + i]);
+        }
+        return args;
+    }
+
+    private static boolean isNumber(String word) {
+        try {
+            Integer.parseInt(word);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String word(String[] words, int index) {
+        if (index >= words.length) throw new IllegalArgumentException(words[0] + ": chybí hodnota");
+        return words[index];
+    }
+
+    private static int number(String[] words, int index) {
+        return Integer.parseInt(word(words, index));
+    }
+
+    private static int positive(String[] words, int index) {
+        int value = number(words, index);
+        if (value <= 0) throw new IllegalArgumentException(words[0] + ": hodnota musí být kladná");
+        return value;
+    }
+
+    //volitelné slovo na pozici index (square, filled), za ním už nesmí nic být
+    private static boolean option(String[] words, int index, String expected) {
+        boolean present = index < words.length && words[index].equalsIgnoreCase(expected);
+        noMoreWords(words, present ? index + 1 : index);
+        return present;
+    }
+
+    //překlep ve volbě (rect ... sqaure) nebo lichá souřadnice navíc se nesmí tiše zahodit
+    private static void noMoreWords(String[] words, int index) {
+        if (index < words.length) throw new IllegalArgumentException(words[0] + ": neznámá volba " + words[index]);
+    }
+
+    //barva jako #RRGGBB nebo jméno základní barvy (red, green, ...)
+    private static Color parseColor(String text) {
+        if (text.startsWith("#") && text.length() == 7) {
+            return new Color(Integer.parseInt(text.substring(1), 16));
+        }
+        return switch (text.toLowerCase(Locale.ROOT)) {
+            case "white" -> Color.WHITE;
+            case "black" -> Color.BLACK;
+            case "red" -> Color.RED;
+            case "green" -> Color.GREEN;
+            case "blue" -> Color.BLUE;
+            case "yellow" -> Color.YELLOW;
+            case "orange" -> Color.ORANGE;
+            case "magenta" -> Color.MAGENTA;
+            default -> throw new IllegalArgumentException("neznámá barva " + text);
+        };
+    }
+}
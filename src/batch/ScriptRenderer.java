@@ -0,0 +1,84 @@
+package batch;
+
+import model.ColorDistance;
+import model.Point;
+import rasterizer.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/*
+* Vykreslí DrawScript do obrázku přes stejné rasterizery, které používá DrawingPanel
+*
+* Rasterizery si drží stav (polygon body), takže jeden ScriptRenderer patří jednomu vláknu
+* - BatchRenderer má jeden na každé vlákno*/
+public class ScriptRenderer {
+    private final LineRasterizer lineRasterizer = new LineRasterizer();
+    private final RectangleRasterizer rectangleRasterizer = new RectangleRasterizer(lineRasterizer);
+    private final CircleRasterizer circleRasterizer = new CircleRasterizer();
+    private final PolygonRasterizer polygonRasterizer = new PolygonRasterizer(lineRasterizer);
+    private final FillRasterizer fillRasterizer = new FillRasterizer();
+    private final BrushRasterizer brushRasterizer = new BrushRasterizer();
+    private final EraserRasterizer eraserRasterizer = new EraserRasterizer();
+
+    public BufferedImage render(DrawScript script) {
+        BufferedImage image = new BufferedImage(script.getWidth(), script.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Raster raster = new Raster(image);
+        raster.fill(script.getBackground().getRGB());
+        draw(script, raster);
+        return image;
+    }
+
+    /*Nakreslí příkazy skriptu do připravené plochy (pozadí se nevyplňuje)
+    * třeba do MappedRasteru pro obrázky, které se na haldu nevejdou*/
+    public void draw(DrawScript script, PixelSurface surface) {
+        for (DrawScript.Command command : script.getCommands()) {
+            draw(surface, command);
+        }
+    }
+
+    private void draw(PixelSurface raster, DrawScript.Command c) {
+        int[] a = c.args;
+        lineRasterizer.setAntialiased(c.antialiased);
+        circleRasterizer.setAntialiased(c.antialiased);
+        brushRasterizer.setAntialiased(c.antialiased);
+        eraserRasterizer.setAntialiased(c.antialiased);
+        switch (c.kind) {
+            case LINE -> lineRasterizer.drawLine(raster, new Point(a[0], a[1]), new Point(a[2], a[3]), c.color, c.thickness, c.style);
+            case RECTANGLE -> rectangleRasterizer.drawRectangle(raster, new Point(a[0], a[1]), new Point(a[2], a[3]),
+                    c.color, c.thickness, c.style, c.flag);
+            case CIRCLE -> circleRasterizer.drawCircle(raster, new Point(a[0], a[1]), new Point(a[2], a[3]),
+                    c.color, c.thickness, c.style, c.flag);
+            case POLYGON -> {
+                for (int i = 0; i < a.length; i += 2) {
+                    polygonRasterizer.addPoint(new Point(a[i], a[i + 1]));
+                }
+                if (c.fillRule != null) {
+                    polygonRasterizer.fillPolygon(raster, c.color, c.fillRule);
+                } else {
+                    polygonRasterizer.drawPolygon(raster, c.color, c.thickness, c.style, true);
+                }
+                polygonRasterizer.clear();
+            }
+            //výplň jede na jednom vlákně - paralelně se zpracovávají celé skripty
+            case FILL -> fillRasterizer.floodFillTolerance(raster, new Point(a[0], a[1]), c.color, c.tolerance,
+                    c.euclidean ? ColorDistance.EUCLIDEAN : ColorDistance.PER_CHANNEL, c.flag);
+            //celý příkaz je jeden tah - poloprůhledný tah se přes sebe neztmaví
+            case BRUSH -> {
+                brushRasterizer.beginStroke(raster, c.thickness, c.tip,
+                        new Color(c.color.getRed(), c.color.getGreen(), c.color.getBlue(), c.opacity));
+                for (int i = 0; i < a.length; i += 2) {
+                    brushRasterizer.strokeTo(new Point(a[i], a[i + 1]));
+                }
+                brushRasterizer.endStroke();
+            }
+            case ERASER -> {
+                eraserRasterizer.beginStroke(raster, c.thickness, c.tip, c.opacity);
+                for (int i = 0; i < a.length; i += 2) {
+                    eraserRasterizer.eraseTo(new Point(a[i], a[i + 1]));
+                }
+                eraserRasterizer.endStroke();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+//JFR událost jednoho snímku FrameScheduler - kolik vzorků myši se v něm spojilo a odstup od minulého snímku
+@Name("drawtwo.Frame")
+@Label("Frame")
+@Category("DrawTwo")
+@Description("Zpracování vzorků myši v jednom snímku")
+@StackTrace(false)
+public class FrameEvent extends Event {
+    @Label("Pointer Samples")
+    public int samples;
+
+    @Label("Interval")
+    @Timespan(Timespan.NANOSECONDS)
+    public long interval;
+}
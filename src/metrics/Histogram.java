@@ -0,0 +1,95 @@
+package metrics;
+
+import java.util.Arrays;
+
+/*
+* Histogram hodnot (časy v nanosekundách, počty pixelů) s pevnými koši
+*
+* Koše jsou logaritmicko-lineární: hodnoty do 64 mají vlastní koš, každá další mocnina dvou
+* se dělí na 32 košů, takže percentil je přesný na ~3 % a paměť je pevná bez ohledu na počet záznamů
+* (stejná myšlenka jako HdrHistogram). Poslední mocnina dvou s vlastními koši začíná na 2^(MAX_SHIFT + SUB_BITS),
+* hodnoty od 2^(MAX_SHIFT + SUB_BITS + 1) = 2^46 (~ 19,5 hodiny v ns) padnou do posledního koše
+*
+* Zápis i čtení jsou synchronized - zapisuje hlavně vlákno Swingu, čte HUD a výpis*/
+public final class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_SHIFT = 40;
+    private static final int BUCKETS = 2 * SUB_COUNT + MAX_SHIFT * SUB_COUNT;
+
+    private final String unit;
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+    private long last;
+
+    //unit je jednotka hodnot pro výpis - "ns" se vypisuje v milisekundách
+    public Histogram(String unit) {
+        this.unit = unit;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public synchronized void record(long value) {
+        if (value < 0) value = 0;
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        last = value;
+        if (value > max) max = value;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    //naposledy zapsaná hodnota
+    public synchronized long getLast() {
+        return last;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    //hodnota, pod kterou leží podíl q (0 - 1) záznamů, třeba 0.99 pro p99 - střed koše, nejvýš max
+    public synchronized long percentile(double q) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(bucketMiddle(i), max);
+        }
+        return max;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+        last = 0;
+    }
+
+    private static int bucket(long value) {
+        if (value < 2 * SUB_COUNT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        if (shift > MAX_SHIFT) return BUCKETS - 1;
+        return 2 * SUB_COUNT + (shift - 1) * SUB_COUNT + (int) (value >> shift) - SUB_COUNT;
+    }
+
+    private static long bucketMiddle(int index) {
+        if (index < 2 * SUB_COUNT) return index;
+        int shift = (index - 2 * SUB_COUNT) / SUB_COUNT + 1;
+        long sub = (index - 2 * SUB_COUNT) % SUB_COUNT + SUB_COUNT;
+        return (sub << shift) + (1L << (shift - 1));
+    }
+}
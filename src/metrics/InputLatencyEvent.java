@@ -0,0 +1,25 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*JFR událost zpoždění vstupu - od příchodu nejstarší události myši do konce paintComponent,
+* který její výsledek vykreslil*/
+@Name("drawtwo.InputLatency")
+@Label("Input Latency")
+@Category("DrawTwo")
+@Description("Čas od události myši po vykreslení jejího výsledku")
+@StackTrace(false)
+public class InputLatencyEvent extends Event {
+    @Label("Tool")
+    public String tool;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    public long latency;
+}
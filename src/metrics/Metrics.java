@@ -0,0 +1,60 @@
+package metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+* Registr histogramů měření v procesu - doplňuje JFR události, aby šla čísla číst i bez nahrávání
+* (HUD v DrawingPanel, výpis při ukončení s -Ddrawtwo.metrics=true)
+*
+* Jména jsou tečkovaná: input.latency, paint, frame.interval, rasterize.<nástroj>.<operace>...*/
+public final class Metrics {
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    //histogram časů v nanosekundách
+    public static Histogram histogram(String name) {
+        return histogram(name, "ns");
+    }
+
+    public static Histogram histogram(String name, String unit) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new Histogram(unit));
+    }
+
+    public static void record(String name, long nanos) {
+        histogram(name).record(nanos);
+    }
+
+    //všechny histogramy seřazené podle jména
+    public static SortedMap<String, Histogram> all() {
+        return new TreeMap<>(HISTOGRAMS);
+    }
+
+    public static void reset() {
+        for (Histogram histogram : HISTOGRAMS.values()) histogram.reset();
+    }
+
+    //tabulka všech histogramů - počet, p50, p99 a max (časy v ms)
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-40s %10s %12s %12s %12s%n", "metrika", "počet", "p50", "p99", "max"));
+        for (Map.Entry<String, Histogram> entry : all().entrySet()) {
+            Histogram h = entry.getValue();
+            if (h.getCount() == 0) continue;
+            out.append(String.format(Locale.ROOT, "%-40s %10d %12s %12s %12s%n", entry.getKey(), h.getCount(),
+                    format(h, h.percentile(0.5)), format(h, h.percentile(0.99)), format(h, h.getMax())));
+        }
+        return out.toString();
+    }
+
+    //hodnota histogramu s jednotkou - nanosekundy jako milisekundy
+    public static String format(Histogram histogram, long value) {
+        if (histogram.getUnit().equals("ns")) return String.format(Locale.ROOT, "%.2f ms", value / 1e6);
+        return value + " " + histogram.getUnit();
+    }
+}
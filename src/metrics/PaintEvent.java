@@ -0,0 +1,22 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//JFR událost jednoho DrawingPanel.paintComponent - velikost překreslovaného clipu
+@Name("drawtwo.Paint")
+@Label("Paint")
+@Category("DrawTwo")
+@Description("Překreslení části okna v paintComponent")
+@StackTrace(false)
+public class PaintEvent extends Event {
+    @Label("Clip Width")
+    public int width;
+
+    @Label("Clip Height")
+    public int height;
+}
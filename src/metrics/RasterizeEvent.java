@@ -0,0 +1,72 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+* JFR událost jedné operace nástroje (náhled tvaru, tah štětce, výplň, mazání temp plátna...)
+* Zároveň se čas zapíše do histogramu rasterize.<nástroj>.<operace> v Metrics
+*
+* Operace se pojmenuje jednou (typicky statické pole u volajícího) a histogram se přitom najde v Metrics,
+* takže měření za snímek nesestavuje řetězec ani nehledá v mapě:
+*   static final RasterizeEvent.Operation FLOOD_FILL = RasterizeEvent.operation("FILL", "floodFill");
+*   RasterizeEvent event = RasterizeEvent.start(FLOOD_FILL); ... event.finish(pixely);
+* Když JFR nenahrává, commit nic nedělá a zůstane jen zápis do histogramu*/
+@Name("drawtwo.Rasterize")
+@Label("Rasterize")
+@Category("DrawTwo")
+@Description("Kreslení jedné operace nástroje do plátna")
+@StackTrace(false)
+public class RasterizeEvent extends Event {
+    @Label("Tool")
+    String tool;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Pixels Written")
+    long pixels;
+
+    //začátek pro histogram - JFR si měří vlastní čas, transient pole se do události neukládá
+    private transient long startNanos;
+    private transient Histogram histogram;
+
+    //nástroj a operace s už nalezeným histogramem - Metrics.reset histogram jen vynuluje, takže platí pořád
+    public static final class Operation {
+        private final String tool;
+        private final String operation;
+        private final Histogram histogram;
+
+        private Operation(String tool, String operation) {
+            this.tool = tool;
+            this.operation = operation;
+            this.histogram = Metrics.histogram("rasterize." + tool + "." + operation);
+        }
+    }
+
+    public static Operation operation(String tool, String operation) {
+        return new Operation(tool, operation);
+    }
+
+    public static RasterizeEvent start(Operation operation) {
+        RasterizeEvent event = new RasterizeEvent();
+        event.tool = operation.tool;
+        event.operation = operation.operation;
+        event.histogram = operation.histogram;
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    //ukončí měření - pixels je počet zapsaných pixelů během operace
+    public void finish(long pixels) {
+        end();
+        this.pixels = pixels;
+        histogram.record(System.nanoTime() - startNanos);
+        commit();
+    }
+}
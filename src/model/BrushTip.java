@@ -0,0 +1,6 @@
+package model;
+/*
+* Tvar hrotu štětce a gumy - kulatý nebo čtvercový (jako původní razítko) */
+public enum BrushTip {
+    ROUND, SQUARE
+}
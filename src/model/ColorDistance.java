@@ -0,0 +1,8 @@
+package model;
+/*
+* Enumerace pro způsob porovnání barev u výplně s tolerancí
+* PER_CHANNEL - žádný z kanálů R, G, B se neliší o víc než tolerance
+* EUCLIDEAN - vzdálenost barev v prostoru RGB je nejvýš tolerance */
+public enum ColorDistance {
+    PER_CHANNEL, EUCLIDEAN
+}
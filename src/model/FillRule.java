@@ -0,0 +1,8 @@
+package model;
+/*
+* Pravidlo, co je uvnitř plného polygonu
+* EVEN_ODD - bod je uvnitř, když paprsek z něj protne hranice lichým počtem hran (překřížení dělá díry)
+* NON_ZERO - bod je uvnitř, když ho hranice obtáčí nenulově (smyčky ve stejném směru díry nedělají)*/
+public enum FillRule {
+    EVEN_ODD, NON_ZERO
+}
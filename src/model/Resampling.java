@@ -0,0 +1,9 @@
+package model;
+/*
+* Převzorkování při zvětšení a otočení výběru
+* NEAREST - nejbližší pixel (rychlé, hranaté - náhled během tažení)
+* BILINEAR - vážený průměr 2 x 2 okolních pixelů
+* BICUBIC - kubická interpolace 4 x 4 okolních pixelů (Catmull-Rom), nejostřejší*/
+public enum Resampling {
+    NEAREST, BILINEAR, BICUBIC
+}
@@ -0,0 +1,148 @@
+package model;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+* Scéna - seřazený seznam tvarů, které jdou dál upravovat
+*
+* Pořadí tvarů je pořadí kreslení (pozdější navrch). Kvůli rychlému hledání
+* je plátno rozdělené na mřížku buněk CELL_SIZE x CELL_SIZE a každá buňka zná tvary,
+* jejichž obdélník do ní zasahuje. Dotaz na oblast tak projde jen tvary v jejím okolí,
+* ne všech deset tisíc tvarů dokumentu.
+* Buňky se vytvářejí až při prvním tvaru, takže prázdné části velkého plátna nic nestojí*/
+public class Scene {
+    private static final int CELL_SHIFT = 7;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+    private static final Comparator<ShapeRecord> BY_ORDER = Comparator.comparingLong(s -> s.order);
+
+    private final int cellsX;
+    private final int cellsY;
+    private final List<List<ShapeRecord>> cells;
+    private final List<ShapeRecord> shapes = new ArrayList<>();
+    private long nextOrder;
+    private int stamp;
+
+    public Scene(int width, int height) {
+        this.cellsX = (width + CELL_SIZE - 1) >> CELL_SHIFT;
+        this.cellsY = (height + CELL_SIZE - 1) >> CELL_SHIFT;
+        this.cells = new ArrayList<>(Collections.nCopies(cellsX * cellsY, (List<ShapeRecord>) null));
+    }
+
+    //přidá tvar navrch scény
+    public void add(ShapeRecord shape) {
+        shape.order = nextOrder++;
+        shapes.add(shape);
+        index(shape);
+    }
+
+    //vyjme tvar ze scény (třeba na dobu úprav), reinsert ho vrátí na stejné místo v pořadí
+    public void remove(ShapeRecord shape) {
+        if (!shapes.remove(shape)) return;
+        unindex(shape);
+    }
+
+    public void reinsert(ShapeRecord shape) {
+        int position = Collections.binarySearch(shapes, shape, BY_ORDER);
+        if (position >= 0) return;
+        shapes.add(-position - 1, shape);
+        index(shape);
+    }
+
+    //posune nebo změní velikost tvaru, který je ve scéně
+    public void move(ShapeRecord shape, Point start, Point end) {
+        boolean inScene = Collections.binarySearch(shapes, shape, BY_ORDER) >= 0;
+        if (inScene) unindex(shape);
+        shape.setPoints(start, end);
+        if (inScene) index(shape);
+    }
+
+    public boolean contains(ShapeRecord shape) {
+        int position = Collections.binarySearch(shapes, shape, BY_ORDER);
+        return position >= 0 && shapes.get(position) == shape;
+    }
+
+    //tvary, jejichž obdélník zasahuje do area, seřazené v pořadí kreslení
+    public List<ShapeRecord> query(Rectangle area) {
+        List<ShapeRecord> result = new ArrayList<>();
+        int stampNow = ++stamp;
+        forEachCell(area, cell -> {
+            List<ShapeRecord> list = cells.get(cell);
+            if (list == null) return;
+            for (ShapeRecord shape : list) {
+                if (shape.queryStamp != stampNow && shape.getBounds().intersects(area)) {
+                    shape.queryStamp = stampNow;
+                    result.add(shape);
+                }
+            }
+        });
+        result.sort(BY_ORDER);
+        return result;
+    }
+
+    //jestli do obdélníku tvaru nezasahuje žádný tvar nakreslený později (tvar pak jde kreslit rovnou navrch)
+    public boolean isTopmost(ShapeRecord shape) {
+        List<ShapeRecord> around = query(shape.getBounds());
+        return around.isEmpty() || around.get(around.size() - 1).order <= shape.order;
+    }
+
+    //nejvýš položený tvar, jehož obrys je do tolerance pixelů od bodu x, y, nebo null
+    public ShapeRecord shapeAt(int x, int y, int tolerance) {
+        if (x < 0 || y < 0 || (x >> CELL_SHIFT) >= cellsX || (y >> CELL_SHIFT) >= cellsY) return null;
+        List<ShapeRecord> list = cells.get((y >> CELL_SHIFT) * cellsX + (x >> CELL_SHIFT));
+        if (list == null) return null;
+        ShapeRecord top = null;
+        for (ShapeRecord shape : list) {
+            if ((top == null || shape.order > top.order) && shape.hitTest(x, y, tolerance)) top = shape;
+        }
+        return top;
+    }
+
+    public int size() {
+        return shapes.size();
+    }
+
+    public boolean isEmpty() {
+        return shapes.isEmpty();
+    }
+
+    public void clear() {
+        shapes.clear();
+        Collections.fill(cells, null);
+    }
+
+    private void index(ShapeRecord shape) {
+        forEachCell(shape.getBounds(), cell -> {
+            List<ShapeRecord> list = cells.get(cell);
+            if (list == null) {
+                list = new ArrayList<>(4);
+                cells.set(cell, list);
+            }
+            list.add(shape);
+        });
+    }
+
+    private void unindex(ShapeRecord shape) {
+        forEachCell(shape.getBounds(), cell -> {
+            List<ShapeRecord> list = cells.get(cell);
+            if (list != null) list.remove(shape);
+        });
+    }
+
+    //projde buňky mřížky, do kterých obdélník zasahuje (mimo plátno se nic neindexuje)
+    private void forEachCell(Rectangle r, java.util.function.IntConsumer action) {
+        int cx0 = Math.max(r.x, 0) >> CELL_SHIFT;
+        int cy0 = Math.max(r.y, 0) >> CELL_SHIFT;
+        int cx1 = Math.min((r.x + r.width - 1) >> CELL_SHIFT, cellsX - 1);
+        int cy1 = Math.min((r.y + r.height - 1) >> CELL_SHIFT, cellsY - 1);
+        if (r.x + r.width <= 0 || r.y + r.height <= 0) return;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                action.accept(cy * cellsX + cx);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package model;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+
+/*
+* Záznam jednoho nakresleného tvaru (čára, obdélník, kruh) ve scéně
+* Pamatuje si všechno, co je potřeba k jeho znovunakreslení - typ, oba body,
+* barvu, tloušťku, styl, u obdélníku i to, jestli se kreslil jako čtverec (shift), u kruhu, jestli je plný,
+* a jestli se kreslil vyhlazeně - při překreslení scény se tak tvar nezmění, ani když se vyhlazování mezitím přepne
+*
+* Body se mění jen přes Scene.move, aby scéna mohla přeindexovat tvar v mřížce*/
+public class ShapeRecord {
+    private final ToolType type;
+    private Point start;
+    private Point end;
+    private final Color color;
+    private final int thickness;
+    private final LineStyle style;
+    private final boolean squareMode;
+    //jen kruh - plný kruh místo obrysu
+    private final boolean filled;
+    private final boolean antialiased;
+    //pořadí ve scéně - tvary s vyšším pořadím se kreslí navrch
+    long order;
+    //značka posledního dotazu scény, aby se tvar z více buněk mřížky vrátil jen jednou
+    int queryStamp;
+
+    public ShapeRecord(ToolType type, Point start, Point end, Color color, int thickness, LineStyle style,
+                       boolean squareMode, boolean filled, boolean antialiased) {
+        if (type != ToolType.LINE && type != ToolType.RECTANGLE && type != ToolType.CIRCLE) {
+            throw new IllegalArgumentException("Ve scéně můžou být jen čáry, obdélníky a kruhy, ne " + type);
+        }
+        this.type = type;
+        this.start = start;
+        this.end = end;
+        this.color = color;
+        this.thickness = thickness;
+        this.style = style;
+        this.squareMode = squareMode;
+        this.filled = filled;
+        this.antialiased = antialiased;
+    }
+
+    public ToolType getType() {
+        return type;
+    }
+
+    public Point getStart() {
+        return start;
+    }
+
+    public Point getEnd() {
+        return end;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public int getThickness() {
+        return thickness;
+    }
+
+    public LineStyle getStyle() {
+        return style;
+    }
+
+    public boolean isSquareMode() {
+        return squareMode;
+    }
+
+    public boolean isFilled() {
+        return filled;
+    }
+
+    public boolean isAntialiased() {
+        return antialiased;
+    }
+
+    void setPoints(Point start, Point end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /*Jestli bod x, y leží na nakresleném tvaru (s tolerancí v pixelech)
+    * u obdélníku a kruhu se počítá jen obrys, vnitřek tvaru není nakreslený (kromě plného kruhu)*/
+    public boolean hitTest(int x, int y, int tolerance) {
+        double reach = thickness / 2.0 + tolerance;
+        switch (type) {
+            case LINE -> {
+                return segmentDistance(x, y, start.x, start.y, end.x, end.y) <= reach;
+            }
+            case CIRCLE -> {
+                double radius = Math.round(Math.hypot(end.x - start.x, end.y - start.y));
+                double distance = Math.hypot(x - start.x, y - start.y);
+                //tloušťka kruhu jde od poloměru dovnitř, plný kruh se trefí kdekoliv uvnitř
+                return distance <= radius + tolerance && (filled || distance >= radius - thickness - tolerance);
+            }
+            default -> {
+                Rectangle r = getBounds();
+                int pad = thickness + 1;
+                int x1 = r.x + pad;
+                int y1 = r.y + pad;
+                int x2 = r.x + r.width - 1 - pad;
+                int y2 = r.y + r.height - 1 - pad;
+                return segmentDistance(x, y, x1, y1, x2, y1) <= reach || segmentDistance(x, y, x2, y1, x2, y2) <= reach
+                        || segmentDistance(x, y, x2, y2, x1, y2) <= reach || segmentDistance(x, y, x1, y2, x1, y1) <= reach;
+            }
+        }
+    }
+
+    //vzdálenost bodu od úsečky
+    private static double segmentDistance(int px, int py, int x1, int y1, int x2, int y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, ((px - x1) * dx + (py - y1) * dy) / lengthSq));
+        return Math.hypot(px - (x1 + t * dx), py - (y1 + t * dy));
+    }
+
+    /*Obdélník všech pixelů, které tvar může nakreslit
+    * čára a obdélník přesahují body o tloušťku, kruh má střed ve start
+    * a tloušťku kreslí dovnitř od poloměru daného vzdáleností k end*/
+    public Rectangle getBounds() {
+        if (type == ToolType.CIRCLE) {
+            int radius = (int) Math.round(Math.hypot(end.x - start.x, end.y - start.y)) + 1;
+            return new Rectangle(start.x - radius, start.y - radius, 2 * radius + 1, 2 * radius + 1);
+        }
+        int x2 = end.x;
+        int y2 = end.y;
+        if (type == ToolType.RECTANGLE && squareMode) {
+            int size = Math.min(Math.abs(x2 - start.x), Math.abs(y2 - start.y));
+            x2 = start.x + (x2 < start.x ? -size : size);
+            y2 = start.y + (y2 < start.y ? -size : size);
+        }
+        int pad = thickness + 1;
+        int x = Math.min(start.x, x2) - pad;
+        int y = Math.min(start.y, y2) - pad;
+        return new Rectangle(x, y, Math.abs(x2 - start.x) + 2 * pad + 1, Math.abs(y2 - start.y) + 2 * pad + 1);
+    }
+}
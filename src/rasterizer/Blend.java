@@ -0,0 +1,48 @@
+package rasterizer;
+
+/*
+* Míchání barev pro poloprůhledné a vyhlazené (antialiasing) kreslení
+*
+* Vše v celých číslech - alfa i pokrytí pixelu jsou 0 - 255 (255 = plně kryje)
+* Barvy jsou ARGB jako Color.getRGB(), neprůhledné plátno má alfu cíle vždy 255*/
+final class Blend {
+    private Blend() {
+    }
+
+    //barva src s alfou přes barvu dst (operace "source over")
+    static int srcOver(int src, int dst) {
+        int a = src >>> 24;
+        if (a == 255) return src;
+        if (a == 0) return dst;
+        int da = dst >>> 24;
+        if (da == 255) {
+            /*neprůhledný cíl - výsledek je neprůhledný a stačí lineární interpolace kanálů
+            * červená a modrá se násobí najednou v jednom intu (každá má 16 bitů místa), zelená zvlášť
+            * a dělení 255 je div255 v obou polovinách zároveň*/
+            int keep = 255 - a;
+            int rb = (src & 0xFF00FF) * a + (dst & 0xFF00FF) * keep + 0x800080;
+            rb = ((rb + ((rb >>> 8) & 0xFF00FF)) >>> 8) & 0xFF00FF;
+            int g = (src & 0xFF00) * a + (dst & 0xFF00) * keep + 0x8000;
+            g = ((g + ((g >>> 8) & 0xFF00)) >>> 8) & 0xFF00;
+            return 0xFF000000 | rb | g;
+        }
+        int keep = div255(da * (255 - a));
+        int outA = a + keep;
+        if (outA == 0) return 0;
+        int r = (((src >> 16) & 0xFF) * a + ((dst >> 16) & 0xFF) * keep) / outA;
+        int g = (((src >> 8) & 0xFF) * a + ((dst >> 8) & 0xFF) * keep) / outA;
+        int b = ((src & 0xFF) * a + (dst & 0xFF) * keep) / outA;
+        return (outA << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    //barva argb s alfou zmenšenou podle pokrytí pixelu (0 - 255)
+    static int withCoverage(int argb, int coverage) {
+        return (div255((argb >>> 24) * coverage) << 24) | (argb & 0x00FFFFFF);
+    }
+
+    //x / 255 zaokrouhlené, pro x = 0 .. 255 * 255 bez dělení
+    static int div255(int x) {
+        x += 128;
+        return (x + (x >> 8)) >> 8;
+    }
+}
@@ -1,29 +1,35 @@
 package rasterizer;
 
+import model.BrushTip;
 import model.Point;
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
 
+/*
+* Štětec - tah se kreslí přes StrokeRasterizer po úsecích mezi polohami myši,
+* takže je plynulý i při rychlém pohybu myši
+* Průhlednost tahu je alfa barvy (Color s alfou), tah jako celek se přes sebe neztmavuje
+* S vyhlazováním má tah měkký okraj (pokrytí pixelů na hraně hrotu)*/
 public class BrushRasterizer {
+    private final StrokeRasterizer stroke = new StrokeRasterizer();
+    private boolean antialiased;
 
-    //Vykreslí bod (kam, souřadnice, tloušťka, barva)
-    public void drawPoint(BufferedImage img, Point point, int thickness, Color color) {
-        ThickPix(img, point.x, point.y, thickness, color);
+    //platí od dalšího tahu
+    public void setAntialiased(boolean antialiased) {
+        this.antialiased = antialiased;
     }
 
-    //Vykresluje barevný čtverec pixelů kolem daného bodu s konkrétní tloušťkou a to tak,
-    //aby kontrolovala hranici obrázku
-    private void ThickPix(BufferedImage img, int x, int y, int thickness, Color color) {
-        int radius = thickness / 2;
-        for (int dx = -radius; dx <= radius; dx++) {
-            for (int dy = -radius; dy <= radius; dy++) {
-                int px = x + dx;
-                int py = y + dy;
-                if (px >= 0 && py >= 0 && px < img.getWidth() && py < img.getHeight()) {
-                    img.setRGB(px, py, color.getRGB());
-                }
-            }
-        }
+    //Začne tah (kam, tloušťka, hrot, barva) - body se přidávají přes strokeTo
+    public void beginStroke(PixelSurface raster, int thickness, BrushTip tip, Color color) {
+        stroke.begin(raster, thickness, tip, color.getRGB(), antialiased);
+    }
+
+    //Přidá bod tahu - první nakreslí otisk hrotu, další celý úsek od předchozího bodu
+    public void strokeTo(Point point) {
+        stroke.lineTo(point.x, point.y);
+    }
+
+    public void endStroke() {
+        stroke.end();
     }
 }
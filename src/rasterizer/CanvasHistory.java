@@ -0,0 +1,233 @@
+package rasterizer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+* Historie kroků zpět / znovu nad TiledCanvas
+*
+* Krok si nepamatuje celé plátno, jen dlaždice, které se v něm změnily - stav před a po.
+* Změněné dlaždice se najdou porovnáním ukazatelů dvou snímků TiledCanvas, takže commit
+* neprochází pixely a krok tahu štětcem obsahuje jen pár dlaždic, přes které štětec vedl.
+*
+* Nejnovějších RAW_STEPS kroků zůstává tak, jak jsou (rychlé zpět), starší kroky se
+* zkomprimují deflate (jeho LZ77 zachytí i dlouhé běhy stejné barvy).
+* Jednobarevné dlaždice jsou jen jedna hodnota a nekomprimují se.
+* Když historie přeroste rozpočet v bajtech, zahazují se nejstarší kroky,
+* takže paměť zůstává omezená i po tisících operací*/
+public class CanvasHistory {
+    //kolik nejnovějších kroků se nekomprimuje
+    private static final int RAW_STEPS = 8;
+    //odhad režie jedné uložené dlaždice (objekt, index) v bajtech
+    private static final int TILE_OVERHEAD = 24;
+
+    private final TiledCanvas canvas;
+    private final long byteBudget;
+    private final ArrayDeque<Step> undoSteps = new ArrayDeque<>();
+    private final ArrayDeque<Step> redoSteps = new ArrayDeque<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    //stav plátna po posledním commit
+    private TiledCanvas.Snapshot committed;
+    private long usedBytes;
+
+    public CanvasHistory(TiledCanvas canvas, long byteBudget) {
+        this.canvas = canvas;
+        this.byteBudget = byteBudget;
+        this.committed = canvas.snapshot();
+    }
+
+    /*Uzavře jeden krok - zapamatuje si dlaždice změněné od minulého commit
+    * vrací false, když se nic nezměnilo (krok se pak nezakládá)*/
+    public boolean commit() {
+        TiledCanvas.Snapshot now = canvas.snapshot();
+        TiledCanvas.Tile[] before = committed.tiles;
+        TiledCanvas.Tile[] after = now.tiles;
+        committed = now;
+
+        IntList changed = new IntList(16);
+        for (int i = 0; i < after.length; i++) {
+            if (before[i] != after[i]) changed.add(i);
+        }
+        if (changed.size() == 0) return false;
+
+        int[] indexes = new int[changed.size()];
+        TiledCanvas.Tile[] oldTiles = new TiledCanvas.Tile[indexes.length];
+        TiledCanvas.Tile[] newTiles = new TiledCanvas.Tile[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = changed.get(i);
+            oldTiles[i] = before[indexes[i]];
+            newTiles[i] = after[indexes[i]];
+        }
+
+        //nový krok zahazuje všechno, co šlo vrátit přes znovu
+        for (Step step : redoSteps) usedBytes -= step.bytes;
+        redoSteps.clear();
+
+        Step step = new Step(indexes, oldTiles, newTiles);
+        undoSteps.push(step);
+        usedBytes += step.bytes;
+        compressAged();
+        while (usedBytes > byteBudget && undoSteps.size() > 1) {
+            usedBytes -= undoSteps.removeLast().bytes;
+        }
+        return true;
+    }
+
+    /*Vrátí poslední krok
+    * neuzavřené změny se nejdřív uzavřou jako vlastní krok, takže se vrátí právě ony*/
+    public boolean undo() {
+        commit();
+        if (undoSteps.isEmpty()) return false;
+        Step step = undoSteps.pop();
+        canvas.putTiles(step.indexes, step.tiles(false));
+        committed = canvas.snapshot();
+        redoSteps.push(step);
+        return true;
+    }
+
+    public boolean redo() {
+        //neuzavřené změny se uloží jako nový krok, a ten krok znovu zruší (stejně jako v jiných editorech)
+        commit();
+        if (redoSteps.isEmpty()) return false;
+        Step step = redoSteps.pop();
+        canvas.putTiles(step.indexes, step.tiles(true));
+        committed = canvas.snapshot();
+        undoSteps.push(step);
+        return true;
+    }
+
+    public boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    //zahodí celou historii, aktuální stav plátna se bere jako výchozí
+    public void clear() {
+        undoSteps.clear();
+        redoSteps.clear();
+        usedBytes = 0;
+        committed = canvas.snapshot();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    //krok, který právě vypadl z nejnovějších RAW_STEPS, se zkomprimuje
+    private void compressAged() {
+        if (undoSteps.size() <= RAW_STEPS) return;
+        Iterator<Step> it = undoSteps.iterator();
+        for (int i = 0; i < RAW_STEPS; i++) it.next();
+        Step step = it.next();
+        if (step.packed) return;
+        usedBytes -= step.bytes;
+        step.compress();
+        usedBytes += step.bytes;
+    }
+
+    private byte[] deflate(int[] pixels) {
+        ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asIntBuffer().put(pixels);
+        deflater.reset();
+        deflater.setInput(bytes.array());
+        deflater.finish();
+        byte[] out = new byte[pixels.length + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) out = Arrays.copyOf(out, out.length * 2);
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    private int[] inflate(byte[] packed, int pixelCount) {
+        byte[] bytes = new byte[pixelCount * 4];
+        inflater.reset();
+        inflater.setInput(packed);
+        try {
+            int length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                length += inflater.inflate(bytes, length, bytes.length - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Poškozený krok historie", e);
+        }
+        int[] pixels = new int[pixelCount];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(pixels);
+        return pixels;
+    }
+
+    //jeden krok historie - změněné dlaždice před a po, případně zkomprimované
+    private final class Step {
+        final int[] indexes;
+        final TiledCanvas.Tile[] before;
+        final TiledCanvas.Tile[] after;
+        //zkomprimované pixely dlaždic, null u jednobarevných dlaždic nebo před kompresí
+        byte[][] packedBefore;
+        byte[][] packedAfter;
+        boolean packed;
+        long bytes;
+
+        Step(int[] indexes, TiledCanvas.Tile[] before, TiledCanvas.Tile[] after) {
+            this.indexes = indexes;
+            this.before = before;
+            this.after = after;
+            this.bytes = measure(before, null) + measure(after, null);
+        }
+
+        void compress() {
+            packedBefore = pack(before);
+            packedAfter = pack(after);
+            packed = true;
+            bytes = measure(before, packedBefore) + measure(after, packedAfter);
+        }
+
+        //dlaždice pro zápis do plátna - stav po kroku (after) nebo před ním
+        TiledCanvas.Tile[] tiles(boolean afterStep) {
+            TiledCanvas.Tile[] tiles = afterStep ? after : before;
+            if (!packed) return tiles;
+            byte[][] packedTiles = afterStep ? packedAfter : packedBefore;
+            TiledCanvas.Tile[] result = new TiledCanvas.Tile[tiles.length];
+            for (int i = 0; i < tiles.length; i++) {
+                result[i] = packedTiles[i] == null ? tiles[i]
+                        : new TiledCanvas.Tile(inflate(packedTiles[i], canvas.tileLength(indexes[i])), 0);
+            }
+            return result;
+        }
+
+        //jednobarevné dlaždice zůstanou, ostatní se nahradí zkomprimovanými pixely
+        private byte[][] pack(TiledCanvas.Tile[] tiles) {
+            byte[][] packedTiles = new byte[tiles.length][];
+            for (int i = 0; i < tiles.length; i++) {
+                if (tiles[i].pixels != null) {
+                    packedTiles[i] = deflate(tiles[i].pixels);
+                    tiles[i] = null;
+                }
+            }
+            return packedTiles;
+        }
+
+        private long measure(TiledCanvas.Tile[] tiles, byte[][] packedTiles) {
+            long sum = 0;
+            for (int i = 0; i < tiles.length; i++) {
+                sum += TILE_OVERHEAD;
+                if (packedTiles != null && packedTiles[i] != null) {
+                    sum += packedTiles[i].length;
+                } else if (tiles[i].pixels != null) {
+                    sum += 4L * tiles[i].pixels.length;
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -4,49 +4,200 @@ import model.LineStyle;
 import model.Point;
 
 import java.awt.*;
-import java.awt.image.BufferedImage;
 
 public class CircleRasterizer {
+    /*od této délky se plně pokrytá část řádku vyhlazeného kruhu vyplňuje zvlášť, kratší se smíchá s okraji
+    * jen u neprůhledné barvy - průhlednou drawSpan nemíchá, takže plná část jde vždy přes drawSpan*/
+    private static final int LONG_SPAN = 32;
+    //vyhlazené kreslení - pixely na okrajích mezikruží podle pokrytí
+    private boolean antialiased;
+    //pokrytí právě kresleného úseku okraje vpravo a zrcadlově vlevo od středu, pole se znovu používají
+    private int[] rightCoverage = new int[64];
+    private int[] leftCoverage = new int[64];
+
+    public void setAntialiased(boolean antialiased) {
+        this.antialiased = antialiased;
+    }
+
+    public boolean isAntialiased() {
+        return antialiased;
+    }
 
     /*
     * Vykreslí kruh s barvou, tloušťkou a stylem
     * Poloměr se vypočítává jako vzdálenost mezi dvěma zadanými body
     * Střed - první kliknutí
     * Bod okraje - místo, kam dragguju myší
-    * Pro efekt tloušťky vykreslí více soustředných kruhů, jen mají menší poloměr*/
-    public void drawCircle(BufferedImage img, Point center, Point edge, Color color, int thickness, LineStyle style) {
+    * Tloušťka jde od poloměru dovnitř*/
+    public void drawCircle(PixelSurface raster, Point center, Point edge, Color color, int thickness, LineStyle style) {
+        drawCircle(raster, center, edge, color, thickness, style, false);
+    }
+
+    /*
+    * Kruh jako mezikruží (nebo plný kruh, když filled)
+    *
+    * Dřív se tloušťka dělala jako thickness soustředných kružnic midpoint algoritmem,
+    * mezi kterými zůstávaly díry (moaré). Teď se pro každý řádek spočítá,
+    * kde řádek protíná vnější a vnitřní kružnici, a vyplní se úseky mezi nimi:
+    * - vnější kružnice: pixely se vzdáleností d od středu, kde d^2 <= R^2 + R (tedy d < R + 1/2)
+    * - vnitřní: pixely s d^2 <= r^2 + r, kde r = R - thickness, se nekreslí
+    * Obě hranice odpovídají tomu, kam midpoint algoritmus kreslí kružnice s poloměrem R a r + 1.
+    * Každý pixel se zapíše právě jednou a nic se za kreslení nealokuje.
+    *
+    * Styl se bere stejně jako dřív po osminách kruhu - o tom, jestli se pixel nakreslí,
+    * rozhoduje jeho menší vzdálenost od os (krok midpoint algoritmu v dané osmině),
+    * takže čárky jsou stejné u všech poloměrů. Plný kruh se kreslí vždy plně*/
+    public void drawCircle(PixelSurface raster, Point center, Point edge, Color color, int thickness, LineStyle style, boolean filled) {
         int dx = edge.x - center.x;
         int dy = edge.y - center.y;
         int radius = (int) Math.round(Math.sqrt(dx * dx + dy * dy));
+        int argb = color.getRGB();
+        if (antialiased) {
+            drawAntialiased(raster, center.x, center.y, radius, thickness, argb, filled ? LineStyle.SOLID : style, filled);
+            return;
+        }
+        if (!filled && thickness <= 1) {
+            //tenká kružnice zůstává midpoint algoritmem (8-souvislá, jako dřív)
+            drawStyledCircle(raster, center.x, center.y, radius, argb, style);
+            return;
+        }
+        int inner = filled ? -1 : radius - thickness;
+        LineStyle pattern = filled ? LineStyle.SOLID : style;
+
+        long outerLimit = (long) radius * radius + radius;
+        long innerLimit = inner < 0 ? -1 : (long) inner * inner + inner;
+        for (int y = -radius; y <= radius; y++) {
+            long yy = (long) y * y;
+            int outer = isqrt(outerLimit - yy);
+            if (innerLimit < yy) {
+                //řádek vnitřní kruh míjí - jeden úsek přes celou šířku
+                drawSpan(raster, center.x, center.y + y, -outer, outer, y, argb, pattern);
+            } else {
+                int hole = isqrt(innerLimit - yy);
+                if (hole >= outer) continue;
+                drawSpan(raster, center.x, center.y + y, -outer, -hole - 1, y, argb, pattern);
+                drawSpan(raster, center.x, center.y + y, hole + 1, outer, y, argb, pattern);
+            }
+        }
+    }
+
+    /*Vyhlazený kruh - mezikruží mezi vnějším okrajem R + 0.5 a vnitřním R - thickness + 0.5
+    * (stejné hranice jako nevyhlazené mezikruží, tenká kružnice je mezikruží tloušťky 1)
+    *
+    * Pixel se bere jako úsečka délky 1 ve směru od středu (d - 0.5 .. d + 0.5) a pokrytí je
+    * délka jejího průniku s mezikružím. V každém řádku se z odmocnin spočítají hranice:
+    * pixely uvnitř plně pokryté části se vyplní drawSpan jako bez vyhlazení,
+    * odmocnina vzdálenosti se počítá jen pro pixely na okrajích (úměrně obvodu, ne ploše)
+    * a okraje se míchají po úsecích přes blendSpan.
+    * Hranice i pokrytí závisí jen na |y| a |x|, takže se spočítají jednou pro řádky cy - y i cy + y
+    * a jednou pro pravou stranu (levá je zrcadlová)*/
+    private void drawAntialiased(PixelSurface raster, int cx, int cy, int radius, int thickness, int argb,
+                                 LineStyle style, boolean filled) {
+        double outer = radius + 0.5;
+        double inner = filled ? Double.NEGATIVE_INFINITY : radius - thickness + 0.5;
+        boolean hole = inner > 0;
+        int longSpan = (argb >>> 24) == 255 ? LONG_SPAN : 0;
+        for (int y = 0; y <= radius + 1; y++) {
+            double yy = (double) y * y;
+            //nejvzdálenější pixel řádku s nenulovým pokrytím a poslední plně uvnitř vnějšího okraje
+            int touched = floorSqrt((outer + 0.5) * (outer + 0.5) - yy);
+            if (touched < 0) break;
+            int fullHi = floorSqrt((outer - 0.5) * (outer - 0.5) - yy);
+            //pixely |x| <= holeHi jsou celé v díře, od fullLo jsou celé mimo ni
+            int holeHi = -1;
+            int fullLo = 0;
+            if (hole) {
+                holeHi = inner > 0.5 ? floorSqrt((inner - 0.5) * (inner - 0.5) - yy) : -1;
+                double w = (inner + 0.5) * (inner + 0.5) - yy;
+                fullLo = w > 0 ? (int) Math.ceil(Math.sqrt(w)) : 0;
+            }
+            int from = holeHi + 1;
+            edgeCoverage(from, touched, fullLo, fullHi, longSpan, y, outer, inner, style);
+            drawAntialiasedRow(raster, cx, cy + y, y, from, touched, fullLo, fullHi, longSpan, argb, style);
+            if (y != 0) drawAntialiasedRow(raster, cx, cy - y, y, from, touched, fullLo, fullHi, longSpan, argb, style);
+        }
+    }
+
+    /*Pokrytí pixelů |x| = from..to řádku y do rightCoverage (od from) a zrcadlově do leftCoverage (od to)
+    * pixely fullLo..fullHi jsou plně pokryté - úsek kratší než longSpan dostane plné pokrytí a smíchá se s okraji,
+    * delší se kreslí drawSpan a jeho pokrytí se nepočítá*/
+    private void edgeCoverage(int from, int to, int fullLo, int fullHi, int longSpan, int y, double outer, double inner,
+                              LineStyle style) {
+        int count = to - from + 1;
+        if (rightCoverage.length < count) {
+            rightCoverage = new int[Math.max(count, rightCoverage.length * 2)];
+            leftCoverage = new int[rightCoverage.length];
+        }
+        int ay = Math.abs(y);
+        double yy = (double) y * y;
+        for (int ax = from; ax <= to; ax++) {
+            if (ax >= fullLo && ax <= fullHi) {
+                if (fullHi - fullLo >= longSpan) {
+                    ax = fullHi;
+                    continue;
+                }
+                int coverage = isOn(Math.min(ax, ay), style) ? 255 : 0;
+                rightCoverage[ax - from] = coverage;
+                leftCoverage[to - ax] = coverage;
+                continue;
+            }
+            int coverage = 0;
+            if (isOn(Math.min(ax, ay), style)) {
+                double d = Math.sqrt(ax * (double) ax + yy);
+                //porovnání místo Math.min / max pro double (ty řeší NaN a -0.0 a na okraji jsou znát)
+                double cover = (d + 0.5 < outer ? d + 0.5 : outer) - (d - 0.5 > inner ? d - 0.5 : inner);
+                if (cover > 0) coverage = Math.min((int) (cover * 255 + 0.5), 255);
+            }
+            rightCoverage[ax - from] = coverage;
+            leftCoverage[to - ax] = coverage;
+        }
+    }
 
-        for (int t = 0; t < thickness; t++) {
-            drawStyledCircle(img, center.x, center.y, radius - t, color, style);
+    /*Jeden řádek vyhlazeného kruhu z pokrytí spočítaného edgeCoverage
+    * okraj u díry (from..fullLo - 1) a vnější okraj (fullHi + 1..to) se smíchají blendSpan na obou stranách,
+    * mezi nimi dlouhá plná část drawSpan (pixel x = 0 se kreslí jen jednou)*/
+    private void drawAntialiasedRow(PixelSurface raster, int cx, int row, int y, int from, int to, int fullLo, int fullHi,
+                                    int longSpan, int argb, LineStyle style) {
+        if (fullLo > fullHi || fullHi - fullLo < longSpan) {
+            //celý úsek najednou - plná část chybí nebo je krátká a má pokrytí v poli s okraji
+            raster.blendSpan(cx + from, row, argb, rightCoverage, 0, to - from + 1);
+            raster.blendSpan(cx - to, row, argb, leftCoverage, 0, from == 0 ? to : to - from + 1);
+            return;
+        }
+        if (fullLo == 0) {
+            drawSpan(raster, cx, row, -fullHi, fullHi, y, argb, style);
+        } else {
+            drawSpan(raster, cx, row, -fullHi, -fullLo, y, argb, style);
+            drawSpan(raster, cx, row, fullLo, fullHi, y, argb, style);
+        }
+        int innerCount = fullLo - from;
+        if (innerCount > 0) {
+            raster.blendSpan(cx + from, row, argb, rightCoverage, 0, innerCount);
+            raster.blendSpan(cx - fullLo + 1, row, argb, leftCoverage, to - fullLo + 1, from == 0 ? innerCount - 1 : innerCount);
+        }
+        int outerCount = to - fullHi;
+        if (outerCount > 0) {
+            raster.blendSpan(cx + fullHi + 1, row, argb, rightCoverage, fullHi + 1 - from, outerCount);
+            raster.blendSpan(cx - to, row, argb, leftCoverage, 0, outerCount);
         }
     }
 
-    /*Vykresluje kruh podle stylu, využívá logiku tzv patternů
-    *Solid (default) - jednoduchý pattern {1} - pro každý krok se vykreslí
-    *Dotted - Pattern {1,0,0,0} - vykreslí se jeden pixel, a 3 ne
-    *Dashed - stejně jako u dotted, jen s větší mírou vykreslení */
-    private void drawStyledCircle(BufferedImage img, int x0, int y0, int radius, Color color, LineStyle style) {
+    //odmocnina zaokrouhlená dolů, pro záporné číslo -1
+    private static int floorSqrt(double value) {
+        return value < 0 ? -1 : (int) Math.sqrt(value);
+    }
+
+    /*Tenká kružnice midpoint algoritmem, po osminách
+    * krok y v osmině rozhoduje o stylu stejně jako u mezikruží (isOn)*/
+    private void drawStyledCircle(PixelSurface raster, int x0, int y0, int radius, int argb, LineStyle style) {
         int x = radius;
         int y = 0;
         int decisionOver2 = 1 - x;
 
-        int[] pattern;
-        switch (style) {
-            case DOTTED -> pattern = new int[]{1, 0, 0, 0};
-            case DASHED -> pattern = new int[]{1, 1, 1, 1, 0, 0, 0, 0};
-            default -> pattern = new int[]{1};
-        }
-        int patternIndex = 0;
-        int patternLength = pattern.length;
-
         while (y <= x) {
-            if (pattern[patternIndex % patternLength] == 1) {
-                plotCirclePoints(img, x0, y0, x, y, color);
+            if (isOn(y, style)) {
+                plotCirclePoints(raster, x0, y0, x, y, argb);
             }
-            patternIndex++;
 
             y++;
             if (decisionOver2 <= 0) {
@@ -58,25 +209,57 @@ public class CircleRasterizer {
         }
     }
 
-    /*Vykresluje body kružnice po osminách tak, že kontroluje hranici canvasu
-    *Na body, které by vyšly mimo canvas bude podmínka false, tím pádem se ani nepokusí je kreslit
+    /*Vykresluje body kružnice po osminách
+    *Body, které by vyšly mimo canvas, raster sám zahodí
      */
+    private void plotCirclePoints(PixelSurface raster, int cx, int cy, int x, int y, int argb) {
+        raster.setPixel(cx + x, cy + y, argb);
+        raster.setPixel(cx + y, cy + x, argb);
+        raster.setPixel(cx - y, cy + x, argb);
+        raster.setPixel(cx - x, cy + y, argb);
+        raster.setPixel(cx - x, cy - y, argb);
+        raster.setPixel(cx - y, cy - x, argb);
+        raster.setPixel(cx + y, cy - x, argb);
+        raster.setPixel(cx + x, cy - y, argb);
+    }
 
-    private void plotCirclePoints(BufferedImage img, int cx, int cy, int x, int y, Color color) {
-        int[][] points = {
-                {cx + x, cy + y}, {cx + y, cy + x},
-                {cx - y, cy + x}, {cx - x, cy + y},
-                {cx - x, cy - y}, {cx - y, cy - x},
-                {cx + y, cy - x}, {cx + x, cy - y},
-        };
-
-        for (int[] p : points) {
-            int px = p[0], py = p[1];
-            if (px >= 0 && px < img.getWidth() && py >= 0 && py < img.getHeight()) {
-                img.setRGB(px, py, color.getRGB());
+    //úsek řádku od x0 do x1 (relativně ke středu), u stylů po souvislých bězích zapnutých pixelů
+    private void drawSpan(PixelSurface raster, int cx, int row, int x0, int x1, int y, int argb, LineStyle style) {
+        if (style == LineStyle.SOLID) {
+            raster.fillSpan(cx + x0, cx + x1, row, argb);
+            return;
+        }
+        int ay = Math.abs(y);
+        int runStart = Integer.MIN_VALUE;
+        for (int x = x0; x <= x1; x++) {
+            boolean on = isOn(Math.min(Math.abs(x), ay), style);
+            if (on && runStart == Integer.MIN_VALUE) {
+                runStart = x;
+            } else if (!on && runStart != Integer.MIN_VALUE) {
+                raster.fillSpan(cx + runStart, cx + x - 1, row, argb);
+                runStart = Integer.MIN_VALUE;
             }
         }
+        if (runStart != Integer.MIN_VALUE) raster.fillSpan(cx + runStart, cx + x1, row, argb);
     }
-}
 
+    /*Vzory stylů po krocích osminy kruhu
+    *Dotted - {1,0,0,0} - vykreslí se jeden pixel, a 3 ne
+    *Dashed - {1,1,1,1,0,0,0,0} - čtyři ano, čtyři ne */
+    private static boolean isOn(int step, LineStyle style) {
+        return switch (style) {
+            case DOTTED -> (step & 3) == 0;
+            case DASHED -> (step & 7) < 4;
+            default -> true;
+        };
+    }
 
+    //celočíselná odmocnina (zaokrouhlená dolů), pro záporné číslo -1
+    private static int isqrt(long value) {
+        if (value < 0) return -1;
+        long root = (long) Math.sqrt((double) value);
+        while (root * root > value) root--;
+        while ((root + 1) * (root + 1) <= value) root++;
+        return (int) root;
+    }
+}
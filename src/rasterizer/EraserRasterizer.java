@@ -1,32 +1,33 @@
 package rasterizer;
 
+import model.BrushTip;
 import model.Point;
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
 
 public class EraserRasterizer {
 
     private static final Color DEFAULT_BACKGROUND_COLOR = Color.BLACK;
+    private final StrokeRasterizer stroke = new StrokeRasterizer();
+    private boolean antialiased;
 /*
 * Stejné jako BrushRasterizer, pouze vše maže na defaultní barvu,
 * kterou je v mém případě černá
+* opacity (0 - 255) je krytí gumy - poloprůhledná guma jen ztmaví
 * */
-    public void erasePoint(BufferedImage img, Point point, int thickness) {
-        drawThickPixel(img, point.x, point.y, thickness);
+    public void setAntialiased(boolean antialiased) {
+        this.antialiased = antialiased;
     }
 
-    private void drawThickPixel(BufferedImage img, int x, int y, int thickness) {
-        int radius = thickness / 2;
-        for (int dx = -radius; dx <= radius; dx++) {
-            for (int dy = -radius; dy <= radius; dy++) {
-                int px = x + dx;
-                int py = y + dy;
-                if (px >= 0 && py >= 0 && px < img.getWidth() && py < img.getHeight()) {
-                    img.setRGB(px, py, EraserRasterizer.DEFAULT_BACKGROUND_COLOR.getRGB());
-                }
-            }
-        }
+    public void beginStroke(PixelSurface raster, int thickness, BrushTip tip, int opacity) {
+        stroke.begin(raster, thickness, tip, (opacity << 24) | (DEFAULT_BACKGROUND_COLOR.getRGB() & 0x00FFFFFF), antialiased);
+    }
+
+    public void eraseTo(Point point) {
+        stroke.lineTo(point.x, point.y);
     }
-}
 
+    public void endStroke() {
+        stroke.end();
+    }
+}
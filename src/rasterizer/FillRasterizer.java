@@ -1,52 +1,476 @@
 package rasterizer;
 
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import model.ColorDistance;
 import model.Point;
 
 public class FillRasterizer {
 
+    //od kolika pixelů plátna se vyplatí paralelní vyplňování
+    public static final long PARALLEL_THRESHOLD = 4_000_000L;
+    //minimální výška jednoho pásu řádků pro paralelní vyplňování
+    private static final int MIN_BAND_HEIGHT = 64;
+    //paralelní výplň nejdřív zkusí sériový scanline na tuto část plátna, pásy až pro větší oblast
+    private static final int SERIAL_SHARE = 32;
+
+    private final ForkJoinPool pool;
+    private final ToleranceKernel toleranceKernel = ToleranceKernel.create();
+
+    public FillRasterizer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public FillRasterizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     /*
     * Používá Flood Fill algoritmus, podrobný popis lze nalézt zde
     * https://en.wikipedia.org/wiki/Flood_fill
-    * Používám možnost s frontou - při použití fronty (nebo zásobníku)
-    * se předejde častému problému stack overflow
-    * Do fronty se řadí jednotlivé pixely, ty se zabarví
-    * z queue se odstraní a přidají se sousední
+    * Používám řádkovou (scanline) variantu - místo jednotlivých pixelů
+    * se plní celé vodorovné úseky
     *
-    * Chytré je na tom vlastně to, že se pixely plní jen tehdy, když je fronta prázdná,
-    * (tj. když nemá jaký bod kontrolovat),
-    * tím nedochází k tomu přehlcení a pracuje se s minimem paměti*/
+    * 1. Ze zásobníku se vezme bod (semínko)
+    * 2. Od něj se úsek rozšíří doleva a doprava, dokud má pixel cílovou barvu
+    * 3. Celý úsek se vyplní najednou
+    * 4. V řádku nad a pod se projde rozsah úseku a pro každý souvislý běh
+    *    cílové barvy se na zásobník uloží jen jedno semínko
+    *
+    * Zásobník drží jen dvojice intů (x, y), takže se nealokují žádné objekty
+    * a výsledek je pixel po pixelu stejný jako u klasického 4-okolí*/
 
+    public void floodFill(Raster canvas, Point start, Color fillColor) {
+        floodFill(canvas, start, fillColor, false);
+    }
 
-    public void floodFill(BufferedImage canvas, Point start, Color fillColor) {
-        int width = canvas.getWidth();
-        int height = canvas.getHeight();
-        int targetColor = canvas.getRGB(start.x, start.y);
-        int replacementColor = fillColor.getRGB();
+    //eightConnected - vyplňuje se i přes rohy (8-okolí), jinak jen přes hrany (4-okolí)
+    public void floodFill(Raster canvas, Point start, Color fillColor, boolean eightConnected) {
+        if (!canvas.contains(start.x, start.y)) return;
+        int mask = canvas.getPixelMask();
+        int targetColor = canvas.getData()[offset(canvas, start.x, start.y)] & mask;
+        int replacementColor = canvas.toPixel(fillColor.getRGB());
 
         if (targetColor == replacementColor) return;
+        scanlineFill(canvas, start, targetColor, replacementColor, eightConnected, Long.MAX_VALUE, null);
+    }
 
-        Queue<Point> queue = new LinkedList<>();
-        queue.add(start);
+    /*Scanline výplň v poli Rasteru, vyplní nejvýš budget pixelů
+    * vrací false, když rozpočet nestačil - úseky vyplněné do té doby jsou pak v spans (y, left, right),
+    * aby je volající mohl vrátit (spans může být null, když se rozpočet nepoužívá)
+    * Výplň zůstává v okně rastru (getWindow), obrázek může pokrývat jen část plátna*/
+    private boolean scanlineFill(Raster canvas, Point start, int targetColor, int replacementColor,
+                                 boolean eightConnected, long budget, IntList spans) {
+        Rectangle window = canvas.getWindow();
+        int minX = window.x;
+        int maxX = window.x + window.width - 1;
+        int minY = window.y;
+        int maxY = window.y + window.height - 1;
+        int[] data = canvas.getData();
+        int mask = canvas.getPixelMask();
 
-        while (!queue.isEmpty()) {
-            Point p = queue.poll();
-            int x = p.x;
-            int y = p.y;
+        IntStack stack = new IntStack(256);
+        stack.push(start.x, start.y);
 
-            if (x < 0 || x >= width || y < 0 || y >= height) continue;
-            if (canvas.getRGB(x, y) != targetColor) continue;
+        while (!stack.isEmpty()) {
+            int y = stack.pop();
+            int x = stack.pop();
+            int row = offset(canvas, 0, y);
 
-            canvas.setRGB(x, y, replacementColor);
+            //semínko mohl mezitím vyplnit jiný úsek
+            if ((data[row + x] & mask) != targetColor) continue;
 
-            queue.add(new Point(x + 1, y));
-            queue.add(new Point(x - 1, y));
-            queue.add(new Point(x, y + 1));
-            queue.add(new Point(x, y - 1));
+            int left = x;
+            while (left > minX && (data[row + left - 1] & mask) == targetColor) left--;
+            int right = x;
+            while (right < maxX && (data[row + right + 1] & mask) == targetColor) right++;
+
+            budget -= right - left + 1;
+            if (budget < 0) return false;
+            Arrays.fill(data, row + left, row + right + 1, replacementColor);
+            canvas.addDamage(left, y, right + 1, y + 1);
+            if (spans != null) {
+                spans.add(y);
+                spans.add(left);
+                spans.add(right);
+            }
+
+            //u 8-okolí se sousední řádek prohledává o pixel dál na obě strany
+            int from = eightConnected ? Math.max(left - 1, minX) : left;
+            int to = eightConnected ? Math.min(right + 1, maxX) : right;
+            if (y > minY) pushRuns(data, offset(canvas, 0, y - 1), y - 1, from, to, mask, targetColor, stack);
+            if (y < maxY) pushRuns(data, offset(canvas, 0, y + 1), y + 1, from, to, mask, targetColor, stack);
         }
+        return true;
     }
-}
 
+    //index pixelu x, y plátna v poli rastru - obrázek může pokrývat jen okno plátna od getOriginX, getOriginY
+    private static int offset(Raster raster, int x, int y) {
+        return (y - raster.getOriginY()) * raster.getStride() + (x - raster.getOriginX());
+    }
+
+    /*Stejný scanline pro plochu bez pole int[] (třeba MappedRaster)
+    * pixely se čtou přes getPixel a úseky se plní přes fillSpan*/
+    public void floodFill(PixelSurface surface, Point start, Color fillColor, boolean eightConnected) {
+        if (surface instanceof Raster raster) {
+            floodFill(raster, start, fillColor, eightConnected);
+            return;
+        }
+        if (!surface.contains(start.x, start.y)) return;
+        int width = surface.getWidth();
+        int height = surface.getHeight();
+        int targetColor = surface.getPixel(start.x, start.y);
+        int replacement = fillColor.getRGB();
+        int replacementColor = surface.readBack(replacement);
+        if (targetColor == replacementColor) return;
+
+        IntStack stack = new IntStack(256);
+        stack.push(start.x, start.y);
+
+        while (!stack.isEmpty()) {
+            int y = stack.pop();
+            int x = stack.pop();
+            if (surface.getPixel(x, y) != targetColor) continue;
+
+            int left = x;
+            while (left > 0 && surface.getPixel(left - 1, y) == targetColor) left--;
+            int right = x;
+            while (right < width - 1 && surface.getPixel(right + 1, y) == targetColor) right++;
+            surface.fillSpan(left, right, y, replacement);
+
+            int from = eightConnected ? Math.max(left - 1, 0) : left;
+            int to = eightConnected ? Math.min(right + 1, width - 1) : right;
+            if (y > 0) pushRuns(surface, y - 1, from, to, targetColor, stack);
+            if (y < height - 1) pushRuns(surface, y + 1, from, to, targetColor, stack);
+        }
+    }
+
+    private void pushRuns(PixelSurface surface, int y, int from, int to, int targetColor, IntStack stack) {
+        boolean inRun = false;
+        for (int x = from; x <= to; x++) {
+            if (surface.getPixel(x, y) == targetColor) {
+                if (!inRun) {
+                    stack.push(x, y);
+                    inRun = true;
+                }
+            } else {
+                inRun = false;
+            }
+        }
+    }
+
+    //na zásobník uloží jedno semínko za každý souvislý běh cílové barvy v rozsahu from..to
+    private void pushRuns(int[] data, int row, int y, int from, int to, int mask, int targetColor, IntStack stack) {
+        boolean inRun = false;
+        for (int x = from; x <= to; x++) {
+            if ((data[row + x] & mask) == targetColor) {
+                if (!inRun) {
+                    stack.push(x, y);
+                    inRun = true;
+                }
+            } else {
+                inRun = false;
+            }
+        }
+    }
+
+    /*
+    * Výplň s tolerancí - vyplní i pixely, jejichž barva se od barvy
+    * pod semínkem liší nejvýš o tolerance (po kanálech nebo vzdáleností v RGB)
+    * Hodí se po vyhlazování nebo u importovaného obrázku, kde barvy nejsou přesně stejné
+    *
+    * Pro každý navštívený řádek se jednou spočítá pole shod (match) přes ToleranceKernel,
+    * samotné vyplňování je stejný scanline jako u floodFill, jen se místo barvy
+    * čte z pole shod. Vyplněné pixely se v poli shod vynulují, takže se žádný
+    * pixel nezpracuje dvakrát, i kdyby nová barva byla taky v toleranci
+    *
+    * Pole shod se alokuje až pro řádek, na který výplň opravdu dosáhne - malá oblast
+    * na obřím plátně tak nestojí paměť a nulování úměrné celému plátnu
+    * Funguje pro každou PixelSurface, MappedRaster dává řádky kernelu přes getRow*/
+    public void floodFillTolerance(PixelSurface surface, Point start, Color fillColor, int tolerance,
+                                   ColorDistance distance, boolean eightConnected) {
+        if (tolerance <= 0) {
+            floodFill(surface, start, fillColor, eightConnected);
+            return;
+        }
+        if (!surface.contains(start.x, start.y)) return;
+        int width = surface.getWidth();
+        int height = surface.getHeight();
+        //Raster se porovnává rovnou v poli pixelů, jiná plocha (MappedRaster) po řádcích přes getRow
+        int targetColor = surface instanceof Raster raster
+                ? raster.getData()[offset(raster, start.x, start.y)]
+                : surface.getPixel(start.x, start.y);
+        int replacement = fillColor.getRGB();
+
+        //shody po řádcích, null = řádek se ještě nepočítal
+        boolean[][] match = new boolean[height][];
+        int[] pixels = surface instanceof Raster ? null : new int[width];
+
+        IntStack stack = new IntStack(256);
+        stack.push(start.x, start.y);
+
+        while (!stack.isEmpty()) {
+            int y = stack.pop();
+            int x = stack.pop();
+            boolean[] rowMatch = matchRow(surface, pixels, y, targetColor, tolerance, distance, match);
+
+            if (!rowMatch[x]) continue;
+
+            int left = x;
+            while (left > 0 && rowMatch[left - 1]) left--;
+            int right = x;
+            while (right < width - 1 && rowMatch[right + 1]) right++;
+
+            surface.fillSpan(left, right, y, replacement);
+            for (int i = left; i <= right; i++) {
+                rowMatch[i] = false;
+            }
+
+            int from = eightConnected ? Math.max(left - 1, 0) : left;
+            int to = eightConnected ? Math.min(right + 1, width - 1) : right;
+            if (y > 0) {
+                pushMatchRuns(matchRow(surface, pixels, y - 1, targetColor, tolerance, distance, match), y - 1, from, to, stack);
+            }
+            if (y < height - 1) {
+                pushMatchRuns(matchRow(surface, pixels, y + 1, targetColor, tolerance, distance, match), y + 1, from, to, stack);
+            }
+        }
+    }
+
+    /*shody pro řádek y - spočítá je a alokuje pole, pokud ještě spočítané nejsou
+    * pixels je pomocný řádek pro plochu bez pole int[], u Rasteru null*/
+    private boolean[] matchRow(PixelSurface surface, int[] pixels, int y, int targetColor, int tolerance,
+                               ColorDistance distance, boolean[][] match) {
+        boolean[] row = match[y];
+        if (row == null) {
+            int width = surface.getWidth();
+            row = new boolean[width];
+            if (surface instanceof Raster raster) {
+                //obrázek může pokrývat jen okno plátna - mimo něj shody zůstanou false
+                Rectangle window = raster.getWindow();
+                if (y >= window.y && y < window.y + window.height) {
+                    toleranceKernel.matchRow(raster.getData(), offset(raster, window.x, y), window.width,
+                            targetColor, tolerance, distance, row, window.x);
+                }
+            } else {
+                surface.getRow(y, pixels);
+                toleranceKernel.matchRow(pixels, 0, width, targetColor, tolerance, distance, row, 0);
+            }
+            match[y] = row;
+        }
+        return row;
+    }
+
+    private void pushMatchRuns(boolean[] match, int y, int from, int to, IntStack stack) {
+        boolean inRun = false;
+        for (int x = from; x <= to; x++) {
+            if (match[x]) {
+                if (!inRun) {
+                    stack.push(x, y);
+                    inRun = true;
+                }
+            } else {
+                inRun = false;
+            }
+        }
+    }
+
+    /*
+    * Paralelní varianta pro velká plátna
+    * Plátno se rozdělí na vodorovné pásy řádků a každý pás se zpracuje na ForkJoinPoolu
+    *
+    * 1. V každém pásu se najdou běhy (úseky) cílové barvy a běhy, které se
+    *    dotýkají v sousedních řádcích, se spojí přes union-find
+    * 2. Lokální výsledky se spojí do jednoho pole a sekvenčně se propojí
+    *    běhy, které se dotýkají přes hranici dvou pásů
+    * 3. Najde se kořen běhu se semínkem a paralelně se vyplní všechny běhy se stejným kořenem
+    *
+    * Výsledek je stejný jako u sériového floodFill, jen se práce rozloží na všechna jádra
+    * https://en.wikipedia.org/wiki/Connected-component_labeling
+    *
+    * Pásy projdou celé plátno, i když je oblast malá. Proto se nejdřív zkusí sériový scanline
+    * s rozpočtem 1/SERIAL_SHARE pixelů plátna - malá oblast se tak vyplní v čase úměrném své velikosti.
+    * Když rozpočet nestačí, vyplněné úseky se vrátí na cílovou barvu a vyplní se to po pásech*/
+    public void floodFillParallel(Raster canvas, Point start, Color fillColor, boolean eightConnected) {
+        if (!canvas.contains(start.x, start.y)) return;
+        int[] data = canvas.getData();
+        int mask = canvas.getPixelMask();
+        int targetColor = data[offset(canvas, start.x, start.y)] & mask;
+        int replacementColor = canvas.toPixel(fillColor.getRGB());
+
+        if (targetColor == replacementColor) return;
+
+        //pásy pokrývají jen okno rastru (u obrázku přes celé plátno celé plátno)
+        Rectangle window = canvas.getWindow();
+        IntList spans = new IntList(256);
+        long budget = (long) window.width * window.height / SERIAL_SHARE;
+        if (scanlineFill(canvas, start, targetColor, replacementColor, eightConnected, budget, spans)) return;
+        //cílová barva je celá uvnitř masky, pixely v nich tedy měly přesně targetColor
+        for (int i = 0; i < spans.size(); i += 3) {
+            int row = offset(canvas, 0, spans.get(i));
+            Arrays.fill(data, row + spans.get(i + 1), row + spans.get(i + 2) + 1, targetColor);
+        }
+
+        int top = window.y;
+        int bottom = window.y + window.height;
+        int bandCount = Math.max(1, Math.min(pool.getParallelism() * 4, window.height / MIN_BAND_HEIGHT));
+        int bandHeight = (window.height + bandCount - 1) / bandCount;
+        bandCount = (window.height + bandHeight - 1) / bandHeight;
+        Band[] bands = new Band[bandCount];
+        int slack = eightConnected ? 1 : 0;
+
+        //1. běhy a jejich spojení uvnitř pásů
+        Parallel.run(pool, bandCount, b -> {
+            int y0 = top + b * bandHeight;
+            bands[b] = new Band(canvas, window.x, window.x + window.width, y0, Math.min(y0 + bandHeight, bottom),
+                    mask, targetColor, slack);
+        });
+
+        //2. globální union-find
+        int total = 0;
+        for (Band band : bands) {
+            band.offset = total;
+            total += band.runCount();
+        }
+        int[] parent = new int[total];
+        Parallel.run(pool, bandCount, b -> bands[b].exportParents(parent));
+        for (int b = 1; b < bandCount; b++) {
+            Band upper = bands[b - 1];
+            Band lower = bands[b];
+            upper.linkRows(upper.rowCount() - 1, lower, 0, slack, parent);
+        }
+
+        //3. vyplnění všech běhů ze stejné komponenty jako semínko
+        Band seedBand = bands[(start.y - top) / bandHeight];
+        int root = findShared(parent, seedBand.offset + seedBand.runAt(start.y - seedBand.y0, start.x));
+        Parallel.run(pool, bandCount, b -> bands[b].fillComponent(canvas, parent, root, replacementColor));
+        for (Band band : bands) {
+            if (band.filledX0 <= band.filledX1) {
+                canvas.addDamage(band.filledX0, band.filledY0, band.filledX1 + 1, band.filledY1 + 1);
+            }
+        }
+    }
+
+    //kořen v union-find, cestu cestou zkracuje (půlení cesty) - jen pro jedno vlákno
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    //kořen bez zápisů do pole - bezpečné při čtení z více vláken najednou
+    private static int findShared(int[] parent, int i) {
+        while (parent[i] != i) i = parent[i];
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a < b) parent[b] = a;
+        else if (b < a) parent[a] = b;
+    }
+
+    /*Jeden pás řádků - běhy cílové barvy a jejich lokální union-find
+    * runStart/runEnd jsou souřadnice x (včetně), rowFirst[r] je index prvního běhu v řádku r*/
+    private static final class Band {
+        final int y0;
+        final IntList runStart = new IntList(64);
+        final IntList runEnd = new IntList(64);
+        final int[] rowFirst;
+        int[] parent;
+        int offset;
+        //obdélník vyplněných pixelů v pásu (včetně konců), prázdný když filledX0 > filledX1
+        int filledX0 = Integer.MAX_VALUE, filledY0 = Integer.MAX_VALUE;
+        int filledX1 = Integer.MIN_VALUE, filledY1 = Integer.MIN_VALUE;
+
+        //řádky y0 .. y1 - 1 a sloupce x0 .. x1 - 1 plátna
+        Band(Raster canvas, int x0, int x1, int y0, int y1, int mask, int targetColor, int slack) {
+            this.y0 = y0;
+            int[] data = canvas.getData();
+            rowFirst = new int[y1 - y0 + 1];
+            for (int y = y0; y < y1; y++) {
+                rowFirst[y - y0] = runStart.size();
+                int row = offset(canvas, 0, y);
+                int x = x0;
+                while (x < x1) {
+                    if ((data[row + x] & mask) != targetColor) {
+                        x++;
+                        continue;
+                    }
+                    int s = x;
+                    while (x < x1 && (data[row + x] & mask) == targetColor) x++;
+                    runStart.add(s);
+                    runEnd.add(x - 1);
+                }
+            }
+            rowFirst[y1 - y0] = runStart.size();
+
+            parent = new int[runStart.size()];
+            for (int i = 0; i < parent.length; i++) parent[i] = i;
+            for (int r = 1; r < rowCount(); r++) {
+                linkRows(r - 1, this, r, slack, parent);
+            }
+        }
+
+        int rowCount() {
+            return rowFirst.length - 1;
+        }
+
+        int runCount() {
+            return parent.length;
+        }
+
+        //index běhu v řádku r, který obsahuje souřadnici x
+        int runAt(int r, int x) {
+            for (int i = rowFirst[r]; i < rowFirst[r + 1]; i++) {
+                if (runStart.get(i) <= x && x <= runEnd.get(i)) return i;
+            }
+            throw new IllegalStateException("bod neleží v žádném běhu");
+        }
+
+        /*Spojí běhy řádku r tohoto pásu s běhy řádku r2 pásu other, které se dotýkají
+        * Oba seznamy jsou seřazené podle x, takže stačí projít je jednou souběžně
+        * parent je buď lokální pole pásu, nebo globální pole (pak se přičítají offsety)*/
+        void linkRows(int r, Band other, int r2, int slack, int[] parent) {
+            boolean global = parent != this.parent;
+            int i = rowFirst[r], iEnd = rowFirst[r + 1];
+            int j = other.rowFirst[r2], jEnd = other.rowFirst[r2 + 1];
+            while (i < iEnd && j < jEnd) {
+                int endA = runEnd.get(i);
+                int endB = other.runEnd.get(j);
+                if (runStart.get(i) <= endB + slack && other.runStart.get(j) <= endA + slack) {
+                    union(parent, global ? offset + i : i, global ? other.offset + j : j);
+                }
+                if (endA < endB) i++;
+                else j++;
+            }
+        }
+
+        //zapíše lokální kořeny do globálního pole (s posunem o offset)
+        void exportParents(int[] global) {
+            for (int i = 0; i < parent.length; i++) {
+                global[offset + i] = offset + find(parent, i);
+            }
+        }
+
+        void fillComponent(Raster canvas, int[] global, int root, int replacementColor) {
+            int[] data = canvas.getData();
+            for (int r = 0; r < rowCount(); r++) {
+                int row = offset(canvas, 0, y0 + r);
+                for (int i = rowFirst[r]; i < rowFirst[r + 1]; i++) {
+                    if (findShared(global, offset + i) == root) {
+                        Arrays.fill(data, row + runStart.get(i), row + runEnd.get(i) + 1, replacementColor);
+                        filledX0 = Math.min(filledX0, runStart.get(i));
+                        filledX1 = Math.max(filledX1, runEnd.get(i));
+                        filledY0 = Math.min(filledY0, y0 + r);
+                        filledY1 = Math.max(filledY1, y0 + r);
+                    }
+                }
+            }
+        }
+    }
+}
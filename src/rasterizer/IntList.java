@@ -0,0 +1,39 @@
+package rasterizer;
+
+import java.util.Arrays;
+
+/*
+* Rostoucí seznam primitivních intů
+* Používá se tam, kde by List<Integer> zbytečně vytvářel objekt pro každé číslo*/
+final class IntList {
+    private int[] items;
+    private int size;
+
+    IntList(int capacity) {
+        items = new int[Math.max(capacity, 1)];
+    }
+
+    void add(int value) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        items[size++] = value;
+    }
+
+    int get(int index) {
+        return items[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    //vnitřní pole - platných je jen prvních size() prvků
+    int[] array() {
+        return items;
+    }
+}
@@ -0,0 +1,33 @@
+package rasterizer;
+
+import java.util.Arrays;
+
+/*
+* Jednoduchý zásobník primitivních intů pro algoritmy vyplňování
+* Na rozdíl od Queue<Point> nevytváří pro každou položku nový objekt,
+* pole se jen zdvojnásobí, když dojde místo*/
+final class IntStack {
+    private int[] items;
+    private int size;
+
+    IntStack(int capacity) {
+        items = new int[Math.max(capacity, 2)];
+    }
+
+    //uloží dvojici hodnot (typicky x a y), vybírá se v opačném pořadí
+    void push(int a, int b) {
+        if (size + 2 > items.length) {
+            items = Arrays.copyOf(items, Math.max(size * 2, size + 2));
+        }
+        items[size++] = a;
+        items[size++] = b;
+    }
+
+    int pop() {
+        return items[--size];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
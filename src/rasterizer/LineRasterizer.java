@@ -1,12 +1,28 @@
 package rasterizer;
 
+import model.BrushTip;
 import model.Point;
 import model.LineStyle;
-import java.awt.image.BufferedImage;
 import java.awt.Color;
+import java.util.Arrays;
 
 
 public class LineRasterizer {
+    //body právě kreslené čárky - pole se mezi voláními znovu používají
+    private int[] runX = new int[256];
+    private int[] runY = new int[256];
+    private int runLength;
+    //vyhlazené kreslení - tenká čára Wuovým algoritmem, tlustá po čárkách přes StrokeRasterizer
+    private boolean antialiased;
+    private final StrokeRasterizer stroke = new StrokeRasterizer();
+
+    public void setAntialiased(boolean antialiased) {
+        this.antialiased = antialiased;
+    }
+
+    public boolean isAntialiased() {
+        return antialiased;
+    }
 
     /*
     * Mezi danými souřadnicemi vykreslí čáru se stylem
@@ -29,7 +45,22 @@ public class LineRasterizer {
     * směr přímky
     * */
 
-    public void drawLine(BufferedImage img, Point p1, Point p2, Color color, int thickness, LineStyle style) {
+    public void drawLine(PixelSurface raster, Point p1, Point p2, Color color, int thickness, LineStyle style) {
+        int argb = color.getRGB();
+        int radius = thickness / 2;
+        if (antialiased) {
+            if (radius == 0) {
+                drawWuLine(raster, p1.x, p1.y, p2.x, p2.y, argb, thickness, style);
+                return;
+            }
+            stroke.begin(raster, thickness, BrushTip.SQUARE, argb, true);
+            if (style == LineStyle.SOLID) {
+                //plná čára je jediná čárka od p1 do p2 - body Bresenhamu se nemusí sbírat
+                stroke.segment(p1.x, p1.y, p2.x, p2.y);
+                stroke.end();
+                return;
+            }
+        }
         int x0 = p1.x;
         int y0 = p1.y;
         int x1 = p2.x;
@@ -42,22 +73,16 @@ public class LineRasterizer {
         int err = dx - dy;
 
         int step = 0;
-        int dashLength = thickness * 3;
-        int spaceLength = style == LineStyle.DOTTED ? thickness * 2 : thickness * 3;
+        runLength = 0;
 
         while (true) {
-            boolean draw = true;
-
-            if (style == LineStyle.DASHED) {
-                int cycle = dashLength + spaceLength;
-                draw = (step % cycle) < dashLength;
-            } else if (style == LineStyle.DOTTED) {
-                int cycle = thickness + spaceLength;
-                draw = (step % cycle) < thickness;
-            }
+            boolean draw = isOn(step, thickness, style);
 
+            //body jedné čárky se sbírají a vykreslí najednou po řádcích
             if (draw) {
-                drawThickPixel(img, x0, y0, thickness, color);
+                addToRun(x0, y0);
+            } else if (runLength > 0) {
+                flushRun(raster, radius, argb);
             }
 
             if (x0 == x1 && y0 == y1) break;
@@ -74,23 +99,108 @@ public class LineRasterizer {
 
             step++;
         }
+        if (runLength > 0) flushRun(raster, radius, argb);
+        if (antialiased) stroke.end();
     }
 
-    //Bere velikost pixelu v ohledu na hranice canvasu
-
+    //jestli se pixel v kroku step čáry kreslí (čárky a tečky úměrné tloušťce)
+    private static boolean isOn(int step, int thickness, LineStyle style) {
+        if (style == LineStyle.DASHED) {
+            return step % (thickness * 6) < thickness * 3;
+        } else if (style == LineStyle.DOTTED) {
+            return step % (thickness * 3) < thickness;
+        }
+        return true;
+    }
 
-    private void drawThickPixel(BufferedImage img, int x, int y, int thickness, Color color) {
-        int radius = thickness / 2;
-        for (int dx = -radius; dx <= radius; dx++) {
-            for (int dy = -radius; dy <= radius; dy++) {
-                int px = x + dx;
-                int py = y + dy;
-                if (px >= 0 && py >= 0 && px < img.getWidth() && py < img.getHeight()) {
-                    img.setRGB(px, py, color.getRGB());
+    /*Vyhlazená tenká čára - Wuův algoritmus v pevné řádové čárce 16.16
+    *
+    * Čára jde po hlavní ose po jednom pixelu (stejné kroky jako Bresenham, takže i stejné čárky stylu)
+    * a ve vedlejší ose se přičítá sklon. Poloha na vedlejší ose leží mezi dvěma pixely,
+    * horních 8 bitů zlomku je pokrytí druhého z nich, první dostane zbytek do 255.
+    * Koncové body jsou celočíselné, takže tam čára kreslí jeden plný pixel
+    * Poloha je v longu - v intu by 16.16 přetekla už od souřadnice 32768 (plátna 50k x 50k)*/
+    private void drawWuLine(PixelSurface raster, int x0, int y0, int x1, int y1, int argb, int thickness, LineStyle style) {
+        int dx = x1 - x0;
+        int dy = y1 - y0;
+        boolean steep = Math.abs(dy) > Math.abs(dx);
+        int steps = Math.max(Math.abs(dx), Math.abs(dy));
+        if (steps == 0) {
+            raster.blendPixel(x0, y0, argb, 255);
+            return;
+        }
+        int major = steep ? (dy > 0 ? 1 : -1) : (dx > 0 ? 1 : -1);
+        //sklon vedlejší osy na jeden krok hlavní osy
+        long gradient = ((long) (steep ? dx : dy) << 16) / steps;
+        long minor = (long) (steep ? x0 : y0) << 16;
+        int along = steep ? y0 : x0;
+        for (int step = 0; step <= steps; step++) {
+            if (isOn(step, thickness, style)) {
+                int base = (int) (minor >> 16);
+                int frac = (int) (minor >> 8) & 0xFF;
+                if (steep) {
+                    raster.blendPixel(base, along, argb, 255 - frac);
+                    raster.blendPixel(base + 1, along, argb, frac);
+                } else {
+                    raster.blendPixel(along, base, argb, 255 - frac);
+                    raster.blendPixel(along, base + 1, argb, frac);
                 }
             }
+            along += major;
+            minor += gradient;
+        }
+    }
+
+    private void addToRun(int x, int y) {
+        if (runLength == runX.length) {
+            runX = Arrays.copyOf(runX, runLength * 2);
+            runY = Arrays.copyOf(runY, runLength * 2);
+        }
+        runX[runLength] = x;
+        runY[runLength] = y;
+        runLength++;
+    }
+
+    /*Vykreslí nasbíranou čárku (souvislý úsek bodů Bresenhamu) s tloušťkou
+    *
+    * Dřív se pro každý bod kreslil čtverec (2 * radius + 1) na stranu, takže se každý pixel
+    * tlusté čáry zapsal mnohokrát. Výsledný tvar je ale v každém řádku jeden souvislý úsek:
+    * body, jejichž čtverec do řádku Y zasahuje, mají y v rozsahu Y - radius .. Y + radius,
+    * a protože x i y se podél čáry mění monotónně a nejvýš o 1, tvoří souvislý úsek bodů
+    * od lo do hi a jejich čtverce pokrývají x od min(x[lo], x[hi]) - radius do max(...) + radius.
+    * Kreslí se tedy jeden fillSpan na řádek - pixel po pixelu stejný výsledek bez překreslování.
+    * Svislá a vodorovná čárka je jeden obdélník (fillRect po celých řádcích)*/
+    private void flushRun(PixelSurface raster, int radius, int argb) {
+        int n = runLength;
+        runLength = 0;
+        if (antialiased) {
+            //vyhlazená čárka je úsečka tažená čtvercem 2 * radius + 1, tedy stejný tvar jako razítka
+            stroke.segment(runX[0], runY[0], runX[n - 1], runY[n - 1]);
+            return;
+        }
+        int first = 0;
+        int last = n - 1;
+        if (runX[first] == runX[last] || runY[first] == runY[last]) {
+            int left = Math.min(runX[first], runX[last]) - radius;
+            int top = Math.min(runY[first], runY[last]) - radius;
+            raster.fillRect(left, top, Math.abs(runX[last] - runX[first]) + 2 * radius + 1,
+                    Math.abs(runY[last] - runY[first]) + 2 * radius + 1, argb);
+            return;
+        }
+
+        //řádky se procházejí ve směru čáry, okno bodů lo..hi se posouvá s nimi
+        int dir = runY[last] > runY[first] ? 1 : -1;
+        int lo = 0;
+        int hi = 0;
+        for (int y = runY[first] - dir * radius; y != runY[last] + dir * (radius + 1); y += dir) {
+            while ((runY[lo] - y) * dir < -radius) lo++;
+            while (hi + 1 < n && (runY[hi + 1] - y) * dir <= radius) hi++;
+            int left = Math.min(runX[lo], runX[hi]) - radius;
+            int right = Math.max(runX[lo], runX[hi]) + radius;
+            raster.fillSpan(left, right, y, argb);
         }
     }
+
     /*Pomocí goniometrických funkcí (atan2) prorovnává
     úhel mezi body, a pak zaokrouhlí body na stejnou Xovou
     nebo Ypsilonovou souřadnici
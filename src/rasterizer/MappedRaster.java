@@ -0,0 +1,301 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+* Plátno uložené v souboru namapovaném do paměti (FileChannel.map) místo BufferedImage na haldě
+* Pro skeny a mapy, které se na haldu nevejdou (50k x 50k pixelů jsou 10 GB)
+*
+* Soubor je hlavička (MAGIC, šířka, výška) a za ní pixely řádek po řádku jako int
+* (barva RGB v dolních 24 bitech, stejně jako u neprůhledného Rasteru).
+* Hlavička i pixely jsou vždy little endian (BYTE_ORDER), takže soubor jde otevřít na každém stroji
+* a na x86 / ARM se pixely čtou bez prohazování bajtů.
+* Namapovat se najednou dá nejvýš 2 GB, takže se soubor mapuje po pásech řádků (CHUNK_BYTES)
+* a namapovaných pásů je nejvýš MAX_MAPPED_CHUNKS - nejdéle nepoužitý pás se zahodí
+* a stránky za něj si systém uvolní sám. Halda tak zůstává stejná pro jakkoliv velký obrázek.
+*
+* Nový soubor se nevyplňuje - nezapsané bajty jsou nuly, tedy černá barva,
+* a otevření existujícího souboru je okamžité, data už na disku jsou.
+* Není vláknově bezpečný, kreslí se z jednoho vlákna
+*
+* Editor (DrawingPanel) s ním nepracuje - kreslí do Rasteru na haldě. MappedRaster je plátno
+* pro dávkové vykreslování (BatchApp -m) a pro vlastní programy nad rasterizery,
+* výřez se dá zobrazit nebo uložit přes copyTo do Rasteru*/
+public class MappedRaster implements PixelSurface, Closeable {
+    private static final int MAGIC = 0x44545731;
+    private static final int HEADER_BYTES = 16;
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    //velikost jednoho namapovaného pásu řádků
+    private static final long CHUNK_BYTES = 16L << 20;
+    private static final int MAX_MAPPED_CHUNKS = 64;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int rowsPerChunk;
+    private final MappedByteBuffer[] buffers;
+    private final IntBuffer[] views;
+    //kdy se pás naposledy použil, pro zahození nejdéle nepoužitého
+    private final long[] lastUse;
+    private long clock;
+    private int mappedCount;
+    //naposledy použitý pás - sousední pixely jsou skoro vždy ve stejném pásu
+    private int currentChunk = -1;
+    private IntBuffer currentView;
+    //řádek pixelů jedné barvy pro hromadný zápis úseku, platných je prvních spanLength
+    private int[] spanPixels = new int[0];
+    private int spanLength;
+    private int spanColor;
+    private int damageX0 = Integer.MAX_VALUE;
+    private int damageY0 = Integer.MAX_VALUE;
+    private int damageX1 = Integer.MIN_VALUE;
+    private int damageY1 = Integer.MIN_VALUE;
+
+    private MappedRaster(FileChannel channel, int width, int height) {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.rowsPerChunk = (int) Math.max(1, CHUNK_BYTES / (4L * width));
+        int chunks = (height + rowsPerChunk - 1) / rowsPerChunk;
+        this.buffers = new MappedByteBuffer[chunks];
+        this.views = new IntBuffer[chunks];
+        this.lastUse = new long[chunks];
+    }
+
+    //vytvoří nový soubor s černým plátnem width x height
+    public static MappedRaster create(Path file, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Neplatná velikost plátna " + width + "x" + height);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+            header.putInt(MAGIC).putInt(width).putInt(height).putInt(0).flip();
+            channel.write(header, 0);
+            //zapsání posledního bajtu natáhne soubor na plnou délku, mezera zůstane řídká
+            channel.write(ByteBuffer.allocate(1), HEADER_BYTES + 4L * width * height - 1);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new MappedRaster(channel, width, height);
+    }
+
+    //otevře existující soubor - nic se nečte, pásy se namapují až při prvním přístupu
+    public static MappedRaster open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Soubor " + file + " není plátno DrawTwo");
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            if (width <= 0 || height <= 0 || channel.size() < HEADER_BYTES + 4L * width * height) {
+                throw new IOException("Soubor " + file + " je poškozený");
+            }
+            return new MappedRaster(channel, width, height);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public int readBack(int argb) {
+        return argb | 0xFF000000;
+    }
+
+    public int getPixel(int x, int y) {
+        if (!contains(x, y)) return 0;
+        return view(y).get(offset(x, y)) | 0xFF000000;
+    }
+
+    //celý řádek najednou z namapovaného pásu
+    @Override
+    public void getRow(int y, int[] row) {
+        if (y < 0 || y >= height) return;
+        view(y).get(offset(0, y), row, 0, width);
+        for (int x = 0; x < width; x++) {
+            row[x] |= 0xFF000000;
+        }
+    }
+
+    public void setPixel(int x, int y, int argb) {
+        if (!contains(x, y)) return;
+        view(y).put(offset(x, y), argb & 0x00FFFFFF);
+        addDamage(x, y, x + 1, y + 1);
+    }
+
+    public void fillSpan(int x0, int x1, int y, int argb) {
+        if (y < 0 || y >= height) return;
+        if (x0 > x1) {
+            int t = x0;
+            x0 = x1;
+            x1 = t;
+        }
+        x0 = Math.max(x0, 0);
+        x1 = Math.min(x1, width - 1);
+        if (x0 > x1) return;
+        writeSpan(x0, x1, y, argb & 0x00FFFFFF);
+        addDamage(x0, y, x1 + 1, y + 1);
+    }
+
+    public void fillRect(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, width);
+        int y1 = Math.min(y + h, height);
+        if (x0 >= x1 || y0 >= y1) return;
+        int pixel = argb & 0x00FFFFFF;
+        for (int row = y0; row < y1; row++) {
+            writeSpan(x0, x1 - 1, row, pixel);
+        }
+        addDamage(x0, y0, x1, y1);
+    }
+
+    public void fill(int argb) {
+        fillRect(0, 0, width, height, argb);
+    }
+
+    /*Zkopíruje obdélník w x h od sx, sy do rastru target na dx, dy
+    * třeba do obrázku pro zobrazení nebo export výřezu, čte se po řádcích najednou*/
+    public void copyTo(Raster target, int sx, int sy, int dx, int dy, int w, int h) {
+        int x0 = Math.max(sx, 0);
+        int x1 = Math.min(sx + w, width);
+        if (x0 >= x1) return;
+        int[] row = new int[x1 - x0];
+        for (int r = 0; r < h; r++) {
+            int y = sy + r;
+            if (y < 0 || y >= height) continue;
+            view(y).get(offset(x0, y), row, 0, x1 - x0);
+            int tx = dx + x0 - sx;
+            int ty = dy + r;
+            for (int i = 0; i < x1 - x0; i++) {
+                target.setPixel(tx + i, ty, row[i] | 0xFF000000);
+            }
+        }
+    }
+
+    //úsek se zapíše jedním put z řádku stejné barvy - ten se doplňuje jen při jiné barvě nebo delším úseku
+    private void writeSpan(int x0, int x1, int y, int pixel) {
+        int count = x1 - x0 + 1;
+        if (pixel != spanColor) {
+            spanColor = pixel;
+            spanLength = 0;
+        }
+        if (count > spanLength) {
+            if (spanPixels.length < count) {
+                spanPixels = Arrays.copyOf(spanPixels, Math.max(count, Math.min(2 * spanPixels.length, width)));
+            }
+            Arrays.fill(spanPixels, spanLength, count, pixel);
+            spanLength = count;
+        }
+        view(y).put(offset(x0, y), spanPixels, 0, count);
+    }
+
+    private int offset(int x, int y) {
+        return (y % rowsPerChunk) * width + x;
+    }
+
+    //pás s řádkem y, podle potřeby ho namapuje (a zahodí nejdéle nepoužitý)
+    private IntBuffer view(int y) {
+        int chunk = y / rowsPerChunk;
+        if (chunk == currentChunk) return currentView;
+        IntBuffer view = views[chunk];
+        if (view == null) view = map(chunk);
+        lastUse[chunk] = ++clock;
+        currentChunk = chunk;
+        currentView = view;
+        return view;
+    }
+
+    private IntBuffer map(int chunk) {
+        if (mappedCount == MAX_MAPPED_CHUNKS) {
+            int oldest = -1;
+            for (int i = 0; i < views.length; i++) {
+                if (views[i] != null && (oldest == -1 || lastUse[i] < lastUse[oldest])) oldest = i;
+            }
+            //zápisy se před zahozením pošlou na disk (jako flush), samotné odmapování pak udělá garbage collector
+            buffers[oldest].force();
+            buffers[oldest] = null;
+            views[oldest] = null;
+            mappedCount--;
+        }
+        int rows = Math.min(rowsPerChunk, height - chunk * rowsPerChunk);
+        long position = HEADER_BYTES + 4L * width * chunk * rowsPerChunk;
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, 4L * width * rows);
+            buffers[chunk] = buffer;
+            views[chunk] = buffer.order(BYTE_ORDER).asIntBuffer();
+        } catch (IOException e) {
+            throw new IllegalStateException("Nepodařilo se namapovat část plátna", e);
+        }
+        mappedCount++;
+        return views[chunk];
+    }
+
+    //zapíše změněné stránky na disk
+    public void flush() {
+        for (MappedByteBuffer buffer : buffers) {
+            if (buffer != null) buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = null;
+            views[i] = null;
+        }
+        currentChunk = -1;
+        currentView = null;
+        channel.close();
+    }
+
+    public void addDamage(int x0, int y0, int x1, int y1) {
+        if (x0 < damageX0) damageX0 = x0;
+        if (y0 < damageY0) damageY0 = y0;
+        if (x1 > damageX1) damageX1 = x1;
+        if (y1 > damageY1) damageY1 = y1;
+    }
+
+    public Rectangle getDamage() {
+        if (damageX0 >= damageX1 || damageY0 >= damageY1) return null;
+        return new Rectangle(damageX0, damageY0, damageX1 - damageX0, damageY1 - damageY0);
+    }
+
+    public Rectangle takeDamage() {
+        Rectangle damage = getDamage();
+        damageX0 = Integer.MAX_VALUE;
+        damageY0 = Integer.MAX_VALUE;
+        damageX1 = Integer.MIN_VALUE;
+        damageY1 = Integer.MIN_VALUE;
+        return damage;
+    }
+}
@@ -0,0 +1,151 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/*
+* Zmenšeniny plátna (mipmapy) pro oddálený pohled
+*
+* Úroveň k má 1 / 2^k velikosti plátna (zaokrouhleno nahoru), každý její pixel je průměr
+* 2x2 pixelů úrovně k - 1 (u liché velikosti se poslední řádek / sloupec zopakuje).
+* Úroveň 0 je samotné plátno, drží se úrovně 1 až MAX_LEVEL (1/2 až 1/32).
+*
+* Oddálený pohled tak jen vykreslí hotovou úroveň 1:1 a nezmenšuje při každém snímku celé plátno.
+* Každá úroveň je rozdělená na dlaždice TILE_SIZE x TILE_SIZE. Kreslení do plátna (invalidate)
+* označí jen dlaždice nad změněnou oblastí ve všech úrovních a getLevel je přepočítá až tehdy,
+* když se úroveň opravdu kreslí - od nejmenšího k, protože každá úroveň se počítá z předchozí.
+* Poprvé jsou všechny dlaždice neplatné, takže se úrovně postaví až při prvním oddálení.
+*
+* https://en.wikipedia.org/wiki/Mipmap*/
+public final class MipmapPyramid {
+    public static final int MAX_LEVEL = 5;
+    public static final int TILE_SIZE = 64;
+    private static final int TILE_SHIFT = 6;
+
+    private final Raster base;
+    //levels[k] je úroveň k, levels[0] je null (plátno samo)
+    private final Level[] levels;
+
+    public MipmapPyramid(Raster base) {
+        this.base = base;
+        this.levels = new Level[MAX_LEVEL + 1];
+        int w = base.getWidth();
+        int h = base.getHeight();
+        for (int k = 1; k <= MAX_LEVEL; k++) {
+            w = (w + 1) >> 1;
+            h = (h + 1) >> 1;
+            levels[k] = new Level(w, h, base.isOpaque());
+        }
+    }
+
+    /*Zneplatní dlaždice nad oblastí x, y, w, h plátna ve všech úrovních
+    * pixel úrovně k pokrývá pixely plátna (x << k) až ((x + 1) << k) - 1*/
+    public void invalidate(int x, int y, int w, int h) {
+        int x0 = Math.max(0, x);
+        int y0 = Math.max(0, y);
+        int x1 = Math.min(base.getWidth(), x + w);
+        int y1 = Math.min(base.getHeight(), y + h);
+        if (x0 >= x1 || y0 >= y1) return;
+        for (int k = 1; k <= MAX_LEVEL; k++) {
+            levels[k].markDirty(x0 >> k, y0 >> k, (x1 - 1) >> k, (y1 - 1) >> k);
+        }
+    }
+
+    public void invalidate(Rectangle area) {
+        invalidate(area.x, area.y, area.width, area.height);
+    }
+
+    public void invalidateAll() {
+        invalidate(0, 0, base.getWidth(), base.getHeight());
+    }
+
+    /*Vrátí úroveň level (1 až MAX_LEVEL) s přepočítanými neplatnými dlaždicemi
+    * obrázek má velikost plátna >> level a pixel (x, y) odpovídá pixelu plátna (x << level, y << level)*/
+    public BufferedImage getLevel(int level) {
+        if (level < 1 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Úroveň mipmapy musí být 1 až " + MAX_LEVEL + ": " + level);
+        }
+        for (int k = 1; k <= level; k++) {
+            int[] src = k == 1 ? base.getData() : levels[k - 1].data;
+            int srcStride = k == 1 ? base.getStride() : levels[k - 1].width;
+            int srcW = k == 1 ? base.getWidth() : levels[k - 1].width;
+            int srcH = k == 1 ? base.getHeight() : levels[k - 1].height;
+            levels[k].rebuildDirty(src, srcStride, srcW, srcH);
+        }
+        return levels[level].image;
+    }
+
+    private static final class Level {
+        final int width;
+        final int height;
+        final BufferedImage image;
+        final int[] data;
+        final int tilesX;
+        final int tilesY;
+        final boolean[] dirty;
+        int dirtyCount;
+
+        Level(int width, int height, boolean opaque) {
+            this.width = width;
+            this.height = height;
+            this.image = new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            this.data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            this.tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+            this.tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+            this.dirty = new boolean[tilesX * tilesY];
+            markDirty(0, 0, width - 1, height - 1);
+        }
+
+        //označí dlaždice pod pixely x0..x1, y0..y1 (včetně) této úrovně
+        void markDirty(int x0, int y0, int x1, int y1) {
+            int tx1 = Math.min(tilesX - 1, x1 >> TILE_SHIFT);
+            int ty1 = Math.min(tilesY - 1, y1 >> TILE_SHIFT);
+            for (int ty = y0 >> TILE_SHIFT; ty <= ty1; ty++) {
+                for (int tx = x0 >> TILE_SHIFT; tx <= tx1; tx++) {
+                    int tile = ty * tilesX + tx;
+                    if (!dirty[tile]) {
+                        dirty[tile] = true;
+                        dirtyCount++;
+                    }
+                }
+            }
+        }
+
+        void rebuildDirty(int[] src, int srcStride, int srcW, int srcH) {
+            if (dirtyCount == 0) return;
+            for (int tile = 0; tile < dirty.length; tile++) {
+                if (!dirty[tile]) continue;
+                int x0 = (tile % tilesX) << TILE_SHIFT;
+                int y0 = (tile / tilesX) << TILE_SHIFT;
+                downsample(src, srcStride, srcW, srcH, x0, y0,
+                        Math.min(width, x0 + TILE_SIZE), Math.min(height, y0 + TILE_SIZE));
+                dirty[tile] = false;
+            }
+            dirtyCount = 0;
+        }
+
+        /*Průměr 2x2 pixelů zdroje pro pixely x0..x1, y0..y1 (bez x1, y1)
+        * kanály se sčítají po dvou v jednom intu (R a B, A a G) - součet čtyř 8bitových hodnot se vejde do 10 bitů*/
+        void downsample(int[] src, int srcStride, int srcW, int srcH, int x0, int y0, int x1, int y1) {
+            for (int y = y0; y < y1; y++) {
+                int row0 = 2 * y * srcStride;
+                int row1 = Math.min(2 * y + 1, srcH - 1) * srcStride;
+                int out = y * width;
+                for (int x = x0; x < x1; x++) {
+                    int sx0 = 2 * x;
+                    int sx1 = Math.min(sx0 + 1, srcW - 1);
+                    int a = src[row0 + sx0];
+                    int b = src[row0 + sx1];
+                    int c = src[row1 + sx0];
+                    int d = src[row1 + sx1];
+                    int rb = (a & 0x00FF00FF) + (b & 0x00FF00FF) + (c & 0x00FF00FF) + (d & 0x00FF00FF);
+                    int ag = ((a >>> 8) & 0x00FF00FF) + ((b >>> 8) & 0x00FF00FF) + ((c >>> 8) & 0x00FF00FF) + ((d >>> 8) & 0x00FF00FF);
+                    rb = ((rb + 0x00020002) >>> 2) & 0x00FF00FF;
+                    ag = ((ag + 0x00020002) >>> 2) & 0x00FF00FF;
+                    data[out + x] = rb | (ag << 8);
+                }
+            }
+        }
+    }
+}
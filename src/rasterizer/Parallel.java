@@ -0,0 +1,20 @@
+package rasterizer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/*
+* Společné spouštění paralelní práce pro rasterizery (pásy výplně, dlaždice mezipaměti oblastí,
+* pásy převzorkování výběru)
+*
+* Úlohy 0 .. count - 1 se rozdělí na ForkJoinPool, který si rasterizer dostal v konstruktoru
+* (ne nutně commonPool), a volající počká, až doběhnou všechny*/
+final class Parallel {
+    private Parallel() {
+    }
+
+    static void run(ForkJoinPool pool, int count, IntConsumer task) {
+        pool.submit(() -> IntStream.range(0, count).parallel().forEach(task)).join();
+    }
+}
@@ -0,0 +1,67 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+
+/*
+* Společné rozhraní pro všechno, do čeho kreslí rasterizery
+* - Raster: pixely v poli int[] obrázku na haldě
+* - MappedRaster: pixely v souboru namapovaném do paměti, pro obrázky větší než halda
+*
+* Barvy jsou ARGB (jako Color.getRGB()), zápisy mimo plochu se zahazují
+* a každý zápis se přidá do poškozené oblasti (damage)*/
+public interface PixelSurface {
+
+    int getWidth();
+
+    int getHeight();
+
+    //jestli bod leží na ploše, do které se dá zapisovat
+    boolean contains(int x, int y);
+
+    //ARGB barva, kterou getPixel vrátí po zápisu argb (neprůhledná plocha zahodí alfu)
+    int readBack(int argb);
+
+    //ARGB barva pixelu, mimo plochu 0
+    int getPixel(int x, int y);
+
+    void setPixel(int x, int y, int argb);
+
+    //ARGB barvy celého řádku y do row (délky aspoň getWidth()) - výchozí verze po pixelech přes getPixel
+    default void getRow(int y, int[] row) {
+        int width = getWidth();
+        for (int x = 0; x < width; x++) {
+            row[x] = getPixel(x, y);
+        }
+    }
+
+    //vodorovný úsek od x0 do x1 (včetně) na řádku y
+    void fillSpan(int x0, int x1, int y, int argb);
+
+    void fillRect(int x, int y, int w, int h, int argb);
+
+    /*Smíchá barvu argb do pixelu s pokrytím coverage (0 - 255) - pro vyhlazené hrany
+    * výchozí verze jde přes getPixel a setPixel, Raster míchá rovnou v poli*/
+    default void blendPixel(int x, int y, int argb, int coverage) {
+        if (coverage <= 0 || !contains(x, y)) return;
+        int src = Blend.withCoverage(argb, Math.min(coverage, 255));
+        if ((src >>> 24) == 0) return;
+        setPixel(x, y, Blend.srcOver(src, getPixel(x, y)));
+    }
+
+    /*Smíchá barvu argb do pixelů x0 .. x0 + count - 1 na řádku y, pixel x0 + i s pokrytím coverage[offset + i]
+    * vyhlazené okraje se tak předávají po úsecích řádku - výchozí verze volá blendPixel pro každý pixel*/
+    default void blendSpan(int x0, int y, int argb, int[] coverage, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            blendPixel(x0 + i, y, argb, coverage[offset + i]);
+        }
+    }
+
+    void fill(int argb);
+
+    //rozšíří poškozenou oblast o obdélník x0..x1, y0..y1 (konce bez)
+    void addDamage(int x0, int y0, int x1, int y1);
+
+    Rectangle getDamage();
+
+    Rectangle takeDamage();
+}
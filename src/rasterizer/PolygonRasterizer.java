@@ -1,16 +1,34 @@
 package rasterizer;
 
+import model.FillRule;
 import model.Point;
 import model.LineStyle;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class PolygonRasterizer {
     private final LineRasterizer lineRasterizer;
     private final List<Point> points = new ArrayList<>();
 
+    /*tabulka hran plného polygonu - pole se mezi voláními znovu používají
+    * hrana je aktivní v řádcích top .. bottom - 1, x v řádku y je x0 + (y - y0) * slope*/
+    private int edgeCount;
+    private int[] edgeTop = new int[64];
+    private int[] edgeBottom = new int[64];
+    private double[] edgeX0 = new double[64];
+    private int[] edgeY0 = new int[64];
+    private double[] edgeSlope = new double[64];
+    //+1 hrana jde dolů, -1 nahoru (pro pravidlo vinutí)
+    private int[] edgeWinding = new int[64];
+    //hrany začínající ve stejném řádku jsou spojový seznam přes edgeNext, začátek v rowHead
+    private int[] edgeNext = new int[64];
+    private int[] rowHead = new int[0];
+    //seznam aktivních hran seřazený podle x v aktuálním řádku
+    private int[] active = new int[64];
+    private double[] activeX = new double[64];
+
 
     /* Polygon - List bodů
     * Klikáním na rastr volím body, do kterých povedou čáry
@@ -35,13 +53,151 @@ public class PolygonRasterizer {
         return dx * dx + dy * dy <= tolerance * tolerance;
     }
     //kreslí podle forcyklů - opět využívá logiku čar, aby se polygon nemusel dělat zvlášť
-    public void drawPolygon(BufferedImage img, Color color, int thickness, LineStyle style, boolean close) {
+    public void drawPolygon(PixelSurface raster, Color color, int thickness, LineStyle style, boolean close) {
         for (int i = 1; i < points.size(); i++) {
-            lineRasterizer.drawLine(img, points.get(i - 1), points.get(i), color, thickness, style);
+            lineRasterizer.drawLine(raster, points.get(i - 1), points.get(i), color, thickness, style);
         }
         if (close && points.size() > 2) {
-            lineRasterizer.drawLine(img, points.getLast(), points.getFirst(), color, thickness, style);
+            lineRasterizer.drawLine(raster, points.getLast(), points.getFirst(), color, thickness, style);
+        }
+    }
+
+    /*Plný polygon z nasbíraných bodů (uzavře se vždy)*/
+    public void fillPolygon(PixelSurface raster, Color color, FillRule rule) {
+        int n = points.size();
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = points.get(i).x;
+            ys[i] = points.get(i).y;
+        }
+        fillPolygon(raster, xs, ys, n, color.getRGB(), rule);
+    }
+
+    /*
+    * Plný polygon po řádcích - tabulka hran a seznam aktivních hran
+    *
+    * 1. Z každé nevodorovné hrany se uloží horní a dolní řádek a sklon, hrany se roztřídí
+    *    do přihrádek podle horního řádku (spojový seznam na řádek, žádné řazení celé tabulky)
+    * 2. Řádek po řádku se do seznamu aktivních hran přidají hrany, které v něm začínají,
+    *    vyhodí ty, které skončily, a spočítá se průsečík každé aktivní hrany s řádkem
+    * 3. Aktivní hrany se seřadí podle x - mezi dvěma řádky se pořadí mění jen tam, kde se hrany kříží,
+    *    takže řazení vkládáním je skoro zadarmo
+    * 4. Mezi průsečíky se podle pravidla (sudá-lichá nebo nenulové vinutí) vyplní úseky fillSpan
+    *
+    * Pixel je uvnitř, když je uvnitř jeho střed. Hrana patří do řádků od horního konce včetně
+    * po dolní bez něj a úsek od levého průsečíku včetně po pravý bez něj, takže polygony
+    * se společnou hranou se nepřekrývají a vrchol se nepočítá dvakrát.
+    * Cena je úměrná počtu hran, výšce polygonu a počtu vyplněných úseků - i pro tisíce vrcholů (laso)*/
+    public void fillPolygon(PixelSurface raster, int[] xs, int[] ys, int n, int argb, FillRule rule) {
+        if (n < 3) return;
+        int height = raster.getHeight();
+        edgeCount = 0;
+        int minTop = Integer.MAX_VALUE;
+        int maxBottom = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int j = i + 1 == n ? 0 : i + 1;
+            int xa = xs[i];
+            int ya = ys[i];
+            int xb = xs[j];
+            int yb = ys[j];
+            if (ya == yb) continue;
+            int winding = 1;
+            if (ya > yb) {
+                int t = xa;
+                xa = xb;
+                xb = t;
+                t = ya;
+                ya = yb;
+                yb = t;
+                winding = -1;
+            }
+            //hrany mimo plátno se vynechají, hrany přes horní okraj začínají v řádku 0
+            int top = Math.max(ya, 0);
+            int bottom = Math.min(yb, height);
+            if (top >= bottom) continue;
+            addEdge(top, bottom, xa, ya, (double) (xb - xa) / (yb - ya), winding);
+            minTop = Math.min(minTop, top);
+            maxBottom = Math.max(maxBottom, bottom);
+        }
+        if (edgeCount == 0) return;
+
+        if (rowHead.length < height) rowHead = new int[height];
+        Arrays.fill(rowHead, minTop, maxBottom, -1);
+        for (int e = 0; e < edgeCount; e++) {
+            edgeNext[e] = rowHead[edgeTop[e]];
+            rowHead[edgeTop[e]] = e;
+        }
+
+        int activeCount = 0;
+        for (int y = minTop; y < maxBottom; y++) {
+            for (int e = rowHead[y]; e != -1; e = edgeNext[e]) {
+                active[activeCount++] = e;
+            }
+            //skončené hrany ven, průsečíky s řádkem a řazení vkládáním podle x
+            int kept = 0;
+            for (int i = 0; i < activeCount; i++) {
+                int e = active[i];
+                if (edgeBottom[e] <= y) continue;
+                double x = edgeX0[e] + (y - edgeY0[e]) * edgeSlope[e];
+                int k = kept++;
+                while (k > 0 && activeX[k - 1] > x) {
+                    active[k] = active[k - 1];
+                    activeX[k] = activeX[k - 1];
+                    k--;
+                }
+                active[k] = e;
+                activeX[k] = x;
+            }
+            activeCount = kept;
+
+            if (rule == FillRule.EVEN_ODD) {
+                for (int i = 0; i + 1 < activeCount; i += 2) {
+                    span(raster, activeX[i], activeX[i + 1], y, argb);
+                }
+            } else {
+                int winding = 0;
+                double spanStart = 0;
+                for (int i = 0; i < activeCount; i++) {
+                    int before = winding;
+                    winding += edgeWinding[active[i]];
+                    if (before == 0) {
+                        spanStart = activeX[i];
+                    } else if (winding == 0) {
+                        span(raster, spanStart, activeX[i], y, argb);
+                    }
+                }
+            }
+        }
+    }
+
+    //pixely se středem od xa včetně do xb bez něj
+    private static void span(PixelSurface raster, double xa, double xb, int y, int argb) {
+        int from = (int) Math.ceil(xa);
+        int to = (int) Math.ceil(xb) - 1;
+        if (from <= to) raster.fillSpan(from, to, y, argb);
+    }
+
+    private void addEdge(int top, int bottom, int x0, int y0, double slope, int winding) {
+        if (edgeCount == edgeTop.length) {
+            int size = edgeCount * 2;
+            edgeTop = Arrays.copyOf(edgeTop, size);
+            edgeBottom = Arrays.copyOf(edgeBottom, size);
+            edgeX0 = Arrays.copyOf(edgeX0, size);
+            edgeY0 = Arrays.copyOf(edgeY0, size);
+            edgeSlope = Arrays.copyOf(edgeSlope, size);
+            edgeWinding = Arrays.copyOf(edgeWinding, size);
+            edgeNext = Arrays.copyOf(edgeNext, size);
+            active = Arrays.copyOf(active, size);
+            activeX = Arrays.copyOf(activeX, size);
         }
+        int e = edgeCount++;
+        edgeTop[e] = top;
+        edgeBottom[e] = bottom;
+        edgeX0[e] = x0;
+        edgeY0[e] = y0;
+        edgeSlope[e] = slope;
+        edgeWinding[e] = winding;
     }
 
     public void clear() {
@@ -0,0 +1,432 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/*
+* Přímý přístup k pixelům obrázku přes pole int[]
+* Místo BufferedImage.setRGB (které pro každý pixel prochází převodem přes ColorModel)
+* se zapisuje rovnou do DataBufferInt obrázku typu TYPE_INT_RGB nebo TYPE_INT_ARGB
+*
+* Všechny zápisy jsou ořezané na hranice rastru, takže rasterizery
+* nemusí kontrolovat, jestli bod leží na plátně
+*
+* Barvy se předávají jako ARGB (stejně jako Color.getRGB()),
+* u neprůhledného obrázku (TYPE_INT_RGB) se horní bajt ukládá jako 0 - stejně jako to dělá setRGB
+*
+* Raster si pamatuje obdélník všech pixelů, do kterých se od posledního takeDamage() zapisovalo
+* (damage), aby se mohla překreslit jen změněná část okna
+* Volitelně si pamatuje i jednotlivé zapsané dlaždice (trackDirtyTiles) - pak se dá
+* smazat jen to, kam se opravdu kreslilo, třeba u obrysu velkého obdélníku jen pás podél obrysu,
+* nebo přenést do TiledCanvas jen změněné dlaždice
+*
+* Obrázek může být menší než plátno - pak pokrývá jen okno od počátku (setOrigin)
+* a rasterizery pořád kreslí v souřadnicích plátna, zápisy mimo okno se zahodí
+* (tak si DrawingPanel drží malé vrstvy pro náhledy místo obrázků přes celé plátno)*/
+public class Raster implements PixelSurface {
+    private final BufferedImage image;
+    private final int[] data;
+    private final int stride;
+    private final int width;
+    private final int height;
+    private final boolean opaque;
+    //poloha levého horního pixelu obrázku v souřadnicích plátna
+    private int originX;
+    private int originY;
+    //okno, do kterého se dá zapisovat - průnik obrázku a plátna, konce bez
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+    //poškozená oblast - x0, y0 včetně, x1, y1 bez, prázdná když x0 >= x1
+    private int damageX0 = Integer.MAX_VALUE;
+    private int damageY0 = Integer.MAX_VALUE;
+    private int damageX1 = Integer.MIN_VALUE;
+    private int damageY1 = Integer.MIN_VALUE;
+    //součet ploch všech zápisů od vytvoření - pro měření (metrics), přepsané pixely se počítají znovu
+    private long pixelsWritten;
+    //bit pro každou dlaždici, do které se zapisovalo, null když se nesleduje
+    //dlaždice mají 1 << dirtyTileShift pixelů na stranu
+    private long[] dirtyTiles;
+    private int dirtyTileShift;
+    private int dirtyTilesX;
+
+    public Raster(BufferedImage image) {
+        this(image, image.getWidth(), image.getHeight());
+    }
+
+    //rastr plátna width x height, jehož obrázek pokrývá jen okno od počátku setOrigin
+    public Raster(BufferedImage image, int width, int height) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            throw new IllegalArgumentException("Raster podporuje jen TYPE_INT_RGB a TYPE_INT_ARGB, ne typ " + type);
+        }
+        this.image = image;
+        this.data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.stride = image.getWidth();
+        this.width = width;
+        this.height = height;
+        this.opaque = type == BufferedImage.TYPE_INT_RGB;
+        setOrigin(0, 0);
+    }
+
+    //posune obrázek na pozici x, y plátna, obsah pole zůstává
+    public void setOrigin(int x, int y) {
+        originX = x;
+        originY = y;
+        minX = Math.max(x, 0);
+        minY = Math.max(y, 0);
+        maxX = Math.min(x + stride, width);
+        maxY = Math.min(y + image.getHeight(), height);
+    }
+
+    /*Dočasně omezí zápisy na obdélník x, y, w, h (v souřadnicích plátna)
+    * třeba pro překreslení jen několika dlaždic, clearClip vrátí celé okno*/
+    public void setClip(int x, int y, int w, int h) {
+        setOrigin(originX, originY);
+        minX = Math.max(minX, x);
+        minY = Math.max(minY, y);
+        maxX = Math.min(maxX, x + w);
+        maxY = Math.min(maxY, y + h);
+    }
+
+    public void clearClip() {
+        setOrigin(originX, originY);
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /*Pole pixelů, řádek po řádku - index = (y - originY) * stride + (x - originX)
+    * u rastru přes celé plátno je to y * width + x (předpokládá to cache oblastí)*/
+    public int[] getData() {
+        return data;
+    }
+
+    //neprůhledný obrázek (TYPE_INT_RGB) - horní bajt v poli je 0
+    public boolean isOpaque() {
+        return opaque;
+    }
+
+    //šířka řádku v poli (šířka obrázku)
+    public int getStride() {
+        return stride;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= minX && y >= minY && x < maxX && y < maxY;
+    }
+
+    //okno, do kterého se dá zapisovat (obrázek na plátně, případně zúžený clipem), v souřadnicích plátna
+    public Rectangle getWindow() {
+        return new Rectangle(minX, minY, Math.max(maxX - minX, 0), Math.max(maxY - minY, 0));
+    }
+
+    private int index(int x, int y) {
+        return (y - originY) * stride + (x - originX);
+    }
+
+    /*Převede ARGB barvu na hodnotu, která se uloží do pole
+    * u RGB obrázku se zahodí alfa, jinak by se porovnání pixelů nechovalo stejně jako getRGB*/
+    public int toPixel(int argb) {
+        return opaque ? argb & 0x00FFFFFF : argb;
+    }
+
+    public int readBack(int argb) {
+        return opaque ? argb | 0xFF000000 : argb;
+    }
+
+    //maska platných bitů uložené hodnoty - pro porovnávání surových hodnot z pole
+    public int getPixelMask() {
+        return opaque ? 0x00FFFFFF : 0xFFFFFFFF;
+    }
+
+    //vrací ARGB barvu pixelu (stejně jako getRGB), mimo rastr vrací 0
+    public int getPixel(int x, int y) {
+        if (!contains(x, y)) return 0;
+        int v = data[index(x, y)];
+        return opaque ? v | 0xFF000000 : v;
+    }
+
+    public void setPixel(int x, int y, int argb) {
+        if (x >= minX && y >= minY && x < maxX && y < maxY) {
+            data[index(x, y)] = toPixel(argb);
+            addDamage(x, y, x + 1, y + 1);
+        }
+    }
+
+    //smíchá barvu do pixelu s pokrytím 0 - 255 přímo v poli (bez převodu přes getPixel / setPixel)
+    @Override
+    public void blendPixel(int x, int y, int argb, int coverage) {
+        if (coverage <= 0 || x < minX || y < minY || x >= maxX || y >= maxY) return;
+        int src = Blend.withCoverage(argb, Math.min(coverage, 255));
+        if ((src >>> 24) == 0) return;
+        int i = index(x, y);
+        int dst = opaque ? data[i] | 0xFF000000 : data[i];
+        data[i] = toPixel(Blend.srcOver(src, dst));
+        addDamage(x, y, x + 1, y + 1);
+    }
+
+    /*Úsek vyhlazeného tvaru - jedno ořezání a jedno addDamage místo blendPixel po pixelech
+    * plně pokrytý pixel neprůhlednou barvou se jen přepíše
+    * neprůhledná barva na neprůhledném obrázku se míchá rovnou po kanálech (bez obecného srcOver)*/
+    @Override
+    public void blendSpan(int x0, int y, int argb, int[] coverage, int offset, int count) {
+        if (y < minY || y >= maxY) return;
+        int from = Math.max(x0, minX);
+        int to = Math.min(x0 + count, maxX);
+        if (from >= to) return;
+        int alpha = argb >>> 24;
+        int row = index(0, y);
+        if (alpha == 255 && opaque) {
+            blendOpaqueSpan(row, x0 - offset, from, to, argb, coverage);
+            addDamage(from, y, to, y + 1);
+            return;
+        }
+        int color = argb & 0x00FFFFFF;
+        for (int x = from; x < to; x++) {
+            int cover = coverage[x - x0 + offset];
+            if (cover <= 0) continue;
+            if (cover >= 255 && alpha == 255) {
+                data[row + x] = toPixel(argb);
+                continue;
+            }
+            int a = Blend.div255(alpha * Math.min(cover, 255));
+            if (a == 0) continue;
+            int dst = opaque ? data[row + x] | 0xFF000000 : data[row + x];
+            data[row + x] = toPixel(Blend.srcOver((a << 24) | color, dst));
+        }
+        addDamage(from, y, to, y + 1);
+    }
+
+    /*blendSpan neprůhledné barvy do RGB obrázku - stejné míchání jako Blend.srcOver s neprůhledným cílem
+    * pixel x má pokrytí coverage[x - start] (0 .. 255), pro pokrytí 0 dává vzorec přesně cíl*/
+    private void blendOpaqueSpan(int row, int start, int from, int to, int argb, int[] coverage) {
+        int pixel = argb & 0x00FFFFFF;
+        int srcRB = argb & 0xFF00FF;
+        int srcG = argb & 0xFF00;
+        for (int x = from; x < to; x++) {
+            int a = coverage[x - start];
+            if (a >= 255) {
+                data[row + x] = pixel;
+                continue;
+            }
+            int dst = data[row + x];
+            int keep = 255 - a;
+            int rb = srcRB * a + (dst & 0xFF00FF) * keep + 0x800080;
+            rb = ((rb + ((rb >>> 8) & 0xFF00FF)) >>> 8) & 0xFF00FF;
+            int g = srcG * a + (dst & 0xFF00) * keep + 0x8000;
+            g = ((g + ((g >>> 8) & 0xFF00)) >>> 8) & 0xFF00;
+            data[row + x] = rb | g;
+        }
+    }
+
+    //vyplní vodorovný úsek od x0 do x1 (včetně) na řádku y
+    public void fillSpan(int x0, int x1, int y, int argb) {
+        if (y < minY || y >= maxY) return;
+        if (x0 > x1) {
+            int t = x0;
+            x0 = x1;
+            x1 = t;
+        }
+        x0 = Math.max(x0, minX);
+        x1 = Math.min(x1, maxX - 1);
+        if (x0 > x1) return;
+        int from = index(x0, y);
+        Arrays.fill(data, from, from + x1 - x0 + 1, toPixel(argb));
+        addDamage(x0, y, x1 + 1, y + 1);
+    }
+
+    //vyplní obdélník (x, y, šířka, výška) jednou barvou po řádcích
+    public void fillRect(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(x, minX);
+        int y0 = Math.max(y, minY);
+        int x1 = Math.min(x + w, maxX);
+        int y1 = Math.min(y + h, maxY);
+        if (x0 >= x1 || y0 >= y1) return;
+        int pixel = toPixel(argb);
+        for (int row = y0; row < y1; row++) {
+            int offset = index(x0, row);
+            Arrays.fill(data, offset, offset + x1 - x0, pixel);
+        }
+        addDamage(x0, y0, x1, y1);
+    }
+
+    public void fill(int argb) {
+        Arrays.fill(data, toPixel(argb));
+        if (minX < maxX && minY < maxY) addDamage(minX, minY, maxX, maxY);
+    }
+
+    /*Zkopíruje obdélník w x h z rastru src (od sx, sy) do tohoto rastru (na dx, dy)
+    * Obdélník se ořízne na okna obou rastrů, kopíruje se po řádcích přes System.arraycopy
+    * Pokud se kopíruje mezi RGB a ARGB obrázkem, převádí se hodnoty pixel po pixelu*/
+    public void copyRect(Raster src, int sx, int sy, int dx, int dy, int w, int h) {
+        int cut;
+        if ((cut = src.minX - sx) > 0) { w -= cut; sx += cut; dx += cut; }
+        if ((cut = src.minY - sy) > 0) { h -= cut; sy += cut; dy += cut; }
+        if ((cut = minX - dx) > 0) { w -= cut; sx += cut; dx += cut; }
+        if ((cut = minY - dy) > 0) { h -= cut; sy += cut; dy += cut; }
+        w = Math.min(w, Math.min(src.maxX - sx, maxX - dx));
+        h = Math.min(h, Math.min(src.maxY - sy, maxY - dy));
+        if (w <= 0 || h <= 0) return;
+
+        boolean sameFormat = src.opaque == opaque;
+        //při kopii v rámci jednoho rastru se překrývající řádky musí brát odspodu
+        boolean backwards = src == this && dy > sy;
+        for (int i = 0; i < h; i++) {
+            int r = backwards ? h - 1 - i : i;
+            int from = src.index(sx, sy + r);
+            int to = index(dx, dy + r);
+            if (sameFormat) {
+                System.arraycopy(src.data, from, data, to, w);
+            } else {
+                for (int k = 0; k < w; k++) {
+                    int v = src.data[from + k];
+                    data[to + k] = toPixel(src.opaque ? v | 0xFF000000 : v);
+                }
+            }
+        }
+        addDamage(dx, dy, dx + w, dy + h);
+    }
+
+    /*Rozšíří poškozenou oblast o obdélník x0..x1, y0..y1 (konce bez)
+    * Volají ho i algoritmy, které zapisují rovnou do getData()*/
+    public void addDamage(int x0, int y0, int x1, int y1) {
+        pixelsWritten += (long) (x1 - x0) * (y1 - y0);
+        expandDamage(x0, y0, x1, y1);
+        if (dirtyTiles != null) markDirtyTiles(x0, y0, x1, y1);
+    }
+
+    private void expandDamage(int x0, int y0, int x1, int y1) {
+        if (x0 < damageX0) damageX0 = x0;
+        if (y0 < damageY0) damageY0 = y0;
+        if (x1 > damageX1) damageX1 = x1;
+        if (y1 > damageY1) damageY1 = y1;
+    }
+
+    //počet zapsaných pixelů od vytvoření rastru (součet ploch zápisů)
+    public long getPixelsWritten() {
+        return pixelsWritten;
+    }
+
+    //poškozená oblast od posledního takeDamage(), null když se nic nezměnilo
+    public Rectangle getDamage() {
+        if (damageX0 >= damageX1 || damageY0 >= damageY1) return null;
+        return new Rectangle(damageX0, damageY0, damageX1 - damageX0, damageY1 - damageY0);
+    }
+
+    //vrátí poškozenou oblast a začne sbírat znovu
+    public Rectangle takeDamage() {
+        Rectangle damage = getDamage();
+        damageX0 = Integer.MAX_VALUE;
+        damageY0 = Integer.MAX_VALUE;
+        damageX1 = Integer.MIN_VALUE;
+        damageY1 = Integer.MIN_VALUE;
+        return damage;
+    }
+
+    /*Začne si pamatovat dlaždice (1 << tileShift pixelů na stranu), do kterých se zapisuje
+    * číslo dlaždice je ty * (počet dlaždic v řádku) + tx, počítá se v souřadnicích plátna*/
+    public void trackDirtyTiles(int tileShift) {
+        if (dirtyTiles != null) {
+            throw new IllegalStateException("Dlaždice rastru se už sledují");
+        }
+        dirtyTileShift = tileShift;
+        dirtyTilesX = (width + (1 << tileShift) - 1) >> tileShift;
+        int tilesY = (height + (1 << tileShift) - 1) >> tileShift;
+        dirtyTiles = new long[(dirtyTilesX * tilesY + 63) >> 6];
+    }
+
+    //zavolá action pro každou dlaždici, do které se od minula zapisovalo, a zapomene je
+    public void drainDirtyTiles(IntConsumer action) {
+        if (dirtyTiles == null) return;
+        for (int word = 0; word < dirtyTiles.length; word++) {
+            long bits = dirtyTiles[word];
+            dirtyTiles[word] = 0;
+            while (bits != 0) {
+                action.accept((word << 6) + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    //obdélník všech dlaždic, do kterých se od minula zapisovalo (v souřadnicích plátna), null když žádné
+    public Rectangle getDirtyTileBounds() {
+        if (dirtyTiles == null) return null;
+        int tx0 = Integer.MAX_VALUE, ty0 = Integer.MAX_VALUE, tx1 = -1, ty1 = -1;
+        for (int word = 0; word < dirtyTiles.length; word++) {
+            long bits = dirtyTiles[word];
+            while (bits != 0) {
+                int tile = (word << 6) + Long.numberOfTrailingZeros(bits);
+                int tx = tile % dirtyTilesX;
+                int ty = tile / dirtyTilesX;
+                tx0 = Math.min(tx0, tx);
+                ty0 = Math.min(ty0, ty);
+                tx1 = Math.max(tx1, tx);
+                ty1 = Math.max(ty1, ty);
+                bits &= bits - 1;
+            }
+        }
+        if (tx1 < 0) return null;
+        return new Rectangle(tx0 << dirtyTileShift, ty0 << dirtyTileShift,
+                (tx1 - tx0 + 1) << dirtyTileShift, (ty1 - ty0 + 1) << dirtyTileShift);
+    }
+
+    private void markDirtyTiles(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(x0, minX);
+        y0 = Math.max(y0, minY);
+        x1 = Math.min(x1, maxX);
+        y1 = Math.min(y1, maxY);
+        if (x0 >= x1 || y0 >= y1) return;
+        int tx0 = x0 >> dirtyTileShift;
+        int tx1 = (x1 - 1) >> dirtyTileShift;
+        int ty1 = (y1 - 1) >> dirtyTileShift;
+        for (int ty = y0 >> dirtyTileShift; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int tile = ty * dirtyTilesX + tx;
+                dirtyTiles[tile >> 6] |= 1L << tile;
+            }
+        }
+    }
+
+    /*Vyplní barvou jen dlaždice, do kterých se od minula zapisovalo, a zapomene je
+    * Smazané dlaždice se přidají do damage, aby se překreslily*/
+    public void clearDirtyTiles(int argb) {
+        int pixel = toPixel(argb);
+        int size = 1 << dirtyTileShift;
+        drainDirtyTiles(tile -> {
+            int tx = (tile % dirtyTilesX) << dirtyTileShift;
+            int ty = (tile / dirtyTilesX) << dirtyTileShift;
+            int x0 = Math.max(tx, minX);
+            int y0 = Math.max(ty, minY);
+            int x1 = Math.min(tx + size, maxX);
+            int y1 = Math.min(ty + size, maxY);
+            if (x0 >= x1 || y0 >= y1) return;
+            for (int row = y0; row < y1; row++) {
+                int offset = index(x0, row);
+                Arrays.fill(data, offset, offset + x1 - x0, pixel);
+            }
+            expandDamage(x0, y0, x1, y1);
+        });
+    }
+}
@@ -2,7 +2,6 @@ package rasterizer;
 
 import model.LineStyle;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import model.*;
 import model.Point;
 
@@ -22,7 +21,7 @@ public class RectangleRasterizer {
     * 4. Pomocí line rasterizeru vykreslí čáry samostatně z jednotlivých bodů
     * Při držení shiftu rýsuje čtverec, */
 
-    public void drawRectangle(BufferedImage img, Point p1, Point p2, Color color, int thickness, LineStyle style, boolean squareMode) {
+    public void drawRectangle(PixelSurface raster, Point p1, Point p2, Color color, int thickness, LineStyle style, boolean squareMode) {
 
         int x1 = p1.x;
         int y1 = p1.y;
@@ -45,8 +44,8 @@ public class RectangleRasterizer {
 
         minX = Math.max(minX, 0);
         minY = Math.max(minY, 0);
-        maxX = Math.min(maxX, img.getWidth() - 1);
-        maxY = Math.min(maxY, img.getHeight() - 1);
+        maxX = Math.min(maxX, raster.getWidth() - 1);
+        maxY = Math.min(maxY, raster.getHeight() - 1);
 
 
         Point topLeft     = new Point(minX, minY);
@@ -55,9 +54,9 @@ public class RectangleRasterizer {
         Point bottomRight = new Point(maxX, maxY);
 
 
-        lineRasterizer.drawLine(img, topLeft, topRight, color, thickness, style);
-        lineRasterizer.drawLine(img, topRight, bottomRight, color, thickness, style);
-        lineRasterizer.drawLine(img, bottomRight, bottomLeft, color, thickness, style);
-        lineRasterizer.drawLine(img, bottomLeft, topLeft, color, thickness, style);
+        lineRasterizer.drawLine(raster, topLeft, topRight, color, thickness, style);
+        lineRasterizer.drawLine(raster, topRight, bottomRight, color, thickness, style);
+        lineRasterizer.drawLine(raster, bottomRight, bottomLeft, color, thickness, style);
+        lineRasterizer.drawLine(raster, bottomLeft, topLeft, color, thickness, style);
     }
 }
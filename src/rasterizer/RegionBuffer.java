@@ -0,0 +1,90 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/*
+* Kopie obdélníkové oblasti rastru
+*
+* Pixely se drží v obrázku stejného formátu jako zdrojový rastr (RGB plátno -> RGB obrázek),
+* takže kopie tam i zpět jde po řádcích přes System.arraycopy bez převodu pixel po pixelu.
+* Vnitřní rastr má počátek na pozici oblasti, kopíruje se tak v souřadnicích plátna.
+*
+* Stojí to tolik, kolik má oblast pixelů, ne celé plátno - výběr si pamatuje
+* jen vybranou oblast a pixely pod místem, kam se vložila (místo zálohy celého plátna)
+*
+* Část oblasti mimo zdrojový rastr se nekopíruje a do cíle se nevrací
+*
+* Převzorkovaný výběr (SelectionTransformer) je taky RegionBuffer - jen obalí hotový obrázek
+* a bounds má vůči levému hornímu rohu výběru*/
+public final class RegionBuffer {
+    private final Raster raster;
+    private final Rectangle bounds;
+
+    //zkopíruje oblast bounds (v souřadnicích plátna) z rastru source
+    public RegionBuffer(Raster source, Rectangle bounds) {
+        this.bounds = new Rectangle(bounds);
+        BufferedImage image = new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height),
+                source.isOpaque() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        raster = new Raster(image, source.getWidth(), source.getHeight());
+        raster.setOrigin(bounds.x, bounds.y);
+        raster.copyRect(source, bounds.x, bounds.y, bounds.x, bounds.y, bounds.width, bounds.height);
+        raster.takeDamage();
+    }
+
+    //obalí hotový obrázek bez kopírování - pixely se čtou od jeho levého horního rohu
+    RegionBuffer(BufferedImage image, Rectangle bounds) {
+        this.bounds = new Rectangle(bounds);
+        raster = new Raster(image);
+    }
+
+    //vrátí uložené pixely na jejich původní místo v rastru target
+    public void restore(Raster target) {
+        target.copyRect(raster, bounds.x, bounds.y, bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    //zkopíruje uložené pixely do rastru target s levým horním rohem na x, y
+    public void copyTo(Raster target, int x, int y) {
+        target.copyRect(raster, raster.getOriginX(), raster.getOriginY(), x, y, bounds.width, bounds.height);
+    }
+
+    /*Nakreslí uložené pixely přes rastr target s levým horním rohem na x, y
+    * neprůhledný obrázek se jen zkopíruje, u průhledného (okraje otočeného výběru)
+    * se pixely míchají s podkladem a zcela průhledné se přeskočí*/
+    public void drawTo(Raster target, int x, int y) {
+        if (raster.isOpaque()) {
+            copyTo(target, x, y);
+            return;
+        }
+        int[] data = raster.getData();
+        int stride = raster.getStride();
+        for (int j = 0; j < bounds.height; j++) {
+            int row = j * stride;
+            for (int i = 0; i < bounds.width; i++) {
+                int v = data[row + i];
+                if ((v >>> 24) != 0) target.blendPixel(x + i, y + j, v, 255);
+            }
+        }
+    }
+
+    Raster getRaster() {
+        return raster;
+    }
+
+    //obrázek s pixely oblasti - levý horní roh obrázku je bounds.x, bounds.y
+    public BufferedImage getImage() {
+        return raster.getImage();
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    public int getWidth() {
+        return bounds.width;
+    }
+
+    public int getHeight() {
+        return bounds.height;
+    }
+}
@@ -0,0 +1,394 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+* Mezipaměť souvislých oblastí stejné barvy (4-okolí) vedle FillRasterizeru
+*
+* Plátno je rozdělené na dlaždice TILE_SIZE x TILE_SIZE. Každá dlaždice si pamatuje
+* pro každý svůj pixel číslo lokální oblasti (label) a barvu každé oblasti.
+* Dlaždice se označují líně - až když je dotaz poprvé potřebuje - a paralelně na ForkJoinPoolu.
+* Když se do plátna kreslí, zneplatní se (invalidate) jen dlaždice, do kterých se kreslilo.
+*
+* Celá oblast pod bodem (Region) je seznam dvojic (dlaždice, lokální label).
+* Skládá se po vlnách: z aktuálních dvojic se přes okraje dlaždic najdou sousední
+* lokální oblasti stejné barvy, dosud neoznačené sousední dlaždice se mezitím označí paralelně.
+* Výplň je pak jen přebarvení pixelů s daným labelem, bez procházení po pixelech přes sousedy.
+*
+* Poslední nalezená oblast se drží, takže opakované kliknutí nebo pohyb myši
+* uvnitř stejné oblasti nic nepočítá znovu (náhled výplně pod kurzorem)
+* https://en.wikipedia.org/wiki/Connected-component_labeling*/
+public class RegionLabelCache {
+    public static final int TILE_SIZE = 64;
+    //labely jednobarevné dlaždice - celá dlaždice je oblast 0, pole se sdílí a nikdy se nemění
+    private static final short[] UNIFORM_LABELS = new short[TILE_SIZE * TILE_SIZE];
+    //pomocná pole pro označování, každé vlákno má svoje
+    private static final ThreadLocal<int[][]> SCRATCH =
+            ThreadLocal.withInitial(() -> new int[][]{new int[TILE_SIZE * TILE_SIZE], new int[TILE_SIZE * TILE_SIZE]});
+
+    private final Raster raster;
+    private final ForkJoinPool pool;
+    private final int tilesX;
+    private final int tilesY;
+    //label pro každý pixel dlaždice, null = dlaždici je potřeba označit znovu
+    private final short[][] labels;
+    //barva (hodnota z pole rasteru) pro každý label dlaždice
+    private final int[][] labelColors;
+    //značky, které labely už patří do právě skládané oblasti
+    private final int[][] marks;
+    //značky dlaždic, které už jsou v seznamu k označení pro aktuální vlnu
+    private final int[] waveMarks;
+    private int stamp;
+    private int wave;
+    //zvyšuje se při každém zneplatnění - oblast spočítaná v jiné generaci už nemusí platit
+    private int generation;
+    private Region lastRegion;
+
+    public RegionLabelCache(Raster raster) {
+        this(raster, ForkJoinPool.commonPool());
+    }
+
+    public RegionLabelCache(Raster raster, ForkJoinPool pool) {
+        this.raster = raster;
+        this.pool = pool;
+        this.tilesX = (raster.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (raster.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+        this.labels = new short[tilesX * tilesY][];
+        this.labelColors = new int[tilesX * tilesY][];
+        this.marks = new int[tilesX * tilesY][];
+        this.waveMarks = new int[tilesX * tilesY];
+    }
+
+    /*Jedna souvislá oblast stejné barvy
+    * entries jsou dvojice (index dlaždice, label v dlaždici)*/
+    public static final class Region {
+        private final int color;
+        private final int stamp;
+        private final int generation;
+        private final IntList entries = new IntList(32);
+        private int minTileX = Integer.MAX_VALUE, minTileY = Integer.MAX_VALUE;
+        private int maxTileX = -1, maxTileY = -1;
+        private Rectangle bounds;
+
+        private Region(int color, int stamp, int generation) {
+            this.color = color;
+            this.stamp = stamp;
+            this.generation = generation;
+        }
+
+        //barva oblasti jako hodnota z pole rasteru
+        public int getColor() {
+            return color;
+        }
+
+        //obdélník všech dlaždic, do kterých oblast zasahuje
+        public Rectangle getBounds() {
+            return bounds;
+        }
+    }
+
+    //zneplatní dlaždice, které obdélník (x, y, w, h) zasahuje
+    public void invalidate(int x, int y, int w, int h) {
+        int tx0 = Math.max(0, x / TILE_SIZE);
+        int ty0 = Math.max(0, y / TILE_SIZE);
+        int tx1 = Math.min(tilesX - 1, (x + w - 1) / TILE_SIZE);
+        int ty1 = Math.min(tilesY - 1, (y + h - 1) / TILE_SIZE);
+        if (w <= 0 || h <= 0 || tx0 > tx1 || ty0 > ty1) return;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                labels[ty * tilesX + tx] = null;
+            }
+        }
+        generation++;
+    }
+
+    public void invalidateAll() {
+        invalidate(0, 0, raster.getWidth(), raster.getHeight());
+    }
+
+    /*Vrátí oblast stejné barvy pod bodem (x, y)
+    * Pokud bod leží v naposledy nalezené oblasti a od té doby se nic nezneplatnilo,
+    * vrátí rovnou ji*/
+    public Region regionAt(int x, int y) {
+        if (!raster.contains(x, y)) return null;
+        int tile = (y / TILE_SIZE) * tilesX + x / TILE_SIZE;
+        int local = (y % TILE_SIZE) * TILE_SIZE + x % TILE_SIZE;
+
+        if (lastRegion != null && lastRegion.generation == generation && labels[tile] != null
+                && marks[tile][labels[tile][local]] == lastRegion.stamp) {
+            return lastRegion;
+        }
+
+        labelTiles(new int[]{tile}, 1);
+        int label = labels[tile][local];
+        stamp++;
+        Region region = new Region(labelColors[tile][label], stamp, generation);
+        IntList frontier = new IntList(32);
+        addEntry(region, frontier, tile, label);
+
+        while (frontier.size() > 0) {
+            //sousední dlaždice, které bude vlna potřebovat, se označí paralelně najednou
+            IntList needed = new IntList(16);
+            wave++;
+            for (int i = 0; i < frontier.size(); i += 2) {
+                int t = frontier.get(i);
+                int tx = t % tilesX, ty = t / tilesX;
+                if (tx > 0) addNeeded(needed, t - 1);
+                if (tx < tilesX - 1) addNeeded(needed, t + 1);
+                if (ty > 0) addNeeded(needed, t - tilesX);
+                if (ty < tilesY - 1) addNeeded(needed, t + tilesX);
+            }
+            labelTiles(needed.array(), needed.size());
+
+            IntList next = new IntList(32);
+            for (int i = 0; i < frontier.size(); i += 2) {
+                expand(region, next, frontier.get(i), frontier.get(i + 1));
+            }
+            frontier = next;
+        }
+
+        region.bounds = new Rectangle(region.minTileX * TILE_SIZE, region.minTileY * TILE_SIZE,
+                (region.maxTileX - region.minTileX + 1) * TILE_SIZE,
+                (region.maxTileY - region.minTileY + 1) * TILE_SIZE)
+                .intersection(new Rectangle(0, 0, raster.getWidth(), raster.getHeight()));
+        lastRegion = region;
+        return region;
+    }
+
+    //platí oblast pořád? (od jejího nalezení se do plátna nekreslilo)
+    public boolean isCurrent(Region region) {
+        return region != null && region.generation == generation;
+    }
+
+    //vyplní oblast pod bodem (x, y) a vrátí obdélník, ve kterém se mohly změnit pixely
+    public Rectangle fillAt(int x, int y, int argb) {
+        Region region = regionAt(x, y);
+        if (region == null || region.color == raster.toPixel(argb)) return null;
+        fill(region, argb);
+        return region.bounds;
+    }
+
+    /*Přebarví celou oblast na barvu argb (hromadně, paralelně po dlaždicích)
+    * a zneplatní dotčené dlaždice - nová barva se může spojit se sousedními oblastmi
+    * damage se přidává po dlaždicích oblasti, ne za celý její obdélník - u členité oblasti
+    * (rámeček, had) by obdélník zahrnul i dlaždice, do kterých se vůbec nezapsalo.
+    * Volající, který damage plátna posílá zpátky do invalidate, už tyhle dlaždice zneplatňovat nemusí*/
+    public void fill(Region region, int argb) {
+        if (!isCurrent(region)) throw new IllegalStateException("Oblast už neodpovídá plátnu");
+        int pixel = raster.toPixel(argb);
+        int[] data = raster.getData();
+        paint(region, data, pixel);
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        for (int i = 0; i < region.entries.size(); i += 2) {
+            int t = region.entries.get(i);
+            //dlaždice může mít v oblasti víc lokálních labelů, damage stačí jednou
+            if (labels[t] == null) continue;
+            labels[t] = null;
+            int x0 = (t % tilesX) * TILE_SIZE, y0 = (t / tilesX) * TILE_SIZE;
+            raster.addDamage(x0, y0, Math.min(x0 + TILE_SIZE, width), Math.min(y0 + TILE_SIZE, height));
+        }
+        generation++;
+    }
+
+    /*Vykreslí oblast barvou argb do jiného rastru stejné velikosti (např. náhled výplně)
+    * Zapíše se jen do pixelů oblasti*/
+    public void paintRegion(Region region, Raster target, int argb) {
+        if (!isCurrent(region)) throw new IllegalStateException("Oblast už neodpovídá plátnu");
+        paint(region, target.getData(), target.toPixel(argb));
+        Rectangle b = region.bounds;
+        target.addDamage(b.x, b.y, b.x + b.width, b.y + b.height);
+    }
+
+    private void paint(Region region, int[] data, int pixel) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int entryCount = region.entries.size() / 2;
+        Parallel.run(pool, entryCount, e -> {
+            int t = region.entries.get(2 * e);
+            short label = (short) region.entries.get(2 * e + 1);
+            short[] tileLabels = labels[t];
+            int x0 = (t % tilesX) * TILE_SIZE, y0 = (t / tilesX) * TILE_SIZE;
+            int w = Math.min(TILE_SIZE, width - x0), h = Math.min(TILE_SIZE, height - y0);
+            if (tileLabels == UNIFORM_LABELS) {
+                for (int r = 0; r < h; r++) {
+                    int row = (y0 + r) * width + x0;
+                    Arrays.fill(data, row, row + w, pixel);
+                }
+                return;
+            }
+            for (int r = 0; r < h; r++) {
+                int row = (y0 + r) * width + x0;
+                int localRow = r * TILE_SIZE;
+                for (int c = 0; c < w; c++) {
+                    if (tileLabels[localRow + c] == label) data[row + c] = pixel;
+                }
+            }
+        });
+    }
+
+    private void addNeeded(IntList needed, int tile) {
+        if (labels[tile] != null || waveMarks[tile] == wave) return;
+        waveMarks[tile] = wave;
+        needed.add(tile);
+    }
+
+    private void addEntry(Region region, IntList frontier, int tile, int label) {
+        marks[tile][label] = region.stamp;
+        region.entries.add(tile);
+        region.entries.add(label);
+        frontier.add(tile);
+        frontier.add(label);
+        int tx = tile % tilesX, ty = tile / tilesX;
+        region.minTileX = Math.min(region.minTileX, tx);
+        region.minTileY = Math.min(region.minTileY, ty);
+        region.maxTileX = Math.max(region.maxTileX, tx);
+        region.maxTileY = Math.max(region.maxTileY, ty);
+    }
+
+    /*Projde okraje dlaždice a pro pixely s daným labelem se podívá do sousední dlaždice
+    * Sousední lokální oblast stejné barvy, která ještě v oblasti není, se přidá do další vlny*/
+    private void expand(Region region, IntList next, int tile, int label) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int tx = tile % tilesX, ty = tile / tilesX;
+        int w = Math.min(TILE_SIZE, width - tx * TILE_SIZE);
+        int h = Math.min(TILE_SIZE, height - ty * TILE_SIZE);
+        short[] own = labels[tile];
+
+        if (tx > 0) {
+            for (int r = 0; r < h; r++) {
+                link(region, next, own[r * TILE_SIZE], label, tile - 1, r * TILE_SIZE + TILE_SIZE - 1);
+            }
+        }
+        if (tx < tilesX - 1) {
+            for (int r = 0; r < h; r++) {
+                link(region, next, own[r * TILE_SIZE + w - 1], label, tile + 1, r * TILE_SIZE);
+            }
+        }
+        if (ty > 0) {
+            for (int c = 0; c < w; c++) {
+                link(region, next, own[c], label, tile - tilesX, (TILE_SIZE - 1) * TILE_SIZE + c);
+            }
+        }
+        if (ty < tilesY - 1) {
+            for (int c = 0; c < w; c++) {
+                link(region, next, own[(h - 1) * TILE_SIZE + c], label, tile + tilesX, c);
+            }
+        }
+    }
+
+    private void link(Region region, IntList next, int ownLabel, int label, int neighbour, int neighbourLocal) {
+        if (ownLabel != label) return;
+        int other = labels[neighbour][neighbourLocal];
+        if (labelColors[neighbour][other] == region.color && marks[neighbour][other] != region.stamp) {
+            addEntry(region, next, neighbour, other);
+        }
+    }
+
+    //označí dlaždice ze seznamu, které ještě označené nejsou (paralelně)
+    private void labelTiles(int[] tiles, int count) {
+        if (count == 1) {
+            if (labels[tiles[0]] == null) labelTile(tiles[0]);
+            return;
+        }
+        Parallel.run(pool, count, i -> {
+            if (labels[tiles[i]] == null) labelTile(tiles[i]);
+        });
+    }
+
+    /*Dvouprůchodové označení souvislých oblastí uvnitř jedné dlaždice
+    * 1. průchod - pixel převezme label souseda vlevo nebo nahoře se stejnou barvou,
+    *    když mají oba sousedé stejnou barvu, jejich labely se spojí (union-find)
+    * 2. průchod - labely se nahradí kořeny a přečíslují od nuly*/
+    private void labelTile(int tile) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int[] data = raster.getData();
+        int mask = raster.getPixelMask();
+        int x0 = (tile % tilesX) * TILE_SIZE, y0 = (tile / tilesX) * TILE_SIZE;
+        int w = Math.min(TILE_SIZE, width - x0), h = Math.min(TILE_SIZE, height - y0);
+
+        if (isUniform(data, width, x0, y0, w, h, mask)) {
+            labelColors[tile] = new int[]{data[y0 * width + x0] & mask};
+            marks[tile] = new int[1];
+            labels[tile] = UNIFORM_LABELS;
+            return;
+        }
+
+        int[][] scratch = SCRATCH.get();
+        int[] provisional = scratch[0];
+        int[] parent = scratch[1];
+        int count = 0;
+        for (int r = 0; r < h; r++) {
+            int row = (y0 + r) * width + x0;
+            for (int c = 0; c < w; c++) {
+                int color = data[row + c] & mask;
+                int i = r * TILE_SIZE + c;
+                boolean left = c > 0 && (data[row + c - 1] & mask) == color;
+                boolean up = r > 0 && (data[row - width + c] & mask) == color;
+                if (left && up) {
+                    int a = provisional[i - 1], b = provisional[i - TILE_SIZE];
+                    provisional[i] = a;
+                    union(parent, a, b);
+                } else if (left) {
+                    provisional[i] = provisional[i - 1];
+                } else if (up) {
+                    provisional[i] = provisional[i - TILE_SIZE];
+                } else {
+                    parent[count] = count;
+                    provisional[i] = count++;
+                }
+            }
+        }
+
+        int[] compact = new int[count];
+        Arrays.fill(compact, -1);
+        short[] tileLabels = new short[TILE_SIZE * TILE_SIZE];
+        IntList colors = new IntList(16);
+        int next = 0;
+        for (int r = 0; r < h; r++) {
+            int row = (y0 + r) * width + x0;
+            for (int c = 0; c < w; c++) {
+                int i = r * TILE_SIZE + c;
+                int root = find(parent, provisional[i]);
+                if (compact[root] < 0) {
+                    compact[root] = next++;
+                    colors.add(data[row + c] & mask);
+                }
+                tileLabels[i] = (short) compact[root];
+            }
+        }
+        labelColors[tile] = Arrays.copyOf(colors.array(), next);
+        marks[tile] = new int[next];
+        labels[tile] = tileLabels;
+    }
+
+    private static boolean isUniform(int[] data, int width, int x0, int y0, int w, int h, int mask) {
+        int color = data[y0 * width + x0] & mask;
+        for (int r = 0; r < h; r++) {
+            int row = (y0 + r) * width + x0;
+            for (int c = 0; c < w; c++) {
+                if ((data[row + c] & mask) != color) return false;
+            }
+        }
+        return true;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a < b) parent[b] = a;
+        else if (b < a) parent[a] = b;
+    }
+}
@@ -0,0 +1,145 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/*
+* Záloha pixelů pod tvarem (save-under)
+*
+* Rasterizery do ní kreslí místo do rastru - zápis projde do rastru, ale předtím se zapamatuje
+* původní hodnota každého přepsaného pixelu (index a hodnota ve dvou polích int[]).
+* Když se tvar později zvedne k úpravě, restore vrátí přesně ty pixely, které tvar přepsal.
+* Stojí to tolik, kolik pixelů tvar nakreslil (obvod x tloušťka), ne plochu jeho obdélníku,
+* a to, co bylo pod tvarem, zůstane.
+*
+* Pixel, který už má zapisovanou hodnotu, se nezaznamenává - tvar kreslí jednou barvou,
+* takže se každý pixel uloží jen jednou. Kdyby se jeden pixel přesto zaznamenal vícekrát,
+* restore jde od konce a nejstarší (původní) hodnota se zapíše poslední.
+*
+* Záloha platí jen do chvíle, kdy do stejných pixelů zapíše něco jiného - to hlídá volající*/
+public final class SaveUnderBuffer implements PixelSurface {
+    private final Raster target;
+    private IntList indexes = new IntList(256);
+    private IntList values = new IntList(256);
+    //po finish() - zabalené pole indexů (y * šířka + x) a původních hodnot z pole rastru
+    private int[] savedIndexes;
+    private int[] savedValues;
+
+    public SaveUnderBuffer(Raster target) {
+        this.target = target;
+    }
+
+    //ukončí záznam, další zápisy už nejsou povolené
+    public void finish() {
+        if (savedIndexes != null) return;
+        savedIndexes = Arrays.copyOf(indexes.array(), indexes.size());
+        savedValues = Arrays.copyOf(values.array(), values.size());
+        indexes = null;
+        values = null;
+    }
+
+    //vrátí do rastru původní hodnoty všech přepsaných pixelů
+    public void restore() {
+        finish();
+        int[] data = target.getData();
+        int width = target.getWidth();
+        int stride = target.getStride();
+        int originX = target.getOriginX();
+        int originY = target.getOriginY();
+        for (int i = savedIndexes.length - 1; i >= 0; i--) {
+            int x = savedIndexes[i] % width;
+            int y = savedIndexes[i] / width;
+            data[(y - originY) * stride + (x - originX)] = savedValues[i];
+            target.addDamage(x, y, x + 1, y + 1);
+        }
+    }
+
+    //počet zaznamenaných pixelů
+    public int size() {
+        return savedIndexes != null ? savedIndexes.length : indexes.size();
+    }
+
+    private void record(int x, int y, int pixel) {
+        if (indexes == null) {
+            throw new IllegalStateException("Záloha pod tvarem je už uzavřená");
+        }
+        int[] data = target.getData();
+        int offset = (y - target.getOriginY()) * target.getStride() + (x - target.getOriginX());
+        if (data[offset] == pixel) return;
+        indexes.add(y * target.getWidth() + x);
+        values.add(data[offset]);
+    }
+
+    @Override
+    public int getWidth() {
+        return target.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return target.getHeight();
+    }
+
+    @Override
+    public boolean contains(int x, int y) {
+        return target.contains(x, y);
+    }
+
+    @Override
+    public int readBack(int argb) {
+        return target.readBack(argb);
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        return target.getPixel(x, y);
+    }
+
+    @Override
+    public void setPixel(int x, int y, int argb) {
+        if (!target.contains(x, y)) return;
+        record(x, y, target.toPixel(argb));
+        target.setPixel(x, y, argb);
+    }
+
+    @Override
+    public void fillSpan(int x0, int x1, int y, int argb) {
+        fillRect(Math.min(x0, x1), y, Math.abs(x1 - x0) + 1, 1, argb);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, target.getWidth());
+        int y1 = Math.min(y + h, target.getHeight());
+        int pixel = target.toPixel(argb);
+        for (int row = y0; row < y1; row++) {
+            for (int col = x0; col < x1; col++) {
+                //okno rastru může být menší než plátno (clip), zápisy mimo něj rastr zahodí
+                if (target.contains(col, row)) record(col, row, pixel);
+            }
+        }
+        target.fillRect(x, y, w, h, argb);
+    }
+
+    @Override
+    public void fill(int argb) {
+        fillRect(0, 0, target.getWidth(), target.getHeight(), argb);
+    }
+
+    @Override
+    public void addDamage(int x0, int y0, int x1, int y1) {
+        target.addDamage(x0, y0, x1, y1);
+    }
+
+    @Override
+    public Rectangle getDamage() {
+        return target.getDamage();
+    }
+
+    @Override
+    public Rectangle takeDamage() {
+        return target.takeDamage();
+    }
+}
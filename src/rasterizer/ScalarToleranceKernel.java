@@ -0,0 +1,25 @@
+package rasterizer;
+
+import model.ColorDistance;
+
+//Skalární verze testu tolerance - pixel po pixelu
+final class ScalarToleranceKernel implements ToleranceKernel {
+
+    @Override
+    public void matchRow(int[] data, int offset, int length, int target, int tolerance, ColorDistance distance,
+                         boolean[] out, int outOffset) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = matches(data[offset + i], target, tolerance, distance);
+        }
+    }
+
+    static boolean matches(int pixel, int target, int tolerance, ColorDistance distance) {
+        int dr = Math.abs(((pixel >> 16) & 0xFF) - ((target >> 16) & 0xFF));
+        int dg = Math.abs(((pixel >> 8) & 0xFF) - ((target >> 8) & 0xFF));
+        int db = Math.abs((pixel & 0xFF) - (target & 0xFF));
+        if (distance == ColorDistance.EUCLIDEAN) {
+            return dr * dr + dg * dg + db * db <= tolerance * tolerance;
+        }
+        return Math.max(dr, Math.max(dg, db)) <= tolerance;
+    }
+}
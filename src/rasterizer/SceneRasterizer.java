@@ -0,0 +1,64 @@
+package rasterizer;
+
+import model.Scene;
+import model.ShapeRecord;
+
+import java.awt.Rectangle;
+
+/*
+* Kreslí tvary ze scény (model.Scene) do rastru
+*
+* Při úpravě tvaru se nepřekresluje celé plátno - z podkladového snímku se vrátí jen dlaždice
+* pod upravovanou oblastí a do nich se znovu nakreslí tvary, které do nich zasahují, ve stejném
+* pořadí jako původně. Kreslení je oříznuté na vrácené dlaždice, takže tvary, které z oblasti
+* přesahují, nepřepíšou nic mimo ni.
+* Cena je tak úměrná ploše upravovaného tvaru a počtu tvarů kolem něj, ne velikosti dokumentu*/
+public class SceneRasterizer {
+    private final LineRasterizer lineRasterizer;
+    private final RectangleRasterizer rectangleRasterizer;
+    private final CircleRasterizer circleRasterizer;
+
+    public SceneRasterizer(LineRasterizer lineRasterizer, RectangleRasterizer rectangleRasterizer, CircleRasterizer circleRasterizer) {
+        this.lineRasterizer = lineRasterizer;
+        this.rectangleRasterizer = rectangleRasterizer;
+        this.circleRasterizer = circleRasterizer;
+    }
+
+    //nakreslí jeden tvar jeho vlastní barvou, tloušťkou, stylem a vyhlazením (rasterizery pak vrátí, jak byly)
+    public void draw(PixelSurface raster, ShapeRecord shape) {
+        boolean lineAntialiased = lineRasterizer.isAntialiased();
+        boolean circleAntialiased = circleRasterizer.isAntialiased();
+        lineRasterizer.setAntialiased(shape.isAntialiased());
+        circleRasterizer.setAntialiased(shape.isAntialiased());
+        try {
+            switch (shape.getType()) {
+                case LINE -> lineRasterizer.drawLine(raster, shape.getStart(), shape.getEnd(),
+                        shape.getColor(), shape.getThickness(), shape.getStyle());
+                case RECTANGLE -> rectangleRasterizer.drawRectangle(raster, shape.getStart(), shape.getEnd(),
+                        shape.getColor(), shape.getThickness(), shape.getStyle(), shape.isSquareMode());
+                case CIRCLE -> circleRasterizer.drawCircle(raster, shape.getStart(), shape.getEnd(),
+                        shape.getColor(), shape.getThickness(), shape.getStyle(), shape.isFilled());
+            }
+        } finally {
+            lineRasterizer.setAntialiased(lineAntialiased);
+            circleRasterizer.setAntialiased(circleAntialiased);
+        }
+    }
+
+    /*Překreslí oblast area plátna: dlaždice se vrátí do stavu base a nakreslí se do nich
+    * tvary scény, které do nich zasahují
+    * vrací překreslený obdélník (zarovnaný na dlaždice), null když je area mimo plátno*/
+    public Rectangle redraw(Raster canvas, TiledCanvas tiles, TiledCanvas.Snapshot base, Scene scene, Rectangle area) {
+        Rectangle region = tiles.restoreRegion(base, area.x, area.y, area.width, area.height);
+        if (region == null) return null;
+        canvas.setClip(region.x, region.y, region.width, region.height);
+        try {
+            for (ShapeRecord shape : scene.query(region)) {
+                draw(canvas, shape);
+            }
+        } finally {
+            canvas.clearClip();
+        }
+        return region;
+    }
+}
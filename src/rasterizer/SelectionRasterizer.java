@@ -1,10 +1,14 @@
 package rasterizer;
 
 import model.*;
-import java.awt.image.BufferedImage;
 import java.awt.Rectangle;
 
 public class SelectionRasterizer {
+    //index úchytu pro otočení výběru (0 - 3 jsou rohy)
+    public static final int ROTATE_HANDLE = 4;
+    //jak vysoko nad horní hranou výběru je úchyt otočení
+    private static final int ROTATE_HANDLE_DISTANCE = 25;
+
     private final RectangleRasterizer rectangleRasterizer;
     private final LineRasterizer lineRasterizer;
 
@@ -17,10 +21,19 @@ public class SelectionRasterizer {
     * */
         
     //Za Pomocí rectangle rasterizeru danou oblast ohraničí
-    public void drawSelectionBox(BufferedImage canvas, Point start, Point end) {
+    public void drawSelectionBox(PixelSurface canvas, Point start, Point end) {
         rectangleRasterizer.drawRectangle(canvas, start, end, java.awt.Color.CYAN, 1, LineStyle.DASHED, false);
     }
 
+    /*Vloží výběr selected na plátno s levým horním rohem na x, y
+    * vrací zálohu pixelů pod vloženým výběrem, aby se vložení dalo vrátit - kopíruje se jen
+    * cílová oblast, ne celé plátno*/
+    public RegionBuffer pasteSelection(Raster canvas, RegionBuffer selected, int x, int y) {
+        RegionBuffer under = new RegionBuffer(canvas, new Rectangle(x, y, selected.getWidth(), selected.getHeight()));
+        selected.drawTo(canvas, x, y);
+        return under;
+    }
+
     //Vypočítá a vrátá objekt, který představuje ohraničovací rámeček s definicí dvou bodů
     //vytvoří ho bez ohledu na pořadí zadání bodů (k tomu ty absolutní hodnoty)
     public Rectangle getSelectionRect(Point start, Point end) {
@@ -39,10 +52,22 @@ public class SelectionRasterizer {
         if (isPointInHandleArea(point, rect.x + rect.width, rect.y)) return 1;
         if (isPointInHandleArea(point, rect.x, rect.y + rect.height)) return 2;
         if (isPointInHandleArea(point, rect.x + rect.width, rect.y + rect.height)) return 3;
+        Point rotate = getRotateHandle(rect);
+        if (isPointInHandleArea(point, rotate.x, rotate.y)) return ROTATE_HANDLE;
 
         return -1;
     }
 
+    //úchyt otočení - uprostřed nad horní hranou výběru
+    public Point getRotateHandle(Rectangle rect) {
+        return new Point(rect.x + rect.width / 2, rect.y - ROTATE_HANDLE_DISTANCE);
+    }
+
+    //úhel (radiány) bodu point kolem středu výběru - otáčí se o rozdíl úhlů myši od stisku
+    public double getAngle(Rectangle rect, Point point) {
+        return Math.atan2(point.y - (rect.y + rect.height / 2.0), point.x - (rect.x + rect.width / 2.0));
+    }
+
     /*Představuje úchyt pro změnu velikosti a kontroluje, jestli je bod v oblasti úchytu*/
     private boolean isPointInHandleArea(Point point, int x, int y) {
         return point.x >= x - 10 && point.x <= x + 10 && point.y >= y - 10 && point.y <= y + 10;
@@ -96,7 +121,7 @@ public class SelectionRasterizer {
         return new Rectangle(x, y, width, height);
     }
     //Nakresli každý roh jako malý křížek pomocí dvou čar
-    public void drawHandles(BufferedImage canvas, Rectangle rect) {
+    public void drawHandles(PixelSurface canvas, Rectangle rect) {
 
         int size = 5;
         Point[] points = {
@@ -118,5 +143,12 @@ public class SelectionRasterizer {
                     new Point(p.x + size, p.y),
                     java.awt.Color.CYAN, 1, LineStyle.SOLID);
         }
+
+        //úchyt otočení - čára z horní hrany a malý čtvereček
+        Point rotate = getRotateHandle(rect);
+        lineRasterizer.drawLine(canvas, new Point(rotate.x, rect.y), new Point(rotate.x, rotate.y + 3),
+                java.awt.Color.CYAN, 1, LineStyle.DOTTED);
+        rectangleRasterizer.drawRectangle(canvas, new Point(rotate.x - 3, rotate.y - 3), new Point(rotate.x + 3, rotate.y + 3),
+                java.awt.Color.CYAN, 1, LineStyle.SOLID, false);
     }
 }
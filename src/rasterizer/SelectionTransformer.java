@@ -0,0 +1,391 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import model.Resampling;
+
+/*
+* Zvětšení / zmenšení a otočení vybraných pixelů
+*
+* Počítá se zpětně - pro každý pixel výsledku se najde místo ve zdrojovém obrázku
+* (otočení o -úhel kolem středu a změna měřítka) a tam se barva navzorkuje podle Resampling.
+* Souřadnice ve zdroji rostou po řádku lineárně, takže se na každý pixel jen přičítá krok.
+*
+* Výsledek je obdélník, který otočený výběr zabere - rohy mimo výběr jsou průhledné
+* a na hranici výběru se alfa ztrácí podle vzdálenosti od hrany (vyhlazené okraje).
+* Bez otočení a z neprůhledného zdroje je výsledek neprůhledný (RGB) a vkládá se kopií řádků.
+*
+* Řádky výsledku jsou na sobě nezávislé - velký výsledek se rozdělí na pásy řádků
+* a pásy se počítají paralelně na ForkJoinPoolu
+* https://en.wikipedia.org/wiki/Image_scaling
+* https://en.wikipedia.org/wiki/Bicubic_interpolation*/
+public class SelectionTransformer {
+
+    //od kolika pixelů výsledku se vyplatí počítat pásy paralelně
+    public static final long PARALLEL_THRESHOLD = 65_536L;
+    //minimální výška jednoho pásu řádků
+    private static final int MIN_BAND_HEIGHT = 16;
+    //úhel, který se ještě bere jako bez otočení
+    private static final double ANGLE_EPSILON = 1e-9;
+
+    private final ForkJoinPool pool;
+    //obrázek náhledu - během tažení se přepisuje místo alokace nového v každém snímku
+    private BufferedImage previewImage;
+
+    public SelectionTransformer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public SelectionTransformer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /*Obdélník, který zabere výběr width x height otočený o angle (radiány) kolem svého středu
+    * souřadnice jsou vůči levému hornímu rohu neotočeného výběru*/
+    public static Rectangle transformedBounds(int width, int height, double angle) {
+        if (Math.abs(angle) < ANGLE_EPSILON) return new Rectangle(0, 0, width, height);
+        double cos = Math.abs(Math.cos(angle));
+        double sin = Math.abs(Math.sin(angle));
+        double halfW = (width * cos + height * sin) / 2;
+        double halfH = (width * sin + height * cos) / 2;
+        //tolerance, aby násobky 90° nepřidaly kvůli zaokrouhlení řádek navíc
+        int x0 = (int) Math.floor(width / 2.0 - halfW + 1e-6);
+        int y0 = (int) Math.floor(height / 2.0 - halfH + 1e-6);
+        int x1 = (int) Math.ceil(width / 2.0 + halfW - 1e-6);
+        int y1 = (int) Math.ceil(height / 2.0 + halfH - 1e-6);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /*Kvalitní převzorkování - výběr source zvětšený na width x height a otočený o angle
+    * vrací nový obrázek s bounds vůči levému hornímu rohu výběru*/
+    public RegionBuffer transform(RegionBuffer source, int width, int height, double angle, Resampling resampling) {
+        Rectangle bounds = transformedBounds(width, height, angle);
+        return resample(source, width, height, angle, resampling, createImage(source, bounds, angle));
+    }
+
+    /*Rychlý náhled během tažení - nejbližší pixel do stále stejného obrázku
+    * vrácený výsledek platí jen do dalšího volání preview*/
+    public RegionBuffer preview(RegionBuffer source, int width, int height, double angle) {
+        Rectangle bounds = transformedBounds(width, height, angle);
+        int type = imageType(source, angle);
+        if (previewImage == null || previewImage.getWidth() != bounds.width
+                || previewImage.getHeight() != bounds.height || previewImage.getType() != type) {
+            previewImage = createImage(source, bounds, angle);
+        }
+        return resample(source, width, height, angle, Resampling.NEAREST, previewImage);
+    }
+
+    private static int imageType(RegionBuffer source, double angle) {
+        boolean opaque = source.getRaster().isOpaque() && Math.abs(angle) < ANGLE_EPSILON;
+        return opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+    }
+
+    private static BufferedImage createImage(RegionBuffer source, Rectangle bounds, double angle) {
+        return new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height), imageType(source, angle));
+    }
+
+    private RegionBuffer resample(RegionBuffer source, int width, int height, double angle, Resampling resampling,
+                                  BufferedImage image) {
+        Rectangle bounds = transformedBounds(width, height, angle);
+        RegionBuffer result = new RegionBuffer(image, bounds);
+        if (width <= 0 || height <= 0) return result;
+
+        Raster src = source.getRaster();
+        Raster dst = result.getRaster();
+        Sampler sampler = new Sampler(src, source.getWidth(), source.getHeight(), dst,
+                bounds, width, height, Math.abs(angle) < ANGLE_EPSILON ? 0 : angle, resampling);
+
+        int rows = bounds.height;
+        if ((long) bounds.width * rows < PARALLEL_THRESHOLD) {
+            sampler.rows(0, rows);
+        } else {
+            int bandCount = Math.max(1, Math.min(pool.getParallelism() * 4, rows / MIN_BAND_HEIGHT));
+            int bandHeight = (rows + bandCount - 1) / bandCount;
+            int count = (rows + bandHeight - 1) / bandHeight;
+            Parallel.run(pool, count, b -> sampler.rows(b * bandHeight, Math.min(rows, (b + 1) * bandHeight)));
+        }
+        return result;
+    }
+
+    /*Zpětné mapování pixelů výsledku do zdroje pro jedno převzorkování
+    * pásy řádků zapisují každý do jiných řádků výsledku, takže se nemusí synchronizovat
+    *
+    * Souřadnice ve zdroji jsou v pevné řádové čárce (16 bitů za čárkou) a po řádku se jen přičítá krok.
+    * Pro každý řádek se předem spočítá úsek pixelů uvnitř výběru a užší úsek pixelů plně uvnitř
+    * (vzdálenost od hrany aspoň půl pixelu) - jen pixely mezi nimi počítají alfu okraje.
+    * Řádky pásu se projdou po kusech CHUNK sloupců, aby otočený výběr četl zdroj z malé oblasti
+    * (v cache) a ne přes celou šířku obrázku v každém řádku*/
+    private static final class Sampler {
+        private static final int CHUNK = 64;
+        private static final int ONE = 1 << 16;
+        /*Catmull-Rom váhy pro 256 poloh mezi pixely, každá čtveřice má součet 256
+        * https://en.wikipedia.org/wiki/Cubic_Hermite_spline#Catmull%E2%80%93Rom_spline*/
+        private static final int[] CUBIC = cubicTable();
+
+        private final int[] srcData;
+        private final int srcStride;
+        private final int srcW;
+        private final int srcH;
+        //u neprůhledného zdroje je horní bajt v poli 0 - při čtení se doplní plná alfa
+        private final int srcAlpha;
+        private final int[] dstData;
+        private final int dstStride;
+        private final boolean dstOpaque;
+        private final Rectangle bounds;
+        private final double halfW;
+        private final double halfH;
+        private final double cos;
+        private final double sin;
+        private final double scaleX;
+        private final double scaleY;
+        //krok souřadnic ve zdroji na jeden pixel výsledku doprava (pevná řádová čárka)
+        private final long stepX;
+        private final long stepY;
+        private final Resampling resampling;
+
+        Sampler(Raster src, int srcW, int srcH, Raster dst, Rectangle bounds, int width, int height,
+                double angle, Resampling resampling) {
+            this.srcData = src.getData();
+            this.srcStride = src.getStride();
+            this.srcW = srcW;
+            this.srcH = srcH;
+            this.srcAlpha = src.isOpaque() ? 0xFF000000 : 0;
+            this.dstData = dst.getData();
+            this.dstStride = dst.getStride();
+            this.dstOpaque = dst.isOpaque();
+            this.bounds = bounds;
+            this.halfW = width / 2.0;
+            this.halfH = height / 2.0;
+            this.cos = angle == 0 ? 1 : Math.cos(angle);
+            this.sin = angle == 0 ? 0 : Math.sin(angle);
+            this.scaleX = (double) srcW / width;
+            this.scaleY = (double) srcH / height;
+            this.stepX = Math.round(cos * scaleX * ONE);
+            this.stepY = Math.round(-sin * scaleY * ONE);
+            this.resampling = resampling;
+        }
+
+        //spočítá řádky from .. to (bez) výsledku, po kusech sloupců
+        void rows(int from, int to) {
+            for (int c0 = 0; c0 < bounds.width; c0 += CHUNK) {
+                int c1 = Math.min(bounds.width, c0 + CHUNK);
+                for (int j = from; j < to; j++) {
+                    row(j, c0, c1);
+                }
+            }
+        }
+
+        /*Sloupce c0 .. c1 (bez) řádku j
+        * (u, v) je střed pixelu vůči středu výběru otočený zpět o úhel - v pixelech výsledku,
+        * výběr je |u| < halfW a |v| < halfH*/
+        private void row(int j, int c0, int c1) {
+            double px = bounds.x + c0 + 0.5 - halfW;
+            double py = bounds.y + j + 0.5 - halfH;
+            double u0 = px * cos + py * sin;
+            double v0 = -px * sin + py * cos;
+            //hladké převzorkování má okraj široký jeden pixel, nejbližší pixel ostrou hranu
+            double fringe = resampling == Resampling.NEAREST ? 0 : 0.5;
+            long su = span(u0, cos, halfW + fringe, c0, c1);
+            long sv = span(v0, -sin, halfH + fringe, c0, c1);
+            int outer0 = Math.max(start(su), start(sv));
+            int outer1 = Math.min(end(su), end(sv));
+            su = span(u0, cos, halfW - fringe, c0, c1);
+            sv = span(v0, -sin, halfH - fringe, c0, c1);
+            int inner0 = Math.max(Math.max(start(su), start(sv)), outer0);
+            int inner1 = Math.min(Math.min(end(su), end(sv)), outer1);
+            if (inner1 <= inner0) {
+                inner0 = outer1;
+                inner1 = outer1;
+            }
+
+            int offset = j * dstStride;
+            long sx = Math.round(((u0 + halfW) * scaleX - 0.5) * ONE);
+            long sy = Math.round(((v0 + halfH) * scaleY - 0.5) * ONE);
+            fillTransparent(offset, c0, Math.max(c0, outer0));
+            for (int i = outer0; i < inner0; i++) {
+                edgePixel(offset, i, c0, u0, v0, sx, sy);
+            }
+            if (inner0 < inner1) {
+                long x = sx + stepX * (inner0 - c0);
+                long y = sy + stepY * (inner0 - c0);
+                switch (resampling) {
+                    case NEAREST -> nearestRun(offset, inner0, inner1, x, y);
+                    case BILINEAR -> bilinearRun(offset, inner0, inner1, x, y);
+                    case BICUBIC -> bicubicRun(offset, inner0, inner1, x, y);
+                }
+            }
+            for (int i = Math.max(inner1, outer0); i < outer1; i++) {
+                edgePixel(offset, i, c0, u0, v0, sx, sy);
+            }
+            fillTransparent(offset, Math.max(c0, Math.max(outer0, outer1)), c1);
+        }
+
+        /*Sloupce i (od c0 do c1), pro které je |a + b * (i - c0)| < limit
+        * vrací začátek v horních a konec (bez) v dolních 32 bitech*/
+        private static long span(double a, double b, double limit, int c0, int c1) {
+            int start = c0;
+            int end = c1;
+            if (limit <= 0) {
+                end = c0;
+            } else if (b == 0) {
+                if (Math.abs(a) >= limit) end = c0;
+            } else {
+                double t1 = (-limit - a) / b;
+                double t2 = (limit - a) / b;
+                double lo = Math.min(t1, t2);
+                double hi = Math.max(t1, t2);
+                start = (int) Math.max(c0, Math.min(c1, Math.floor(lo) + 1 + c0));
+                end = (int) Math.max(c0, Math.min(c1, Math.ceil(hi) + c0));
+            }
+            return ((long) start << 32) | (end & 0xFFFFFFFFL);
+        }
+
+        private static int start(long span) {
+            return (int) (span >>> 32);
+        }
+
+        private static int end(long span) {
+            return (int) span;
+        }
+
+        private void fillTransparent(int offset, int from, int to) {
+            for (int i = from; i < to; i++) {
+                dstData[offset + i] = 0;
+            }
+        }
+
+        //pixel na okraji výběru - alfa podle vzdálenosti od hrany
+        private void edgePixel(int offset, int i, int c0, double u0, double v0, long sx, long sy) {
+            int k = i - c0;
+            double u = u0 + k * cos;
+            double v = v0 - k * sin;
+            double edge = Math.min(halfW - Math.abs(u), halfH - Math.abs(v));
+            int alpha = resampling == Resampling.NEAREST ? (edge > 0 ? 255 : 0)
+                    : (int) Math.max(0, Math.min(255, (edge + 0.5) * 255 + 0.5));
+            if (alpha == 0) {
+                dstData[offset + i] = 0;
+                return;
+            }
+            long x = sx + stepX * k;
+            long y = sy + stepY * k;
+            int argb = switch (resampling) {
+                case NEAREST -> nearest(x, y);
+                case BILINEAR -> bilinear(x, y);
+                case BICUBIC -> bicubic(x, y);
+            };
+            if (alpha < 255) argb = Blend.withCoverage(argb, alpha);
+            dstData[offset + i] = dstOpaque ? argb & 0x00FFFFFF : argb;
+        }
+
+        private void nearestRun(int offset, int from, int to, long x, long y) {
+            int mask = dstOpaque ? 0x00FFFFFF : 0xFFFFFFFF;
+            for (int i = from; i < to; i++, x += stepX, y += stepY) {
+                dstData[offset + i] = nearest(x, y) & mask;
+            }
+        }
+
+        private void bilinearRun(int offset, int from, int to, long x, long y) {
+            int mask = dstOpaque ? 0x00FFFFFF : 0xFFFFFFFF;
+            for (int i = from; i < to; i++, x += stepX, y += stepY) {
+                dstData[offset + i] = bilinear(x, y) & mask;
+            }
+        }
+
+        private void bicubicRun(int offset, int from, int to, long x, long y) {
+            int mask = dstOpaque ? 0x00FFFFFF : 0xFFFFFFFF;
+            for (int i = from; i < to; i++, x += stepX, y += stepY) {
+                dstData[offset + i] = bicubic(x, y) & mask;
+            }
+        }
+
+        private int pixel(int x, int y) {
+            x = x < 0 ? 0 : Math.min(x, srcW - 1);
+            y = y < 0 ? 0 : Math.min(y, srcH - 1);
+            return srcData[y * srcStride + x] | srcAlpha;
+        }
+
+        private int nearest(long x, long y) {
+            return pixel((int) ((x + ONE / 2) >> 16), (int) ((y + ONE / 2) >> 16));
+        }
+
+        /*váhy 2 x 2 okolních pixelů - podíl na 8 bitů v každém směru
+        * souřadnice se zaokrouhlí na 1/256 pixelu, takže poloha těsně pod celým číslem nevezme kousek souseda*/
+        private int bilinear(long x, long y) {
+            long fixedX = (x + 128) >> 8;
+            long fixedY = (y + 128) >> 8;
+            int x0 = (int) (fixedX >> 8);
+            int y0 = (int) (fixedY >> 8);
+            int fx = (int) (fixedX & 255);
+            int fy = (int) (fixedY & 255);
+            int c00 = pixel(x0, y0);
+            if (fx == 0 && fy == 0) return c00;
+            int top = lerp(c00, pixel(x0 + 1, y0), fx);
+            int bottom = lerp(pixel(x0, y0 + 1), pixel(x0 + 1, y0 + 1), fx);
+            return lerp(top, bottom, fy);
+        }
+
+        /*a + (b - a) * f / 256 ve všech čtyřech kanálech najednou
+        * červená a modrá (a alfa se zelenou) se násobí spolu v jednom intu, každá má 16 bitů místa*/
+        private static int lerp(int a, int b, int f) {
+            int keep = 256 - f;
+            int rb = (((a & 0xFF00FF) * keep + (b & 0xFF00FF) * f + 0x800080) >>> 8) & 0xFF00FF;
+            int ag = ((((a >>> 8) & 0xFF00FF) * keep + ((b >>> 8) & 0xFF00FF) * f + 0x800080) >>> 8) & 0xFF00FF;
+            return rb | (ag << 8);
+        }
+
+        /*Catmull-Rom přes 4 x 4 okolních pixelů - váhy z tabulky podle polohy na 1/256 pixelu
+        * záporné váhy můžou dát hodnotu mimo 0 - 255, takže se kanály ořežou*/
+        private int bicubic(long x, long y) {
+            long fixedX = (x + 128) >> 8;
+            long fixedY = (y + 128) >> 8;
+            int x0 = (int) (fixedX >> 8);
+            int y0 = (int) (fixedY >> 8);
+            int wx = (int) (fixedX & 255) * 4;
+            int wy = (int) (fixedY & 255) * 4;
+            if (wx == 0 && wy == 0) return pixel(x0, y0);
+            int a = 0, r = 0, g = 0, b = 0;
+            for (int m = 0; m < 4; m++) {
+                int rowA = 0, rowR = 0, rowG = 0, rowB = 0;
+                for (int n = 0; n < 4; n++) {
+                    int c = pixel(x0 - 1 + n, y0 - 1 + m);
+                    int w = CUBIC[wx + n];
+                    rowA += (c >>> 24) * w;
+                    rowR += ((c >> 16) & 0xFF) * w;
+                    rowG += ((c >> 8) & 0xFF) * w;
+                    rowB += (c & 0xFF) * w;
+                }
+                int w = CUBIC[wy + m];
+                a += rowA * w;
+                r += rowR * w;
+                g += rowG * w;
+                b += rowB * w;
+            }
+            return (clamp(a) << 24) | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+        }
+
+        //součet s váhami 256 x 256 zpátky na 0 - 255
+        private static int clamp(int sum) {
+            int v = (sum + 32768) >> 16;
+            return v < 0 ? 0 : Math.min(v, 255);
+        }
+
+        //Catmull-Rom (a = -0.5), zaokrouhlení dorovná prostřední váha, aby součet byl přesně 256
+        private static int[] cubicTable() {
+            int[] table = new int[256 * 4];
+            for (int f = 0; f < 256; f++) {
+                double t = f / 256.0;
+                double t2 = t * t;
+                double t3 = t2 * t;
+                int w0 = (int) Math.round((-0.5 * t3 + t2 - 0.5 * t) * 256);
+                int w2 = (int) Math.round((-1.5 * t3 + 2 * t2 + 0.5 * t) * 256);
+                int w3 = (int) Math.round((0.5 * t3 - 0.5 * t2) * 256);
+                table[f * 4] = w0;
+                table[f * 4 + 1] = 256 - w0 - w2 - w3;
+                table[f * 4 + 2] = w2;
+                table[f * 4 + 3] = w3;
+            }
+            return table;
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package rasterizer;
+
+import model.BrushTip;
+
+import java.util.Arrays;
+
+/*
+* Kreslení tahu štětce a gumy po úsecích
+*
+* Každý úsek tahu (mezi dvěma polohami myši) je jeden konvexní tvar - úsečka "nafouknutá" o poloměr hrotu:
+* - kulatý hrot: kapsle, tedy všechny body do vzdálenosti poloměr + 0.5 od úsečky
+* - čtvercový hrot: úsečka tažená čtvercem 2 * poloměr + 1 (stejně velký jako původní razítko)
+* Průnik konvexního tvaru s řádkem je jeden úsek, takže se každý řádek vyplní jedním fillSpan
+* a každý pixel úseku se zapíše jen jednou - místo razítka celého čtverce v každém bodě interpolace.
+*
+* Poloprůhledný tah (alfa barvy pod 255) se míchá s tím, co bylo pod ním před začátkem tahu.
+* Tah si pamatuje masku - kolik alfy už do každého pixelu přidal - takže se v místech, kde se úseky
+* překrývají (spoje, návrat tahu přes sebe), barva nepřidá podruhé a tah neztmavne.
+* Maska je po dlaždicích 64 x 64 (bajt na pixel) a alokují se jen dlaždice, kudy tah vedl.
+*
+* S vyhlazováním (antialiased) dostanou pixely na okraji tvaru pokrytí podle vzdálenosti středu pixelu
+* od úsečky (u čtvercového hrotu vzdálenost v maximové metrice), vnitřek tvaru se pořád vyplňuje po úsecích.
+* Okrajové pixely vyhlazeného tahu jdou přes masku - pixel, který už má větší pokrytí, se znovu nemíchá,
+* a pixel s menším pokrytím se doplní jen o rozdíl, takže spoje úseků nemají světlejší ani tmavší švy.
+* Neprůhledný vnitřek se do masky nezapisuje, jen se vyplní fillSpan: okraj jiného úseku přes něj
+* míchá stejnou barvu přes stejnou (nic se nezmění) a vnitřek přes dřívější okraj ho celý přepíše.
+*
+* Pixel patří do tvaru, když v něm leží jeho střed (celočíselné souřadnice).
+* Tah je stavový (begin, lineTo..., end) - jeden StrokeRasterizer patří jednomu vláknu*/
+public class StrokeRasterizer {
+    private static final int TILE_SHIFT = 6;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    //kratší plně pokrytý vnitřek řádku neprůhledného tahu se smíchá jedním blendSpan s rampami, delší vyplní fillSpan
+    private static final int LONG_SPAN = 32;
+
+    private PixelSurface surface;
+    private int argb;
+    private int alpha;
+    private boolean masked;
+    private boolean antialiased;
+    private BrushTip tip;
+    //poloměr hrotu včetně půl pixelu kolem středu
+    private double reach;
+    private int lastX;
+    private int lastY;
+    private boolean started;
+    //tah jde přes lineTo - sousední úseky se překrývají ve společném bodě, takže i okraje neprůhledného tahu
+    //se musí maskovat (čárky LineRasterizeru kreslené přes segment se nepřekrývají)
+    private boolean joined;
+    //maska tahu - alfa, kterou tah do pixelu už přidal (bajt bez znaménka), dlaždice po řádcích,
+    //null dokud do dlaždice tah nezasáhl
+    private byte[][] coverage;
+    private int coverageWidth;
+    private int coverageHeight;
+    private int tilesX;
+    //dlaždice masky, do kterých tah zasáhl - jen ty se na konci tahu mažou
+    private boolean[] touched;
+    private final IntList touchedTiles = new IntList(64);
+    //alfy právě míchaného úseku okraje (vyhlazení), pole se znovu používá
+    private int[] runCoverage = new int[64];
+    //průnik právě počítaného řádku s tvarem úseku
+    private double spanLo;
+    private double spanHi;
+    //směr právě kresleného úseku (jednotkový vektor), jeho délka a převrácené hodnoty složek
+    private double unitX;
+    private double unitY;
+    private double inverseX;
+    private double inverseY;
+    private double segmentLength;
+
+    /*Začne nový tah do surface
+    * tloušťka odpovídá straně původního čtvercového razítka (2 * (tloušťka / 2) + 1)*/
+    public void begin(PixelSurface surface, int thickness, BrushTip tip, int argb) {
+        begin(surface, thickness, tip, argb, false);
+    }
+
+    public void begin(PixelSurface surface, int thickness, BrushTip tip, int argb, boolean antialiased) {
+        this.surface = surface;
+        this.tip = tip;
+        this.argb = argb;
+        this.alpha = argb >>> 24;
+        this.antialiased = antialiased;
+        this.masked = antialiased || alpha != 255;
+        this.reach = thickness / 2 + 0.5;
+        this.started = false;
+        this.joined = false;
+        if (masked) prepareCoverage(surface.getWidth(), surface.getHeight());
+    }
+
+    //přidá do tahu bod x, y - první bod je samotný otisk hrotu, další úsek od předchozího bodu
+    public void lineTo(int x, int y) {
+        if (surface == null) throw new IllegalStateException("Tah nezačal, chybí begin");
+        joined = true;
+        if (!started) {
+            segment(x, y, x, y);
+            started = true;
+        } else if (x != lastX || y != lastY) {
+            segment(lastX, lastY, x, y);
+        }
+        lastX = x;
+        lastY = y;
+    }
+
+    //ukončí tah - vymaže masku pokrytí (jen použité dlaždice) pro další tah
+    public void end() {
+        for (int i = 0; i < touchedTiles.size(); i++) {
+            int tile = touchedTiles.get(i);
+            Arrays.fill(coverage[tile], (byte) 0);
+            touched[tile] = false;
+        }
+        touchedTiles.clear();
+        surface = null;
+    }
+
+    private void prepareCoverage(int width, int height) {
+        if (coverage != null && coverageWidth == width && coverageHeight == height) return;
+        coverageWidth = width;
+        coverageHeight = height;
+        tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        int tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        coverage = new byte[tilesX * tilesY][];
+        touched = new boolean[tilesX * tilesY];
+        touchedTiles.clear();
+    }
+
+    /*Vyplní jeden úsek tahu od x1, y1 do x2, y2 po řádcích (bez spojení s předchozím bodem)
+    * LineRasterizer tak kreslí vyhlazené čárky tlusté čáry - ty se navzájem nepřekrývají
+    * (mezera mezi čárkami je delší než tloušťka), takže neprůhledné okraje nepotřebují masku*/
+    public void segment(int x1, int y1, int x2, int y2) {
+        if (surface == null) throw new IllegalStateException("Tah nezačal, chybí begin");
+        //vyhlazený okraj zasahuje o půl pixelu dál
+        double extent = antialiased ? reach + 0.5 : reach;
+        int top = Math.max((int) Math.ceil(Math.min(y1, y2) - extent), 0);
+        int bottom = Math.min((int) Math.floor(Math.max(y1, y2) + extent), surface.getHeight() - 1);
+        int maxX = surface.getWidth() - 1;
+        segmentLength = Math.sqrt((double) (x2 - x1) * (x2 - x1) + (double) (y2 - y1) * (y2 - y1));
+        if (segmentLength != 0) {
+            unitX = (x2 - x1) / segmentLength;
+            unitY = (y2 - y1) / segmentLength;
+            inverseX = unitX == 0 ? 0 : 1 / unitX;
+            inverseY = unitY == 0 ? 0 : 1 / unitY;
+        }
+
+        /*prostřední řádky vyhlazeného úseku - daleko od konců tvar v řádku ohraničují jen dvě rovnoběžné strany,
+        * takže vnější i vnitřní hranice jsou průsečík úsečky s řádkem +- stálá polovina šířky
+        * a počítají se bez rowSpan (ten je jen pro řádky u konců úseku)*/
+        int middleTop = Integer.MAX_VALUE;
+        int middleBottom = Integer.MIN_VALUE;
+        if (antialiased && y1 != y2) {
+            double slope = (double) (x2 - x1) / (y2 - y1);
+            double margin;
+            double outerHalf;
+            double innerHalf;
+            if (tip == BrushTip.SQUARE) {
+                //čtverec zasahuje do řádku ze středů v řádcích y - r až y + r
+                margin = extent;
+                outerHalf = extent * (1 + Math.abs(slope));
+                innerHalf = (reach - 0.5) * (1 + Math.abs(slope));
+            } else {
+                //řádek protíná obě dlouhé strany kapsle mezi konci úsečky
+                margin = extent * Math.abs(unitX);
+                outerHalf = extent / Math.abs(unitY);
+                innerHalf = (reach - 0.5) / Math.abs(unitY);
+            }
+            middleTop = Math.max((int) Math.ceil(Math.min(y1, y2) + margin), top);
+            middleBottom = Math.min((int) Math.floor(Math.max(y1, y2) - margin), bottom);
+            if (middleTop <= middleBottom) {
+                middleRows(middleTop, middleBottom, x1 + (middleTop - y1) * slope, slope, outerHalf, innerHalf);
+            }
+        }
+
+        for (int y = top; y <= bottom; y++) {
+            if (y >= middleTop && y <= middleBottom) continue;
+            if (!rowSpan(x1, y1, x2, y2, y, extent)) continue;
+            int from = Math.max((int) Math.ceil(spanLo), 0);
+            int to = Math.min((int) Math.floor(spanHi), maxX);
+            if (from > to) continue;
+            if (!antialiased) {
+                if (masked) {
+                    blendSpan(from, to, y);
+                } else {
+                    surface.fillSpan(from, to, y, argb);
+                }
+                continue;
+            }
+            double outerLo = spanLo;
+            double outerHi = spanHi;
+            if (reach <= 0.5 || !rowSpan(x1, y1, x2, y2, y, reach - 0.5)) {
+                edgePixels(from, to, y, x1, y1, x2, y2);
+                continue;
+            }
+            antialiasedRow(y, from, to, outerLo, outerHi, spanLo, spanHi, x1, y1, x2, y2);
+        }
+    }
+
+    /*Prostřední řádky yFrom..yTo vyhlazeného úseku, střed úsečky je v řádku yFrom v centre a posouvá se o slope
+    * pokrytí pixelu klesá se vzdáleností od středu lineárně - plné do innerHalf, nulové v outerHalf
+    * (vzdálenost od osy je v řádku úměrná vodorovné vzdálenosti od středu, u čtverce i v maximové metrice)
+    * hranice i pokrytí jsou v pevné řádové čárce a po řádcích i pixelech se jen přičítají*/
+    private void middleRows(int yFrom, int yTo, double centre, double slope, double outerHalf, double innerHalf) {
+        int maxX = surface.getWidth() - 1;
+        //střed a poloviny šířky v 16.16
+        long position = Math.round(centre * 65536);
+        long step = Math.round(slope * 65536);
+        long outer = (long) (outerHalf * 65536);
+        long inner = (long) (innerHalf * 65536);
+        //přírůstek pokrytí na pixel v 16.16 - rampa je široká outerHalf - innerHalf, pokrytí v ní roste o 255
+        long scale = Math.round(255 * 65536 / (outerHalf - innerHalf));
+        long increment = scale << 16;
+        for (int y = yFrom; y <= yTo; y++, position += step) {
+            long lo = position - outer;
+            long hi = position + outer;
+            int from = Math.max((int) ((lo + 0xFFFF) >> 16), 0);
+            int to = Math.min((int) (hi >> 16), maxX);
+            if (from > to) continue;
+            int fullFrom = Math.max((int) ((position - inner + 0xFFFF) >> 16), from);
+            int fullTo = Math.min((int) ((position + inner) >> 16), to);
+            int[] run = runCoverage(to - from + 1);
+            //pokrytí od levého a pravého okraje v 32.32 (vzdálenost 16.16 krát scale), zaokrouhlené
+            long left = (((long) from << 16) - lo) * scale + (1L << 31);
+            long right = (hi - ((long) from << 16)) * scale + (1L << 31);
+            if (fullFrom > fullTo) {
+                //úzký tah bez plně pokrytého vnitřku - rampy se potkají, platí menší z obou
+                for (int i = 0; i <= to - from; i++, left += increment, right -= increment) {
+                    int c = Math.min(Math.min((int) (left >> 32), (int) (right >> 32)), 255);
+                    run[i] = alpha == 255 ? c : Blend.div255(alpha * c);
+                }
+                blendRun(from, y, to - from + 1);
+                continue;
+            }
+            for (int i = 0; i < fullFrom - from; i++, left += increment) {
+                int c = Math.min((int) (left >> 32), 255);
+                run[i] = alpha == 255 ? c : Blend.div255(alpha * c);
+            }
+            right -= increment * (fullTo + 1 - from);
+            if (alpha == 255 && fullTo - fullFrom < LONG_SPAN) {
+                //krátký vnitřek - rampy i plné pixely v jednom úseku, řádek je jedno volání blendSpan
+                Arrays.fill(run, fullFrom - from, fullTo + 1 - from, 255);
+                int offset = fullTo + 1 - from;
+                for (int i = 0; i < to - fullTo; i++, right -= increment) {
+                    run[offset + i] = Math.min((int) (right >> 32), 255);
+                }
+                blendRun(from, y, to - from + 1);
+                continue;
+            }
+            blendRun(from, y, fullFrom - from);
+            blendSpan(fullFrom, fullTo, y);
+            for (int i = 0; i < to - fullTo; i++, right -= increment) {
+                int c = Math.min((int) (right >> 32), 255);
+                run[i] = alpha == 255 ? c : Blend.div255(alpha * c);
+            }
+            blendRun(fullTo + 1, y, to - fullTo);
+        }
+    }
+
+    /*Vyhlazený řádek y s vnějšími hranicemi outerLo, outerHi (pixely from..to) a vnitřními innerLo, innerHi
+    * plně pokrytý vnitřek (do vzdálenosti reach - 0.5), po stranách rampa pokrytí
+    * vzdálenost od úsečky se podél řádku mezi hranicemi mění (skoro) lineárně, takže se pokrytí
+    * pixelu jen interpoluje mezi průsečíky s vnějším a vnitřním okrajem - přesná vzdálenost
+    * se počítá jen v řádcích, kde vnitřek chybí (krajní řádky tahu)*/
+    private void antialiasedRow(int y, int from, int to, double outerLo, double outerHi, double innerLo, double innerHi,
+                                int x1, int y1, int x2, int y2) {
+        int fullFrom = Math.max((int) Math.ceil(innerLo), from);
+        int fullTo = Math.min((int) Math.floor(innerHi), to);
+        if (fullFrom > fullTo) {
+            edgePixels(from, to, y, x1, y1, x2, y2);
+            return;
+        }
+        ramp(from, fullFrom - 1, y, outerLo, innerLo);
+        blendSpan(fullFrom, fullTo, y);
+        ramp(fullTo + 1, to, y, outerHi, innerHi);
+    }
+
+    /*Průnik řádku y s tvarem úseku s poloměrem r do spanLo, spanHi
+    * vrací false, když řádek tvar míjí*/
+    private boolean rowSpan(int x1, int y1, int x2, int y2, int y, double r) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        spanLo = Double.POSITIVE_INFINITY;
+        spanHi = Double.NEGATIVE_INFINITY;
+        if (tip == BrushTip.SQUARE) {
+            //čtverec se středem na úsečce zasahuje do řádku, když je střed nejvýš r od řádku
+            double t0 = 0;
+            double t1 = 1;
+            //porovnání místo Math.min / max - ty kvůli NaN a -0.0 nejsou zadarmo a řádků je hodně
+            if (dy != 0) {
+                double ta = (y - r - y1) / dy;
+                double tb = (y + r - y1) / dy;
+                if (ta > t0 && tb > t0) t0 = ta < tb ? ta : tb;
+                if (ta < t1 && tb < t1) t1 = ta > tb ? ta : tb;
+            } else if (Math.abs(y - y1) > r) {
+                return false;
+            }
+            if (t0 > t1) return false;
+            double xa = x1 + t0 * dx;
+            double xb = x1 + t1 * dx;
+            spanLo = (xa < xb ? xa : xb) - r;
+            spanHi = (xa > xb ? xa : xb) + r;
+            return true;
+        }
+        //kapsle = kruhy v koncových bodech a obdélník mezi nimi
+        crossDisc(x1, y1, y, r);
+        crossDisc(x2, y2, y, r);
+        if (segmentLength != 0) {
+            /*obdélník v souřadnicích úsečky: průmět t = (x - x1) ux + (y - y1) uy je 0 .. délka
+            * a vzdálenost od osy n = (y - y1) ux - (x - x1) uy je -r .. r
+            * v řádku je obojí lineární v x, takže průnik je úsek, bez dělení (převrácené hodnoty jsou předem)*/
+            double ry = y - y1;
+            double lo = Double.NEGATIVE_INFINITY;
+            double hi = Double.POSITIVE_INFINITY;
+            double along = ry * unitY;
+            if (unitX != 0) {
+                double a = -along * inverseX;
+                double b = (segmentLength - along) * inverseX;
+                lo = Math.min(a, b);
+                hi = Math.max(a, b);
+            } else if (along < 0 || along > segmentLength) {
+                return spanLo <= spanHi;
+            }
+            double across = ry * unitX;
+            if (unitY != 0) {
+                double a = (across - r) * inverseY;
+                double b = (across + r) * inverseY;
+                lo = Math.max(lo, Math.min(a, b));
+                hi = Math.min(hi, Math.max(a, b));
+            } else if (Math.abs(across) > r) {
+                return spanLo <= spanHi;
+            }
+            if (lo <= hi) {
+                spanLo = Math.min(spanLo, x1 + lo);
+                spanHi = Math.max(spanHi, x1 + hi);
+            }
+        }
+        return spanLo <= spanHi;
+    }
+
+    //rozšíří úsek řádku y o průnik s kruhem o poloměru r se středem cx, cy
+    private void crossDisc(int cx, int cy, int y, double r) {
+        double w = r * r - (double) (y - cy) * (y - cy);
+        if (w < 0) return;
+        w = Math.sqrt(w);
+        spanLo = Math.min(spanLo, cx - w);
+        spanHi = Math.max(spanHi, cx + w);
+    }
+
+    /*Okrajové pixely x0..x1 vyhlazeného úseku - pokrytí podle vzdálenosti od úsečky
+    *
+    * U čtvercového hrotu je to vzdálenost v maximové metrice (max z |dx|, |dy|) - úsečka tažená čtvercem
+    * je právě množina bodů s touto vzdáleností nejvýš půl strany čtverce. Ten tvar je šestiúhelník
+    * se stranami kolmými na osy a rovnoběžnými s úsečkou, takže vzdálenost je největší z přesahů
+    * přes krajní x a y úsečky a ze vzdálenosti od přímky úsečky (|vektorový součin| / (|dx| + |dy|)).
+    * V řádku je přesah přes y stálý a ostatní se mění o stálý krok na pixel*/
+    private void edgePixels(int x0, int x1, int y, int ax, int ay, int bx, int by) {
+        int[] run = runCoverage(x1 - x0 + 1);
+        if (tip == BrushTip.SQUARE) {
+            int dx = bx - ax;
+            int dy = by - ay;
+            int left = Math.min(ax, bx);
+            int right = Math.max(ax, bx);
+            int vertical = Math.max(Math.min(ay, by) - y, y - Math.max(ay, by));
+            //u vodorovné a svislé úsečky přímku zastoupí přesahy přes osy (across zůstane 0)
+            double inverse = dx != 0 && dy != 0 ? 1.0 / (Math.abs(dx) + Math.abs(dy)) : 0;
+            double across = ((double) (x0 - ax) * dy - (double) (y - ay) * dx) * inverse;
+            double step = dy * inverse;
+            for (int x = x0; x <= x1; x++, across += step) {
+                double distance = Math.max(Math.max(Math.max(left - x, x - right), vertical), Math.abs(across));
+                int cover = (int) ((reach + 0.5 - distance) * 255 + 0.5);
+                run[x - x0] = cover <= 0 ? 0 : Blend.div255(alpha * Math.min(cover, 255));
+            }
+        } else {
+            for (int x = x0; x <= x1; x++) {
+                int cover = (int) ((reach + 0.5 - euclideanDistance(x, y, ax, ay, bx, by)) * 255 + 0.5);
+                run[x - x0] = cover <= 0 ? 0 : Blend.div255(alpha * Math.min(cover, 255));
+            }
+        }
+        blendRun(x0, y, x1 - x0 + 1);
+    }
+
+    /*Pixely x0..x1 řádku y mezi okrajem edge (pokrytí 0) a vnitřní hranicí inside (pokrytí 255)
+    * pokrytí roste po řádku lineárně - přičítá se o scale na pixel*/
+    private void ramp(int x0, int x1, int y, double edge, double inside) {
+        if (x0 > x1) return;
+        int[] run = runCoverage(x1 - x0 + 1);
+        double scale = 255 / (inside - edge);
+        double cover = (x0 - edge) * scale + 0.5;
+        for (int i = 0; i <= x1 - x0; i++, cover += scale) {
+            int c = Math.max(Math.min((int) cover, 255), 0);
+            run[i] = alpha == 255 ? c : Blend.div255(alpha * c);
+        }
+        blendRun(x0, y, x1 - x0 + 1);
+    }
+
+    private static double euclideanDistance(int px, int py, int ax, int ay, int bx, int by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSq));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    /*Plně pokrytý úsek x0..x1 na řádku y
+    * neprůhledný tah se vyplní fillSpan (maska se nemění), poloprůhledný se míchá po pixelech
+    * jen tam, kde ještě nemá plnou alfu*/
+    private void blendSpan(int x0, int x1, int y) {
+        if (alpha == 255) {
+            surface.fillSpan(x0, x1, y, argb);
+            return;
+        }
+        int rowOffset = (y & (TILE_SIZE - 1)) << TILE_SHIFT;
+        int tileRow = (y >> TILE_SHIFT) * tilesX;
+        int x = x0;
+        while (x <= x1) {
+            byte[] mask = tile(tileRow + (x >> TILE_SHIFT));
+            int tileEnd = Math.min(x1, x | (TILE_SIZE - 1));
+            for (; x <= tileEnd; x++) {
+                int offset = rowOffset + (x & (TILE_SIZE - 1));
+                int applied = mask[offset] & 0xFF;
+                if (applied >= alpha) continue;
+                mask[offset] = (byte) alpha;
+                surface.blendPixel(x, y, argb | 0xFF000000, increment(applied, alpha));
+            }
+        }
+    }
+
+    /*Smíchá do pixelů x0 .. x0 + count - 1 řádku y barvu tak, aby celková alfa tahu v pixelu byla runCoverage[i]
+    * když už tah do pixelu přidal applied, přidá se jen zbytek - alfy se podle masky přepíšou na přírůstky
+    * a celý úsek se smíchá jedním blendSpan (plně pokryté pixely neprůhledného tahu se do masky nezapisují).
+    * Samostatný segment neprůhledné barvy maskou neprochází vůbec - každý pixel v něm leží jen v jednom úseku*/
+    private void blendRun(int x0, int y, int count) {
+        if (count <= 0) return;
+        if (alpha == 255 && !joined) {
+            surface.blendSpan(x0, y, argb, runCoverage, 0, count);
+            return;
+        }
+        int rowOffset = (y & (TILE_SIZE - 1)) << TILE_SHIFT;
+        int tileRow = (y >> TILE_SHIFT) * tilesX;
+        byte[] mask = null;
+        int maskTile = -1;
+        for (int i = 0; i < count; i++) {
+            int target = runCoverage[i];
+            //plné pokrytí neprůhlednou barvou pixel přepíše, ať už do něj tah přidal cokoli
+            if (target <= 0 || target == 255) continue;
+            int x = x0 + i;
+            if (maskTile != tileRow + (x >> TILE_SHIFT)) {
+                maskTile = tileRow + (x >> TILE_SHIFT);
+                mask = tile(maskTile);
+            }
+            int offset = rowOffset + (x & (TILE_SIZE - 1));
+            int applied = mask[offset] & 0xFF;
+            if (applied >= target) {
+                runCoverage[i] = 0;
+                continue;
+            }
+            mask[offset] = (byte) target;
+            runCoverage[i] = increment(applied, target);
+        }
+        surface.blendSpan(x0, y, argb | 0xFF000000, runCoverage, 0, count);
+    }
+
+    private int[] runCoverage(int count) {
+        if (runCoverage.length < count) runCoverage = new int[Math.max(count, runCoverage.length * 2)];
+        return runCoverage;
+    }
+
+    /*Alfa, kterou je potřeba přimíchat přes pixel s už přidanou alfou applied, aby výsledek
+    * odpovídal alfě target přes původní pixel: (1 - x)(1 - applied) = 1 - target*/
+    private static int increment(int applied, int target) {
+        if (applied == 0) return target;
+        return ((target - applied) * 255 + (255 - applied) / 2) / (255 - applied);
+    }
+
+    private byte[] tile(int index) {
+        byte[] mask = coverage[index];
+        if (mask == null) {
+            mask = coverage[index] = new byte[TILE_SIZE * TILE_SIZE];
+        }
+        if (!touched[index]) {
+            touched[index] = true;
+            touchedTiles.add(index);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,233 @@
+package rasterizer;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/*
+* Úložiště plátna po dlaždicích TILE_SIZE x TILE_SIZE s copy-on-write snímky
+*
+* Kreslí se dál do obyčejného rastru (pole int[], které potřebují výplně a obrazovka),
+* TiledCanvas si vedle něj drží neměnné dlaždice. Raster hlásí, do kterých dlaždic se zapisovalo,
+* a při snímku se znovu uloží jen ty - ostatní dlaždice se mezi snímky jen sdílejí.
+* Snímek (Snapshot) je tak jen kopie pole ukazatelů na dlaždice, O(počet dlaždic),
+* a dlaždice se kopíruje až tehdy, když se do ní po snímku znovu nakreslí.
+*
+* Jednobarevná dlaždice se ukládá jen jako jedna hodnota, takže velké, skoro prázdné
+* obrázky zabírají v úložišti zlomek místa.
+* Obnovení snímku (restore) přepíše v rastru jen dlaždice, které se od snímku změnily
+* - pozná se to porovnáním ukazatelů, bez procházení pixelů*/
+public class TiledCanvas {
+    public static final int TILE_SHIFT = 6;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    private final Raster raster;
+    private final int tilesX;
+    private final int tilesY;
+    //aktuální dlaždice - odpovídají rastru po posledním sync()
+    private final Tile[] tiles;
+
+    public TiledCanvas(Raster raster) {
+        if (raster.getStride() != raster.getWidth() || raster.getOriginX() != 0 || raster.getOriginY() != 0) {
+            throw new IllegalArgumentException("TiledCanvas potřebuje rastr přes celé plátno");
+        }
+        this.raster = raster;
+        this.tilesX = (raster.getWidth() + TILE_SIZE - 1) >> TILE_SHIFT;
+        this.tilesY = (raster.getHeight() + TILE_SIZE - 1) >> TILE_SHIFT;
+        this.tiles = new Tile[tilesX * tilesY];
+        raster.trackDirtyTiles(TILE_SHIFT);
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = readTile(i, null);
+        }
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    //snímek aktuálního stavu plátna - jen kopie pole dlaždic
+    public Snapshot snapshot() {
+        sync();
+        return new Snapshot(this, tiles.clone());
+    }
+
+    /*Vrátí plátno do stavu snímku
+    * do rastru se zapíšou jen dlaždice, které se od snímku změnily (a přidají se do damage)*/
+    public void restore(Snapshot snapshot) {
+        checkOwner(snapshot);
+        sync();
+        for (int i = 0; i < tiles.length; i++) {
+            Tile tile = snapshot.tiles[i];
+            if (tiles[i] != tile) {
+                writeTile(i, tile);
+                tiles[i] = tile;
+            }
+        }
+        //zapsané dlaždice už odpovídají snímku, znovu je ukládat není potřeba
+        raster.drainDirtyTiles(i -> { });
+    }
+
+    /*Zapíše do rastru dlaždice tiles na pozice indexes (pro CanvasHistory)
+    * stejně jako restore se zapsané dlaždice znovu neukládají*/
+    void putTiles(int[] indexes, Tile[] newTiles) {
+        sync();
+        for (int i = 0; i < indexes.length; i++) {
+            int index = indexes[i];
+            if (tiles[index] != newTiles[i]) {
+                writeTile(index, newTiles[i]);
+                tiles[index] = newTiles[i];
+            }
+        }
+        raster.drainDirtyTiles(i -> { });
+    }
+
+    /*Vrátí ze snímku jen dlaždice, které zasahují do obdélníku x, y, w, h
+    * vrací obdélník obnovených dlaždic (zarovnaný na dlaždice, oříznutý na plátno), null když je mimo*/
+    public Rectangle restoreRegion(Snapshot snapshot, int x, int y, int w, int h) {
+        checkOwner(snapshot);
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, raster.getWidth());
+        int y1 = Math.min(y + h, raster.getHeight());
+        if (x0 >= x1 || y0 >= y1) return null;
+        int tx0 = x0 >> TILE_SHIFT;
+        int ty0 = y0 >> TILE_SHIFT;
+        int tx1 = (x1 - 1) >> TILE_SHIFT;
+        int ty1 = (y1 - 1) >> TILE_SHIFT;
+        sync();
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int i = ty * tilesX + tx;
+                if (tiles[i] != snapshot.tiles[i]) {
+                    writeTile(i, snapshot.tiles[i]);
+                    tiles[i] = snapshot.tiles[i];
+                }
+            }
+        }
+        raster.drainDirtyTiles(i -> { });
+        int left = tx0 << TILE_SHIFT;
+        int top = ty0 << TILE_SHIFT;
+        return new Rectangle(left, top, Math.min((tx1 + 1) << TILE_SHIFT, raster.getWidth()) - left,
+                Math.min((ty1 + 1) << TILE_SHIFT, raster.getHeight()) - top);
+    }
+
+    //počet pixelů dlaždice - krajní dlaždice můžou být menší
+    int tileLength(int index) {
+        int x0 = (index % tilesX) << TILE_SHIFT;
+        int y0 = (index / tilesX) << TILE_SHIFT;
+        return Math.min(TILE_SIZE, raster.getWidth() - x0) * Math.min(TILE_SIZE, raster.getHeight() - y0);
+    }
+
+    //kolik bajtů zabírají pixely aktuálních dlaždic (jednobarevné dlaždice se nepočítají)
+    public long getStoredBytes() {
+        sync();
+        long bytes = 0;
+        for (Tile tile : tiles) {
+            if (tile.pixels != null) bytes += 4L * tile.pixels.length;
+        }
+        return bytes;
+    }
+
+    //uloží dlaždice, do kterých se od minula kreslilo
+    private void sync() {
+        raster.drainDirtyTiles(i -> tiles[i] = readTile(i, tiles[i]));
+    }
+
+    void checkOwner(Snapshot snapshot) {
+        if (snapshot.owner != this) {
+            throw new IllegalArgumentException("Snímek patří k jinému plátnu");
+        }
+    }
+
+    /*Načte dlaždici z rastru
+    * pokud se obsah nezměnil proti previous, vrátí previous - snímky pak dál sdílí stejnou dlaždici*/
+    private Tile readTile(int index, Tile previous) {
+        int x0 = (index % tilesX) << TILE_SHIFT;
+        int y0 = (index / tilesX) << TILE_SHIFT;
+        int w = Math.min(TILE_SIZE, raster.getWidth() - x0);
+        int h = Math.min(TILE_SIZE, raster.getHeight() - y0);
+        int width = raster.getWidth();
+        int[] data = raster.getData();
+
+        int first = data[y0 * width + x0];
+        boolean uniform = true;
+        for (int y = 0; y < h && uniform; y++) {
+            int offset = (y0 + y) * width + x0;
+            for (int x = 0; x < w; x++) {
+                if (data[offset + x] != first) {
+                    uniform = false;
+                    break;
+                }
+            }
+        }
+        if (uniform) {
+            if (previous != null && previous.pixels == null && previous.value == first) return previous;
+            return new Tile(null, first);
+        }
+
+        int[] pixels = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(data, (y0 + y) * width + x0, pixels, y * w, w);
+        }
+        if (previous != null && previous.pixels != null && Arrays.equals(previous.pixels, pixels)) return previous;
+        return new Tile(pixels, 0);
+    }
+
+    private void writeTile(int index, Tile tile) {
+        int x0 = (index % tilesX) << TILE_SHIFT;
+        int y0 = (index / tilesX) << TILE_SHIFT;
+        int w = Math.min(TILE_SIZE, raster.getWidth() - x0);
+        int h = Math.min(TILE_SIZE, raster.getHeight() - y0);
+        int width = raster.getWidth();
+        int[] data = raster.getData();
+        for (int y = 0; y < h; y++) {
+            int offset = (y0 + y) * width + x0;
+            if (tile.pixels == null) {
+                Arrays.fill(data, offset, offset + w, tile.value);
+            } else {
+                System.arraycopy(tile.pixels, y * w, data, offset, w);
+            }
+        }
+        raster.addDamage(x0, y0, x0 + w, y0 + h);
+    }
+
+    //neměnná dlaždice - buď pole pixelů (hodnoty jako v poli rastru), nebo jedna hodnota
+    static final class Tile {
+        final int[] pixels;
+        final int value;
+
+        Tile(int[] pixels, int value) {
+            this.pixels = pixels;
+            this.value = value;
+        }
+    }
+
+    /*Neměnný stav plátna v jednom okamžiku
+    * sdílí dlaždice s plátnem i s ostatními snímky, takže stojí jen pole ukazatelů*/
+    public static final class Snapshot {
+        private final TiledCanvas owner;
+        final Tile[] tiles;
+
+        private Snapshot(TiledCanvas owner, Tile[] tiles) {
+            this.owner = owner;
+            this.tiles = tiles;
+        }
+
+        //ARGB barva pixelu ve snímku (stejně jako Raster.getPixel), mimo plátno 0
+        public int getPixel(int x, int y) {
+            if (x < 0 || y < 0 || x >= owner.raster.getWidth() || y >= owner.raster.getHeight()) return 0;
+            Tile tile = tiles[(y >> TILE_SHIFT) * owner.tilesX + (x >> TILE_SHIFT)];
+            int v;
+            if (tile.pixels == null) {
+                v = tile.value;
+            } else {
+                int w = Math.min(TILE_SIZE, owner.raster.getWidth() - (x & ~(TILE_SIZE - 1)));
+                v = tile.pixels[(y & (TILE_SIZE - 1)) * w + (x & (TILE_SIZE - 1))];
+            }
+            return owner.raster.getPixelMask() == 0xFFFFFFFF ? v : v | 0xFF000000;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package rasterizer;
+
+import model.ColorDistance;
+
+/*
+* Test barevné vzdálenosti pro jeden řádek pixelů
+* Pro každý pixel řádku zapíše do out, jestli je barva v toleranci k cílové barvě
+* Alfa kanál se neporovnává
+*
+* Pokud je při spuštění dostupný modul jdk.incubator.vector (--add-modules jdk.incubator.vector),
+* použije se vektorová verze, jinak obyčejná skalární smyčka*/
+interface ToleranceKernel {
+
+    void matchRow(int[] data, int offset, int length, int target, int tolerance, ColorDistance distance,
+                  boolean[] out, int outOffset);
+
+    static ToleranceKernel create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (ToleranceKernel) Class.forName("rasterizer.VectorToleranceKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                //vektorová verze nejde načíst, zůstane se u skalární
+            }
+        }
+        return new ScalarToleranceKernel();
+    }
+}
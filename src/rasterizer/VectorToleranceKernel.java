@@ -0,0 +1,48 @@
+package rasterizer;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import model.ColorDistance;
+
+/*
+* Vektorová verze testu tolerance (Vector API, jdk.incubator.vector)
+* Najednou se zpracuje tolik pixelů, kolik se jich vejde do jednoho SIMD registru,
+* kanály se z pixelů vybírají posunem a maskou pro všechny pixely zároveň
+* Zbytek řádku, který se do celého vektoru nevejde, dopočítá skalární verze
+*
+* Třída se načítá jen přes ToleranceKernel.create(), když je modul dostupný*/
+final class VectorToleranceKernel implements ToleranceKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void matchRow(int[] data, int offset, int length, int target, int tolerance, ColorDistance distance,
+                         boolean[] out, int outOffset) {
+        int tr = (target >> 16) & 0xFF;
+        int tg = (target >> 8) & 0xFF;
+        int tb = target & 0xFF;
+        boolean euclidean = distance == ColorDistance.EUCLIDEAN;
+        int limit = euclidean ? tolerance * tolerance : tolerance;
+
+        int i = 0;
+        int upper = SPECIES.loopBound(length);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector v = IntVector.fromArray(SPECIES, data, offset + i);
+            IntVector dr = v.lanewise(VectorOperators.LSHR, 16).and(0xFF).sub(tr).abs();
+            IntVector dg = v.lanewise(VectorOperators.LSHR, 8).and(0xFF).sub(tg).abs();
+            IntVector db = v.and(0xFF).sub(tb).abs();
+
+            VectorMask<Integer> inside;
+            if (euclidean) {
+                inside = dr.mul(dr).add(dg.mul(dg)).add(db.mul(db)).compare(VectorOperators.LE, limit);
+            } else {
+                inside = dr.max(dg).max(db).compare(VectorOperators.LE, limit);
+            }
+            inside.intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            out[outOffset + i] = ScalarToleranceKernel.matches(data[offset + i], target, tolerance, distance);
+        }
+    }
+}
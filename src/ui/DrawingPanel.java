@@ -4,17 +4,45 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import model.BrushTip;
+import model.ColorDistance;
+import model.FillRule;
 import model.LineStyle;
 import model.Point;
+import model.Resampling;
+import model.Scene;
+import model.ShapeRecord;
 import model.ToolType;
+import metrics.FrameEvent;
+import metrics.Histogram;
+import metrics.InputLatencyEvent;
+import metrics.Metrics;
+import metrics.PaintEvent;
+import metrics.RasterizeEvent;
 import rasterizer.*;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class DrawingPanel extends JPanel {
     private BufferedImage canvas;
     private BufferedImage temp;
-    private BufferedImage backupCanvas;
+    //přímý přístup k pixelům jednotlivých pláten
+    private final Raster canvasRaster;
+    private final Raster tempRaster;
+    //dlaždicové úložiště plátna - levné snímky pro historii a překreslení scény
+    private final TiledCanvas canvasTiles;
+    //pixely pod posledním vložením výběru - null, dokud se výběr nevložil
+    private RegionBuffer selectionUnder;
+    //historie kroků zpět / znovu - pamatuje si jen změněné dlaždice
+    private static final long HISTORY_BUDGET = 64L << 20;
+    private final CanvasHistory history;
+    /*scéna upravitelných tvarů - plátno je vždy sceneBase a přes něj nakreslené tvary scény
+    * nástroje, které pracují s pixely (výplň, štětec, výběr...), scénu zapečou do sceneBase*/
+    private final Scene scene;
+    private TiledCanvas.Snapshot sceneBase;
+    private final SceneRasterizer sceneRasterizer;
     private Point start;
     private Point currentMouse;
     private final LineRasterizer lineRasterizer;
@@ -23,6 +51,8 @@ public class DrawingPanel extends JPanel {
     private final PolygonRasterizer polygonRasterizer;
     private final FillRasterizer fillRasterizer;
     private final SelectionRasterizer selectionRasterizer;
+    private final SelectionTransformer selectionTransformer;
+    private final RegionLabelCache regionCache;
     private final BrushRasterizer brushRasterizer = new BrushRasterizer();
     private final EraserRasterizer eraserRasterizer = new EraserRasterizer();
 
@@ -30,20 +60,77 @@ public class DrawingPanel extends JPanel {
     private Color currentColor = Color.WHITE;
     private int currentThickness = 1;
     private LineStyle currentStyle = LineStyle.SOLID;
+    private boolean circleFilled = false;
+    private boolean antialiased = false;
+    //pravidlo plného polygonu, null kreslí jen obrys
+    private FillRule polygonFill = null;
+    //převzorkování výběru po zvětšení / otočení (během tažení je náhled vždy nejbližší pixel)
+    private Resampling resampling = Resampling.BILINEAR;
+    //hrot a krytí (0 - 255) štětce a gumy
+    private BrushTip currentTip = BrushTip.ROUND;
+    private int currentOpacity = 255;
     private ToolType currentTool = ToolType.LINE;
     private Point lastMousePoint = null;
-    private ToolType lastShapeType = null;
-    private Point lastShapeStart = null;
-    private Point lastShapeEnd = null;
+    //tvar ze scény, který má úchyty pro úpravu (naposledy nakreslený nebo vybraný Ctrl+klik)
+    private ShapeRecord activeShape = null;
+    /*pixely, které activeShape při kreslení přepsal - zvednutí tvaru je pak vrátí bez překreslování scény
+    * null, když záloha není (tvar vybraný Ctrl+klikem nebo překreslený se scénou)*/
+    private SaveUnderBuffer activeSaveUnder = null;
     private int selectedHandle = -1;
-    private boolean isEditingLastShape = false;
+    private boolean isEditingShape = false;
+    private boolean isPickingShape = false;
     private boolean shift = false;
+    private boolean fillEightConnected = false;
+    private int fillTolerance = 0;
+    private ColorDistance fillDistance = ColorDistance.PER_CHANNEL;
+    //oblast, která je právě zvýrazněná jako náhled výplně pod kurzorem
+    private RegionLabelCache.Region hoverRegion;
+    //část okna, kterou je potřeba překreslit, a kde byly náhledy při minulém překreslení
+    private Rectangle pendingRepaint;
+    private Rectangle lastOverlayBounds;
+    //vzorky myši čekající na další snímek a plánovač snímků, který je zpracuje
+    private final PointerSamples pointerSamples = new PointerSamples();
+    private final FrameScheduler frameScheduler;
+    /*měření - příchod nejstarší události myši, jejíž výsledek ještě není na obrazovce (0 když žádná),
+    * čas minulého snímku a volitelný HUD s čísly v rohu plátna (F3)*/
+    private long pendingInputNanos;
+    private long lastFrameNanos;
+    private boolean hudVisible = false;
+    private static final Rectangle HUD_BOUNDS = new Rectangle(8, 8, 340, 102);
+    //operace pro RasterizeEvent - histogramy se najdou jednou tady, ne při každém tahu myši
+    private static final RasterizeEvent.Operation[] PRESS = perTool("press");
+    private static final RasterizeEvent.Operation[] RELEASE = perTool("release");
+    private static final RasterizeEvent.Operation[] DRAG = perTool("drag");
+    private static final RasterizeEvent.Operation FILL_TOLERANCE = RasterizeEvent.operation("FILL", "floodFillTolerance");
+    private static final RasterizeEvent.Operation FILL_REGION_CACHE = RasterizeEvent.operation("FILL", "regionCache");
+    private static final RasterizeEvent.Operation FILL_PARALLEL = RasterizeEvent.operation("FILL", "floodFillParallel");
+    private static final RasterizeEvent.Operation FILL_SERIAL = RasterizeEvent.operation("FILL", "floodFill");
+    private static final RasterizeEvent.Operation SELECTION_PREVIEW = RasterizeEvent.operation("SELECTION", "previewTransform");
+    private static final RasterizeEvent.Operation SELECTION_TRANSFORM = RasterizeEvent.operation("SELECTION", "transform");
+    private static final RasterizeEvent.Operation HISTORY_COMMIT = RasterizeEvent.operation("history", "commit");
+    private static final RasterizeEvent.Operation CLEAR_TEMP = RasterizeEvent.operation("panel", "clearTemp");
+    /*přiblížení a posun pohledu - myš se převádí do souřadnic plátna, damage plátna na obdélník okna
+    * oddálený pohled kreslí hotovou zmenšeninu plátna z mipmap, přepočítávají se jen dlaždice pod damage*/
+    private final Viewport viewport;
+    private final MipmapPyramid mipmaps;
+    //kde v okně byla myš při minulém tažení prostředním tlačítkem, null když se neposouvá
+    private java.awt.Point panMouse;
 
 
 
     private Point selectionStart, selectionEnd;
-    private BufferedImage selectedImage;
-    BufferedImage overlay;
+    //vybraná oblast plátna (ve formátu plátna)
+    private RegionBuffer selectedImage;
+    /*vybrané pixely zvětšené na obdélník výběru a otočené o selectionAngle
+    * bounds jsou vůči levému hornímu rohu výběru, null bez transformace*/
+    private RegionBuffer transformedImage;
+    //otočení výběru kolem jeho středu v radiánech
+    private double selectionAngle;
+    //úhel výběru a úhel myši kolem středu při stisku úchytu otočení
+    private double rotateStartAngle, rotateStartMouse;
+    //znovupoužívané vrstvy pro úchyty posledního tvaru a pro náhledy (výběr, polygon, tvar)
+    private final OverlayLayer handleLayer;
+    private final OverlayLayer previewLayer;
     private boolean isDraggingSelection = false;
     private int selectionHandleIndex = -1;
     private Point dragOffset;
@@ -56,14 +143,27 @@ public class DrawingPanel extends JPanel {
         this.setPreferredSize(new Dimension(width, height));
         canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         temp = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        backupCanvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        canvasRaster = new Raster(canvas);
+        tempRaster = new Raster(temp);
+        //temp se maže jen tam, kam se kreslilo - po dlaždicích, ne přes celé plátno
+        tempRaster.trackDirtyTiles(4);
+        canvasTiles = new TiledCanvas(canvasRaster);
+        viewport = new Viewport(width, height);
+        mipmaps = new MipmapPyramid(canvasRaster);
+        handleLayer = new OverlayLayer(width, height);
+        previewLayer = new OverlayLayer(width, height);
 
         lineRasterizer = new LineRasterizer();
         rectangleRasterizer = new RectangleRasterizer(lineRasterizer);
         circleRasterizer = new CircleRasterizer();
         polygonRasterizer = new PolygonRasterizer(lineRasterizer);
         fillRasterizer = new FillRasterizer();
+        regionCache = new RegionLabelCache(canvasRaster);
         selectionRasterizer = new SelectionRasterizer();
+        selectionTransformer = new SelectionTransformer();
+        sceneRasterizer = new SceneRasterizer(lineRasterizer, rectangleRasterizer, circleRasterizer);
+        scene = new Scene(width, height);
+        frameScheduler = new FrameScheduler(FrameScheduler.defaultRate(), this::processPointerSamples);
 
         getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_C, 0), "clearCanvas");
         getActionMap().put("clearCanvas", new AbstractAction() {
@@ -72,8 +172,59 @@ public class DrawingPanel extends JPanel {
                 clearWholeCanvas();
             }
         });
+        //krok zpět Ctrl+Z, znovu Ctrl+Y nebo Ctrl+Shift+Z
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "redo");
+        getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        });
+        getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        });
+        //F3 zapne a vypne HUD s měřením
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "toggleHud");
+        getActionMap().put("toggleHud", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setHudVisible(!hudVisible);
+            }
+        });
+        //Ctrl+plus / Ctrl+minus přiblíží a oddálí kolem středu okna, Ctrl+0 vrátí pohled 1:1
+        for (int key : new int[]{KeyEvent.VK_PLUS, KeyEvent.VK_EQUALS, KeyEvent.VK_ADD}) {
+            getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(key, InputEvent.CTRL_DOWN_MASK), "zoomIn");
+        }
+        for (int key : new int[]{KeyEvent.VK_MINUS, KeyEvent.VK_SUBTRACT}) {
+            getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(key, InputEvent.CTRL_DOWN_MASK), "zoomOut");
+        }
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_0, InputEvent.CTRL_DOWN_MASK), "zoomReset");
+        getActionMap().put("zoomIn", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                zoomAt(getWidth() / 2, getHeight() / 2, 1);
+            }
+        });
+        getActionMap().put("zoomOut", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                zoomAt(getWidth() / 2, getHeight() / 2, -1);
+            }
+        });
+        getActionMap().put("zoomReset", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                resetView();
+            }
+        });
 
         clearCanvas();
+        history = new CanvasHistory(canvasTiles, HISTORY_BUDGET);
 
         MouseAdapter mouseHandler = new MouseAdapter() {
 
@@ -82,20 +233,23 @@ public class DrawingPanel extends JPanel {
              * a i aktuální pozici (currentMouse)*/
             @Override
             public void mousePressed(MouseEvent e) {
-                Point p = new Point(e.getX(), e.getY());
+                //prostřední tlačítko posouvá pohled, nástroje ho nevidí
+                if (SwingUtilities.isMiddleMouseButton(e)) {
+                    panMouse = e.getPoint();
+                    return;
+                }
+                long arrival = System.nanoTime();
+                //tažení před stiskem se musí zpracovat dřív než stisk
+                frameScheduler.flush();
+                inputArrived(arrival);
+                Point p = viewport.toCanvas(e.getX(), e.getY());
                 currentMouse = p;
                 start = p;
 
-                /*Pro nástroje štětce a a gumy zaznamená poslední pozici pro plynulé kreslení
-                * používá se v drawInterpolated... metodách */
-                if (currentTool == ToolType.BRUSH || currentTool == ToolType.ERASER) {
-                    lastMousePoint = p;
-                }
-
-                /*kontroluje editaci posledního tvaru*/
-                if (lastShapeType != null) {
-                    Point handle1 = lastShapeStart;
-                    Point handle2 = lastShapeEnd;
+                /*kontroluje editaci vybraného tvaru*/
+                if (activeShape != null) {
+                    Point handle1 = activeShape.getStart();
+                    Point handle2 = activeShape.getEnd();
                     Point center = new Point((handle1.x + handle2.x) / 2, (handle1.y + handle2.y) / 2);
 
 
@@ -104,35 +258,46 @@ public class DrawingPanel extends JPanel {
                     //krajní body zvětšují, prostřední hýbe
                     if (isOnHandle(p, handle1)) {
                         selectedHandle = 0;
-                        isEditingLastShape = true;
-                        eraseLastShapeFromCanvas();
-                        clearTemp();
-                        return;
                     } else if (isOnHandle(p, handle2)) {
                         selectedHandle = 1;
-                        isEditingLastShape = true;
-                        eraseLastShapeFromCanvas();
-                        clearTemp();
-                        return;
                     } else if (isOnHandle(p, center)) {
                         selectedHandle = 2;
                         dragOffset = new Point(p.x - center.x, p.y - center.y);
-                        isEditingLastShape = true;
-                        eraseLastShapeFromCanvas();
-                        clearTemp();
+                    }
+                    if (selectedHandle != -1) {
+                        liftActiveShape();
+                        return;
+                    }
+                }
+
+                /*Ctrl+klik nástrojem tvaru vybere k úpravě tvar, na jehož obrys se kliklo (ten nejvýš)*/
+                if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0 && isShapeTool(currentTool)) {
+                    ShapeRecord picked = scene.shapeAt(p.x, p.y, 4);
+                    if (picked != null) {
+                        activeShape = picked;
+                        activeSaveUnder = null;
+                        isPickingShape = true;
+                        repaintDamage(true);
                         return;
                     }
                 }
 
                 //switch, určuje co se děje podle aktuálního nástroje
+                RasterizeEvent event = RasterizeEvent.start(PRESS[currentTool.ordinal()]);
+                long pixels = pixelsWritten();
                 switch (currentTool) {
 
                     /*pokud polygon není prázdný
                     * kliknutí blízko polygon uzavře
                     * jinak přidá nový bod do polygonu*/
                     case POLYGON -> {if (!polygonRasterizer.isEmpty() && polygonRasterizer.isCloseToFirst(p, 10)) {
-                        polygonRasterizer.drawPolygon(canvas, currentColor, currentThickness, currentStyle, true);
+                        if (polygonFill != null) {
+                            polygonRasterizer.fillPolygon(canvasRaster, currentColor, polygonFill);
+                        } else {
+                            polygonRasterizer.drawPolygon(canvasRaster, currentColor, currentThickness, currentStyle, true);
+                        }
                         polygonRasterizer.clear();
+                        if (history.commit()) bakeScene();
                     } else {
                         polygonRasterizer.addPoint(p);
                     }}
@@ -140,14 +305,18 @@ public class DrawingPanel extends JPanel {
                     * nebo pro změnu velikosti
                     *
                     * Pokud nebyl existující výběr nebo kliknutí nebylo uvnitř něj,
-                    * uloží aktuální plátno do zálohy backupCurrentCanvas() a
-                    * nastaví počáteční bod výběru selectionStart.*/
+                    * zahodí zálohu pod minulým vložením výběru (nový výběr ho už nevrací)
+                    * a nastaví počáteční bod výběru selectionStart.*/
                     case SELECTION ->
                     {
                         Rectangle rect = selectionStart != null && selectionEnd != null
                                     ? selectionRasterizer.getSelectionRect(selectionStart, selectionEnd) : null;
                             if (rect != null) {
                                 selectionHandleIndex = selectionRasterizer.getHandleIndex(p, rect);
+                                if (selectionHandleIndex == SelectionRasterizer.ROTATE_HANDLE) {
+                                    rotateStartAngle = selectionAngle;
+                                    rotateStartMouse = selectionRasterizer.getAngle(rect, p);
+                                }
                                 if (selectionHandleIndex != -1) return;
 
                                 if (rect.contains(new java.awt.Point(p.x, p.y))) {
@@ -157,35 +326,53 @@ public class DrawingPanel extends JPanel {
                                 }
                             }
 
-                            backupCurrentCanvas();
+                            selectionUnder = null;
                             selectionStart = p;
                             selectionEnd = p;
                             selectedImage = null;
+                            transformedImage = null;
+                            selectionAngle = 0;
                     }
-                    /*Štětec i Guma okamžitě kreslí bod na stisknuté pozici*/
+                    /*Štětec i Guma začnou tah a okamžitě kreslí bod na stisknuté pozici
+                    * tah trvá do puštění myši, aby se poloprůhledný tah přes sebe neztmavil
+                    * lastMousePoint je poslední bod tahu, null když tah neběží*/
                     case BRUSH -> {
-                        brushRasterizer.drawPoint(canvas, start, currentThickness, currentColor);
-                        repaint();
+                        brushRasterizer.beginStroke(canvasRaster, currentThickness, currentTip,
+                                new Color(currentColor.getRed(), currentColor.getGreen(), currentColor.getBlue(), currentOpacity));
+                        brushRasterizer.strokeTo(start);
+                        lastMousePoint = p;
                     }
                     case ERASER -> {
-                        eraserRasterizer.erasePoint(canvas, start, currentThickness);
-                        repaint();
+                        eraserRasterizer.beginStroke(canvasRaster, currentThickness, currentTip, currentOpacity);
+                        eraserRasterizer.eraseTo(start);
+                        lastMousePoint = p;
                     }
                 }
-                repaint();
-                //volá repaint, ta automaticky volá i PaintComponent
+                event.finish(pixelsWritten() - pixels);
+                repaintDamage(true);
+                //překreslí změněnou část, repaint automaticky volá i PaintComponent
                 //je to základní metoda image observeru
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
-                Point end = new Point(e.getX(), e.getY());
+                if (SwingUtilities.isMiddleMouseButton(e)) {
+                    panMouse = null;
+                    return;
+                }
+                long arrival = System.nanoTime();
+                //poslední vzorky tahu před puštěním myši
+                frameScheduler.flush();
+                inputArrived(arrival);
+                Point end = viewport.toCanvas(e.getX(), e.getY());
                 //zaznamená koncový bod, kde se pustila myš
                 shift = (e.getModifiersEx() & MouseEvent.SHIFT_DOWN_MASK) != 0;
                 //kontroluje zmáčknutí shiftu
 
-                //pro štětec a gumu resetuje lastMousePoint.
-                if (currentTool == ToolType.BRUSH || currentTool == ToolType.ERASER) {
+                //pro štětec a gumu ukončí tah a resetuje lastMousePoint.
+                if (lastMousePoint != null) {
+                    if (currentTool == ToolType.BRUSH) brushRasterizer.endStroke();
+                    if (currentTool == ToolType.ERASER) eraserRasterizer.endStroke();
                     lastMousePoint = null;
                 }
 
@@ -194,33 +381,49 @@ public class DrawingPanel extends JPanel {
 
                     applySelection();
                     isDraggingSelection = false;
-                    repaint();
+                    finishStep(false);
+                    return;
+                }
+
+                //výběr tvaru Ctrl+klikem nic nekreslí
+                if (isPickingShape) {
+                    isPickingShape = false;
                     return;
                 }
 
                 //Pokud se upravoval tvar, vymažne dočasné plátno
-                //a nakreslí ho napevno na spodní plátno
-                if (isEditingLastShape) {
+                //a vrátí ho do scény - překreslí se jen dlaždice pod jeho novou polohou
+                if (isEditingShape) {
                     clearTemp();
-                    drawLastShapeToCanvas();
-                    isEditingLastShape = false;
+                    scene.reinsert(activeShape);
+                    //když tvar nic nepřekrývá, nakreslí se rovnou navrch (se zálohou), jinak se oblast překreslí celá scéna
+                    if (scene.isTopmost(activeShape)) {
+                        drawActiveShape();
+                    } else {
+                        sceneRasterizer.redraw(canvasRaster, canvasTiles, sceneBase, scene, activeShape.getBounds());
+                    }
+                    isEditingShape = false;
                     selectedHandle = -1;
-                    repaint();
+                    finishStep(true);
                     return;
                 }
 
-                /*Pokud se měnila velikost výběru,
-                * přepočítá ho a resetuje index úchytu pro logiku v selectionRasterizeru*/
+                /*Pokud se měnila velikost nebo otočení výběru,
+                * přepočítá ho a resetuje index úchytu pro logiku v selectionRasterizeru
+                * vybrané pixely se jednou kvalitně převzorkují, a pokud už výběr na plátně leží, vloží se znovu
+                * bez vybraných pixelů se jen vybere nová oblast*/
                 if (selectionHandleIndex != -1) {
 
-                    Rectangle rect = selectionRasterizer.resizeSelection(selectionStart, selectionEnd, selectionHandleIndex, end);
-                    selectionStart = new Point(rect.x, rect.y);
-                    selectionEnd = new Point(rect.x + rect.width, rect.y + rect.height);
+                    transformSelectionTo(end);
                     selectionHandleIndex = -1;
 
-
-                    updateSelectedImage();
-                    repaint();
+                    if (selectedImage == null) {
+                        updateSelectedImage();
+                    } else {
+                        updateTransformedImage(false);
+                        if (selectionUnder != null) applySelection();
+                    }
+                    finishStep(false);
                     return;
                 }
 
@@ -228,60 +431,61 @@ public class DrawingPanel extends JPanel {
                 /*
                 * Pro  čáru, obdélník a kruh dokončí kreslení tvaru
                 * na hlavní plátno pomocí příslušného rasterizeru.
-                * Zaznamená typ, počáteční a koncový bod posledního
-                * nakresleného tvaru pro pozdější editaci.
-                * Pokud probíhala editace, kreslí se na dočasné plátno.*/
+                * Tvar se i s barvou, tloušťkou a stylem přidá navrch scény
+                * a dostane úchyty pro pozdější editaci.*/
                 switch (currentTool) {
-                    case LINE -> {
-                        end = shift ? lineRasterizer.snapTo45Degrees(start, end) : end;
-                        lineRasterizer.drawLine(canvas, start, end, currentColor, currentThickness, currentStyle);
-                            lastShapeType = currentTool;
-                            lastShapeStart = start;
-                            lastShapeEnd = end;
-                        if (isEditingLastShape) {
-                            clearTemp();
-                            drawLastShapeToTemp();
-                            repaint();
-                            return;
-                        }
-
-                    }
-                    case RECTANGLE -> {
-                        rectangleRasterizer.drawRectangle(canvas, start, end, currentColor, currentThickness, currentStyle, shift);
-                        lastShapeType = currentTool;
-                        lastShapeStart = start;
-                        lastShapeEnd = end;
-                        if (isEditingLastShape) {
-                            clearTemp();
-                            drawLastShapeToTemp();
-                            repaint();
-                            return;
-                        }
-
-                    }
-                    case CIRCLE -> {
-                        circleRasterizer.drawCircle(canvas, start, end, currentColor, currentThickness, currentStyle);
-                        lastShapeType = currentTool;
-                        lastShapeStart = start;
-                        lastShapeEnd = end;
-                        if (isEditingLastShape) {
-                            clearTemp();
-                            drawLastShapeToTemp();
-                            repaint();
-                            return;
+                    case LINE, RECTANGLE, CIRCLE -> {
+                        if (currentTool == ToolType.LINE && shift) {
+                            end = lineRasterizer.snapTo45Degrees(start, end);
                         }
-
+                        RasterizeEvent event = RasterizeEvent.start(RELEASE[currentTool.ordinal()]);
+                        long pixels = pixelsWritten();
+                        ShapeRecord shape = new ShapeRecord(currentTool, start, end, currentColor, currentThickness,
+                                currentStyle, currentTool == ToolType.RECTANGLE && shift, currentTool == ToolType.CIRCLE && circleFilled,
+                                antialiased);
+                        scene.add(shape);
+                        activeShape = shape;
+                        drawActiveShape();
+                        event.finish(pixelsWritten() - pixels);
+                        clearTemp();
+                        start = null;
+                        currentMouse = null;
+                        finishStep(true);
+                        return;
                     }
                     //Pokud je aktivní výběr, nastaví koncový bod
                     // výběru selectionEnd a aktualizuje vybranou část rastru
                     case SELECTION -> {
                         selectionEnd = end;
                         updateSelectedImage();
-                        repaint();
+                        finishStep(false);
                         return;
                     }
                     //při uvolnění myši se spustí floodFill algoritmus
-                    case FILL -> fillRasterizer.floodFill(canvas, end, currentColor);
+                    /*přesná výplň přes hrany jde vždy přes mezipaměť oblastí - jen přebarví hotovou oblast
+                    * tolerance a 8-okolí počítají výplň znovu, 8-okolí na velkém plátně paralelně na všech jádrech*/
+                    case FILL -> {
+                        clearFillHover();
+                        flushCanvasDamage();
+                        long pixels = pixelsWritten();
+                        RasterizeEvent event;
+                        if (fillTolerance > 0) {
+                            event = RasterizeEvent.start(FILL_TOLERANCE);
+                            fillRasterizer.floodFillTolerance(canvasRaster, end, currentColor, fillTolerance, fillDistance, fillEightConnected);
+                        } else if (!fillEightConnected) {
+                            event = RasterizeEvent.start(FILL_REGION_CACHE);
+                            regionCache.fillAt(end.x, end.y, currentColor.getRGB());
+                            //damage se vzala před výplní, teď je v ní jen výplň
+                            flushCanvasDamage(true);
+                        } else if ((long) canvas.getWidth() * canvas.getHeight() >= FillRasterizer.PARALLEL_THRESHOLD) {
+                            event = RasterizeEvent.start(FILL_PARALLEL);
+                            fillRasterizer.floodFillParallel(canvasRaster, end, currentColor, fillEightConnected);
+                        } else {
+                            event = RasterizeEvent.start(FILL_SERIAL);
+                            fillRasterizer.floodFill(canvasRaster, end, currentColor, fillEightConnected);
+                        }
+                        event.finish(pixelsWritten() - pixels);
+                    }
 
 
                 }
@@ -291,207 +495,344 @@ public class DrawingPanel extends JPanel {
                 clearTemp();
                 start = null;
                 currentMouse = null;
-                repaint();
+                finishStep(false);
             }
 
+            /*Tažení a pohyb myši se jen zařadí do fronty a zpracují se jednou za snímek
+            * (processPointerSamples), stisk a puštění myši frontu nejdřív dozpracuje
+            * vzorky jsou už v souřadnicích plátna - přiblížení kolečkem mezi vzorky je nerozhodí*/
             @Override
             public void mouseDragged(MouseEvent e) {
-                //zapamatuje si aktuální pozici myši během tažení
-                Point dragged = new Point(e.getX(), e.getY());
-                currentMouse = dragged;
-
-                shift = (e.getModifiersEx() & MouseEvent.SHIFT_DOWN_MASK) != 0;
-
-
-                clearTemp();
-                /* Pokud probíhá editace, aktualizuje start nebo end point
-                 (nebo posouvá celý tvar) podle vybraného bodu chycení
-                  a překreslí tvar na temp plátno.*/
-                if (selectedHandle != -1 && lastShapeStart != null && lastShapeEnd != null) {
-                    switch (selectedHandle) {
-                        case 0 -> lastShapeStart = dragged;
-                        case 1 -> lastShapeEnd = dragged;
-                        case 2 -> {
-                            int dx = dragged.x - dragOffset.x - (lastShapeStart.x + lastShapeEnd.x) / 2;
-                            int dy = dragged.y - dragOffset.y - (lastShapeStart.y + lastShapeEnd.y) / 2;
-                            lastShapeStart = new Point(lastShapeStart.x + dx, lastShapeStart.y + dy);
-                            lastShapeEnd = new Point(lastShapeEnd.x + dx, lastShapeEnd.y + dy);
-                        }
-                    }
-                    clearTemp();
-                    drawLastShapeToTemp();
-                    repaint();
-                    currentMouse = null;
-                    start = null;
+                if (panMouse != null) {
+                    panBy(e.getX() - panMouse.x, e.getY() - panMouse.y);
+                    panMouse = e.getPoint();
                     return;
-
-                }
-
-                //pokud probíhá přetahování, přepočítá novou pozici výběru.
-                if (isDraggingSelection && dragOffset != null) {
-                    Point newTopLeft = new Point(dragged.x - dragOffset.x, dragged.y - dragOffset.y);
-                    selectionStart = newTopLeft;
-                    selectionEnd = new Point(newTopLeft.x + selectedImage.getWidth(), newTopLeft.y + selectedImage.getHeight());
-                    repaint();
-                    return;
-                }
-                //pokud se mění velikost, taky přepočítá pozici výběru
-                if (selectionHandleIndex != -1 && selectionStart != null && selectionEnd != null) {
-                    Rectangle rect = selectionRasterizer.resizeSelection(selectionStart, selectionEnd, selectionHandleIndex, dragged);
-                    selectionStart = new Point(rect.x, rect.y);
-                    selectionEnd = new Point(rect.x + rect.width, rect.y + rect.height);
-                    repaint();
-                    return;
-                }
-
-                /*pro čáru, obdélník a kruh kreslí náhled tvaru na temp plátno.
-                * Pro výběr aktualizuje koncový bod výběru.
-                * Pro štětec a gumu kreslí čáru pro plný tah pomocí Interpolated metody níže*/
-                switch (currentTool) {
-                    case LINE -> {
-                        dragged = shift ? lineRasterizer.snapTo45Degrees(start, dragged) : dragged;
-                        lineRasterizer.drawLine(temp, start, dragged, currentColor, currentThickness, currentStyle);
-                    }
-                    case RECTANGLE -> rectangleRasterizer.drawRectangle(temp, start, dragged, currentColor, currentThickness, currentStyle, shift);
-                    case CIRCLE -> circleRasterizer.drawCircle(temp, start, dragged, currentColor, currentThickness, currentStyle);
-                    case SELECTION -> {
-                        selectionEnd = dragged;
-                        repaint();
-                        return;
-                    }
-                    case BRUSH -> {
-
-                        if (lastMousePoint != null) {
-                            drawInterpolatedBrushLine(lastMousePoint, dragged);
-                        } else {
-                            brushRasterizer.drawPoint(canvas, dragged, currentThickness, currentColor);
-                        }
-                        lastMousePoint = dragged;
-                        start = dragged;
-                    }
-                    case ERASER -> {
-
-                        if (lastMousePoint != null) {
-                            drawInterpolatedEraserLine(lastMousePoint, dragged);
-                        } else {
-                            eraserRasterizer.erasePoint(canvas, dragged, currentThickness);
-                        }
-                        lastMousePoint = dragged;
-                        start = dragged;
-                    }
                 }
-                repaint();
+                Point p = viewport.toCanvas(e.getX(), e.getY());
+                pointerSamples.add(p.x, p.y, e.getModifiersEx(), true, System.nanoTime());
+                frameScheduler.requestFrame();
             }
 
             @Override
             public void mouseMoved(MouseEvent e) {
-                //Zaznamenává aktuální pozici myši
-                currentMouse = new Point(e.getX(), e.getY());
-                //repaint pro aktualizaci zobrazení - třeba náhled polygonu
-                repaint();
+                Point p = viewport.toCanvas(e.getX(), e.getY());
+                pointerSamples.add(p.x, p.y, e.getModifiersEx(), false, System.nanoTime());
+                frameScheduler.requestFrame();
+            }
+
+            //kolečko přiblíží (nahoru) nebo oddálí (dolů) kolem kurzoru
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.getWheelRotation() != 0) zoomAt(e.getX(), e.getY(), -Integer.signum(e.getWheelRotation()));
             }
         };
 
         this.addMouseListener(mouseHandler);
         this.addMouseMotionListener(mouseHandler);
+        this.addMouseWheelListener(mouseHandler);
     }
 
-    //Pomocná metoda pro štětec. Vykreslí normální "netrhanou" čáru mezi dvěma
-    // body interpolací menších bodů, aby byl tah plynulý i při rychlém pohybu myši.
-    private void drawInterpolatedBrushLine(Point from, Point to) {
-        int dx = to.x - from.x;
-        int dy = to.y - from.y;
-        int steps = Math.max(Math.abs(dx), Math.abs(dy));
-
-        for (int i = 0; i <= steps; i++) {
-            int x = from.x + i * dx / steps;
-            int y = from.y + i * dy / steps;
-            brushRasterizer.drawPoint(canvas, new Point(x, y), currentThickness, currentColor);
+    /*Zpracuje vzorky myši nasbírané od minulého snímku - volá ho FrameScheduler nejvýš jednou za snímek
+    * Štětec a guma dostanou všechny vzorky, aby tah věrně kopíroval pohyb myši,
+    * náhledy tvarů, výběr a úpravy tvaru se počítají jen pro poslední polohu
+    * a okno se překreslí jednou za celý snímek*/
+    private void processPointerSamples() {
+        int count = pointerSamples.size();
+        if (count == 0) return;
+        FrameEvent frame = new FrameEvent();
+        frame.begin();
+        long now = System.nanoTime();
+        if (lastFrameNanos != 0) {
+            frame.interval = now - lastFrameNanos;
+            Metrics.record("frame.interval", frame.interval);
         }
+        lastFrameNanos = now;
+        frame.samples = count;
+        Metrics.histogram("frame.samples", "vzorků").record(count);
+        inputArrived(pointerSamples.oldestArrival());
+
+        int last = count - 1;
+        shift = (pointerSamples.modifiers(last) & InputEvent.SHIFT_DOWN_MASK) != 0;
+        Point p = new Point(pointerSamples.x(last), pointerSamples.y(last));
+        if (pointerSamples.isDrag(last)) {
+            RasterizeEvent event = RasterizeEvent.start(DRAG[currentTool.ordinal()]);
+            long pixels = pixelsWritten();
+            for (int i = 0; i < last && lastMousePoint != null; i++) {
+                if (pointerSamples.isDrag(i)) continueStroke(new Point(pointerSamples.x(i), pointerSamples.y(i)));
+            }
+            pointerSamples.clear();
+            dragTo(p);
+            event.finish(pixelsWritten() - pixels);
+            repaintDamage(true);
+        } else {
+            pointerSamples.clear();
+            moveTo(p);
+        }
+        frame.commit();
     }
 
-    /*to stejné jako pro štětec, ale je to guma*/
-    private void drawInterpolatedEraserLine(Point from, Point to) {
-        int dx = to.x - from.x;
-        int dy = to.y - from.y;
-        int steps = Math.max(Math.abs(dx), Math.abs(dy));
-
-        for (int i = 0; i <= steps; i++) {
-            int x = from.x + i * dx / steps;
-            int y = from.y + i * dy / steps;
-            eraserRasterizer.erasePoint(canvas, new Point(x, y), currentThickness);
-        }
+    //zapamatuje si příchod události myši - zpoždění se změří při vykreslení jejího výsledku
+    private void inputArrived(long arrivalNanos) {
+        if (pendingInputNanos == 0) pendingInputNanos = arrivalNanos;
     }
 
-    /*ymaže oblast kde se nacházel posledí nakreslený tvar
-    * lepší způsob jsem na to nenašel*/
-    private void eraseLastShapeFromCanvas() {
-        if (lastShapeType == null || lastShapeStart == null || lastShapeEnd == null) return;
+    //zapsané pixely do canvas a temp plátna od začátku - rozdíl je počet pixelů jedné operace
+    private long pixelsWritten() {
+        return canvasRaster.getPixelsWritten() + tempRaster.getPixelsWritten();
+    }
 
+    //tažení myši na polohu dragged (poslední vzorek snímku)
+    private void dragTo(Point dragged) {
+        //zapamatuje si aktuální pozici myši během tažení
+        currentMouse = dragged;
 
-        Rectangle bounds = getShapeBoundingBox(lastShapeStart, lastShapeEnd, lastShapeType);
+        if (isPickingShape) return;
 
-        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
-            for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
-                if (x >= 0 && x < canvas.getWidth() && y >= 0 && y < canvas.getHeight()) {
-                    canvas.setRGB(x, y, Color.BLACK.getRGB());
+        clearTemp();
+        /* Pokud probíhá editace, aktualizuje start nebo end point
+         (nebo posouvá celý tvar) podle vybraného bodu chycení
+          a překreslí tvar na temp plátno.*/
+        if (selectedHandle != -1 && activeShape != null) {
+            Point shapeStart = activeShape.getStart();
+            Point shapeEnd = activeShape.getEnd();
+            switch (selectedHandle) {
+                case 0 -> shapeStart = dragged;
+                case 1 -> shapeEnd = dragged;
+                case 2 -> {
+                    int dx = dragged.x - dragOffset.x - (shapeStart.x + shapeEnd.x) / 2;
+                    int dy = dragged.y - dragOffset.y - (shapeStart.y + shapeEnd.y) / 2;
+                    shapeStart = new Point(shapeStart.x + dx, shapeStart.y + dy);
+                    shapeEnd = new Point(shapeEnd.x + dx, shapeEnd.y + dy);
                 }
             }
+            scene.move(activeShape, shapeStart, shapeEnd);
+            sceneRasterizer.draw(tempRaster, activeShape);
+            currentMouse = null;
+            start = null;
+            return;
+        }
+
+        //pokud probíhá přetahování, přepočítá novou pozici výběru.
+        if (isDraggingSelection && dragOffset != null) {
+            Point newTopLeft = new Point(dragged.x - dragOffset.x, dragged.y - dragOffset.y);
+            selectionEnd = new Point(newTopLeft.x + selectionEnd.x - selectionStart.x, newTopLeft.y + selectionEnd.y - selectionStart.y);
+            selectionStart = newTopLeft;
+            return;
+        }
+        //pokud se mění velikost nebo otočení, přepočítá výběr a ukáže rychlý náhled pixelů
+        if (selectionHandleIndex != -1 && selectionStart != null && selectionEnd != null) {
+            transformSelectionTo(dragged);
+            updateTransformedImage(true);
+            return;
+        }
+
+        /*pro čáru, obdélník a kruh kreslí náhled tvaru na temp plátno.
+        * Pro výběr aktualizuje koncový bod výběru.
+        * Pro štětec a gumu přidá do tahu úsek od minulé polohy myši*/
+        switch (currentTool) {
+            case LINE -> {
+                dragged = shift ? lineRasterizer.snapTo45Degrees(start, dragged) : dragged;
+                lineRasterizer.drawLine(tempRaster, start, dragged, currentColor, currentThickness, currentStyle);
+            }
+            case RECTANGLE -> rectangleRasterizer.drawRectangle(tempRaster, start, dragged, currentColor, currentThickness, currentStyle, shift);
+            case CIRCLE -> circleRasterizer.drawCircle(tempRaster, start, dragged, currentColor, currentThickness, currentStyle, circleFilled);
+            case SELECTION -> {
+                selectionEnd = dragged;
+                return;
+            }
+            case BRUSH, ERASER -> {
+                continueStroke(dragged);
+                start = dragged;
+            }
         }
     }
 
-    /*pomocná metoda pro eraseLastShapeFromCanvas().
-     * vrací oobdélník přesouvaného tvaru definovaný
-     * dvěma body. Pro čáru přidává malý okraj kvůli tloušťce.
-     * Funguje jen na čístě černém plátně*/
-    private Rectangle getShapeBoundingBox(Point p1, Point p2, ToolType type) {
+    //štětec a guma - přidá do běžícího tahu úsek k bodu p
+    private void continueStroke(Point p) {
+        if (lastMousePoint == null) return;
+        if (currentTool == ToolType.BRUSH) brushRasterizer.strokeTo(p);
+        if (currentTool == ToolType.ERASER) eraserRasterizer.eraseTo(p);
+        lastMousePoint = p;
+    }
+
+    //pohyb myši bez tlačítka na polohu p (poslední vzorek snímku)
+    private void moveTo(Point p) {
+        //Zaznamenává aktuální pozici myši
+        currentMouse = p;
+        //u výplně zvýrazní oblast, kterou by kliknutí vyplnilo
+        if (currentTool == ToolType.FILL) {
+            updateFillHover(currentMouse);
+        }
+        //překreslí jen to, co se změnilo - náhled polygonu závisí na pozici myši
+        repaintDamage(currentTool == ToolType.POLYGON && !polygonRasterizer.isEmpty());
+    }
+
+    /*Vyjme vybraný tvar ze scény na dobu úpravy
+    * pokud má zálohu pixelů pod sebou, vrátí se jen ty (úměrně obvodu tvaru),
+    * jinak se dlaždice pod ním překreslí ze sceneBase a ostatních tvarů (tvary pod ním i nad ním zůstanou)
+    * upravovaný tvar se do puštění myši kreslí jen do temp plátna*/
+    private void liftActiveShape() {
+        isEditingShape = true;
+        scene.remove(activeShape);
+        if (activeSaveUnder != null) {
+            activeSaveUnder.restore();
+            activeSaveUnder = null;
+        } else {
+            sceneRasterizer.redraw(canvasRaster, canvasTiles, sceneBase, scene, activeShape.getBounds());
+        }
+        clearTemp();
+        sceneRasterizer.draw(tempRaster, activeShape);
+        repaintDamage(true);
+    }
+
+    /*Nakreslí activeShape navrch plátna a zapamatuje si pixely pod ním
+    * záloha platí, dokud se na plátno nekreslí nic jiného - každý jiný zápis buď nakreslí nový
+    * aktivní tvar, nebo scénu zapeče, a obojí zálohu zahodí*/
+    private void drawActiveShape() {
+        SaveUnderBuffer saveUnder = new SaveUnderBuffer(canvasRaster);
+        sceneRasterizer.draw(saveUnder, activeShape);
+        saveUnder.finish();
+        activeSaveUnder = saveUnder;
+    }
+
+    private static boolean isShapeTool(ToolType tool) {
+        return tool == ToolType.LINE || tool == ToolType.RECTANGLE || tool == ToolType.CIRCLE;
+    }
+
+    /*Zapeče scénu - aktuální plátno se stane novým podkladem a tvary už nejdou upravovat
+    * volá se po krocích, které pracují s hotovými pixely (výplň, štětec, výběr, zpět...),
+    * protože ty se z tvarů znovu nakreslit nedají*/
+    private void bakeScene() {
+        sceneBase = canvasTiles.snapshot();
+        scene.clear();
+        activeShape = null;
+        activeSaveUnder = null;
+    }
+
+    /*Obdélník, do kterého může tvar (čára, obdélník, kruh) kreslit, rozšířený o pad pixelů
+    * kruh má střed v p1 a poloměr daný vzdáleností k p2*/
+    private Rectangle getShapeBounds(ToolType type, Point p1, Point p2, int pad) {
+        if (type == ToolType.CIRCLE) {
+            int radius = (int) Math.ceil(Math.hypot(p2.x - p1.x, p2.y - p1.y)) + pad;
+            return new Rectangle(p1.x - radius, p1.y - radius, 2 * radius + 1, 2 * radius + 1);
+        }
         int x = Math.min(p1.x, p2.x);
         int y = Math.min(p1.y, p2.y);
-        int width = Math.abs(p2.x - p1.x);
-        int height = Math.abs(p2.y - p1.y);
+        return new Rectangle(x - pad, y - pad, Math.abs(p2.x - p1.x) + 2 * pad + 1, Math.abs(p2.y - p1.y) + 2 * pad + 1);
+    }
 
+    private static Rectangle union(Rectangle a, Rectangle b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.union(b);
+    }
 
-        if (type == ToolType.LINE) {
-            return new Rectangle(x - 2, y - 2, width + 4, height + 4);
+    /*Obdélník všeho, co paintComponent kreslí navíc přes plátna (úchyty, výběr, náhledy)
+    * Musí odpovídat tomu, co se v paintComponent opravdu kreslí*/
+    private Rectangle getOverlayBounds() {
+        Rectangle bounds = union(getHandleBounds(), getPreviewBounds());
+        if (currentTool == ToolType.SELECTION && selectionStart != null && selectionEnd != null && selectedImage != null) {
+            bounds = union(bounds, getFloatingBounds());
         }
+        return bounds;
+    }
 
-        return new Rectangle(x, y, width, height);
+    //obdélník úchytů posledního tvaru - úchyty mají 7x7 pixelů
+    private Rectangle getHandleBounds() {
+        if (activeShape == null) return null;
+        return getShapeBounds(activeShape.getType(), activeShape.getStart(), activeShape.getEnd(), 4);
     }
 
-    /*
-    * Další pomocná metoda pro editaci posledního tvaru
-    * nakreslí ho na dočasné plátno*/
-    private void drawLastShapeToTemp() {
-        if (lastShapeType == null || lastShapeStart == null || lastShapeEnd == null) return;
+    /*obdélník náhledů - rámeček výběru a rozkreslený polygon
+    * tažený tvar se kreslí jen do temp plátna a překreslí se přes jeho damage*/
+    private Rectangle getPreviewBounds() {
+        Rectangle bounds = null;
+        if (currentTool == ToolType.SELECTION && selectionStart != null && selectionEnd != null) {
+            Rectangle rect = selectionRasterizer.getSelectionRect(selectionStart, selectionEnd);
+            Point rotate = selectionRasterizer.getRotateHandle(rect);
+            //křížky úchytů přesahují roh o 5 pixelů, úchyt otočení je nad horní hranou
+            rect.add(rotate.x, rotate.y);
+            rect.grow(6, 6);
+            bounds = rect;
+        }
+        if (currentTool == ToolType.POLYGON && !polygonRasterizer.isEmpty()) {
+            for (Point p : polygonRasterizer.getPoints()) {
+                bounds = union(bounds, getShapeBounds(ToolType.LINE, p, p, currentThickness));
+            }
+            if (currentMouse != null) {
+                bounds = union(bounds, getShapeBounds(ToolType.LINE, currentMouse, currentMouse, currentThickness));
+            }
+        }
+        return bounds;
+    }
 
-        switch (lastShapeType) {
-            case LINE -> lineRasterizer.drawLine(temp, lastShapeStart, lastShapeEnd, currentColor, currentThickness, currentStyle);
-            case RECTANGLE -> rectangleRasterizer.drawRectangle(temp, lastShapeStart, lastShapeEnd, currentColor, currentThickness, currentStyle, false);
-            case CIRCLE -> circleRasterizer.drawCircle(temp, lastShapeStart, lastShapeEnd, currentColor, currentThickness, currentStyle);
+    /*Převezme damage hlavního plátna - zneplatní pod ní mezipaměť oblastí a dlaždice mipmap
+    * a zapamatuje si ji pro překreslení*/
+    private void flushCanvasDamage() {
+        flushCanvasDamage(false);
+    }
+
+    /*regionCacheCurrent - damage pochází jen z regionCache.fill, který dotčené dlaždice zneplatnil sám
+    * ostatní dlaždice v obdélníku damage se nezměnily a jejich labely platí dál*/
+    private void flushCanvasDamage(boolean regionCacheCurrent) {
+        Rectangle damage = canvasRaster.takeDamage();
+        if (damage != null) {
+            if (!regionCacheCurrent) regionCache.invalidate(damage.x, damage.y, damage.width, damage.height);
+            mipmaps.invalidate(damage);
+            pendingRepaint = union(pendingRepaint, damage);
         }
     }
-    /*
-    * poslední tvar dá na hlavní canvas - pak je neupravitelný*/
-    private void drawLastShapeToCanvas() {
-        if (lastShapeType == null || lastShapeStart == null || lastShapeEnd == null) return;
 
-        switch (lastShapeType) {
-            case LINE -> lineRasterizer.drawLine(canvas, lastShapeStart, lastShapeEnd, currentColor, currentThickness, currentStyle);
-            case RECTANGLE -> rectangleRasterizer.drawRectangle(canvas, lastShapeStart, lastShapeEnd, currentColor, currentThickness, currentStyle, false);
-            case CIRCLE -> circleRasterizer.drawCircle(canvas, lastShapeStart, lastShapeEnd, currentColor, currentThickness, currentStyle);
+    /*Překreslí jen tu část okna, která se změnila
+    * - pixely zapsané do canvas a temp (damage z rasterů)
+    * - náhledy a úchyty z paintComponent, jejich minulá i nová poloha (když se mohly změnit)
+    * vše je v souřadnicích plátna a na obdélník okna se převede až nakonec přes viewport*/
+    private void repaintDamage(boolean overlayChanged) {
+        flushCanvasDamage();
+        Rectangle damage = union(pendingRepaint, tempRaster.takeDamage());
+        if (overlayChanged) {
+            Rectangle overlayBounds = getOverlayBounds();
+            damage = union(damage, union(lastOverlayBounds, overlayBounds));
+            lastOverlayBounds = overlayBounds;
+        }
+        pendingRepaint = null;
+        if (damage != null) damage = viewport.toScreen(damage);
+        //HUD se překresluje s každou změnou, aby ukazoval aktuální čísla
+        if (damage != null && hudVisible) damage = union(damage, HUD_BOUNDS);
+        if (damage != null) {
+            repaint(damage);
         }
     }
 
-    /*Vytvoří backup pro výběr, aby se logivky výběr mohl zrušit nebo vracet*/
-    private void backupCurrentCanvas() {
+    /*Náhled výplně - oblast pod kurzorem se průsvitně vykreslí do temp plátna
+    * Oblast se bere z mezipaměti, takže pohyb myši uvnitř stejné oblasti nic nepočítá
+    * Náhled je jen pro přesnou výplň přes hrany, ostatní režimy mezipaměť nepoužívají*/
+    private void updateFillHover(Point p) {
+        if (fillTolerance > 0 || fillEightConnected) {
+            clearFillHover();
+            return;
+        }
+        flushCanvasDamage();
+        RegionLabelCache.Region region = regionCache.regionAt(p.x, p.y);
+        if (region == hoverRegion) return;
+        clearFillHover();
+        if (region != null) {
+            int hoverColor = (currentColor.getRGB() & 0x00FFFFFF) | 0x60000000;
+            regionCache.paintRegion(region, tempRaster, hoverColor);
+            hoverRegion = region;
+        }
+    }
 
-        Graphics g = backupCanvas.getGraphics();
-        g.drawImage(canvas, 0, 0, null);
-        g.dispose();
+    private void clearFillHover() {
+        if (hoverRegion == null) return;
+        Rectangle b = hoverRegion.getBounds();
+        tempRaster.fillRect(b.x, b.y, b.width, b.height, 0x00000000);
+        hoverRegion = null;
     }
 
     /*z hlavního plátna uloží obsah oblasti
     * a uložího do SelectedImage
+    * kopíruje se jen vybraná oblast po řádcích, obrázek má stejný formát jako plátno
     * metoda se volá po dokončení výběru
     * ošetřuje případy hranice plátna*/
     private void updateSelectedImage() {
@@ -518,15 +859,8 @@ public class DrawingPanel extends JPanel {
         }
 
 
-        selectedImage = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_ARGB);
-
-
-        for (int y = 0; y < rect.height; y++) {
-            for (int x = 0; x < rect.width; x++) {
-                int rgb = canvas.getRGB(rect.x + x, rect.y + y);
-                selectedImage.setRGB(x, y, rgb);
-            }
-        }
+        selectedImage = new RegionBuffer(canvasRaster, rect);
+        transformedImage = null;
 
 
         selectionStart = new Point(rect.x, rect.y);
@@ -556,50 +890,75 @@ public class DrawingPanel extends JPanel {
     }
 
 
-    /*Překreslí výběr na hlavní plátno,
-    * předtím se obnoví stav plátna ze zálohy backupCanvas
-    **/
-    private void applySelection() {
-        if (selectedImage == null || selectionStart == null || selectionEnd == null) return;
+    /*Tažení úchytu výběru na bod p
+    * rohy mění obdélník výběru (neotočený), úchyt otočení mění úhel o to, o kolik se myš otočila
+    * kolem středu výběru od stisku - se shiftem po 15°*/
+    private void transformSelectionTo(Point p) {
+        if (selectionHandleIndex == SelectionRasterizer.ROTATE_HANDLE) {
+            Rectangle rect = selectionRasterizer.getSelectionRect(selectionStart, selectionEnd);
+            double angle = rotateStartAngle + selectionRasterizer.getAngle(rect, p) - rotateStartMouse;
+            if (shift) {
+                double step = Math.toRadians(15);
+                angle = Math.round(angle / step) * step;
+            }
+            selectionAngle = angle;
+            return;
+        }
+        Rectangle rect = selectionRasterizer.resizeSelection(selectionStart, selectionEnd, selectionHandleIndex, p);
+        selectionStart = new Point(rect.x, rect.y);
+        selectionEnd = new Point(rect.x + rect.width, rect.y + rect.height);
+    }
 
+    /*Převzorkuje vybrané pixely na aktuální obdélník a úhel výběru
+    * preview - během tažení rychlý nejbližší pixel, po puštění jednou kvalitně podle resampling
+    * bez zvětšení a otočení se vkládají přímo vybrané pixely*/
+    private void updateTransformedImage(boolean preview) {
+        if (selectedImage == null) return;
         Rectangle rect = getNormalizedSelectionRect();
+        int width = Math.max(1, rect.width);
+        int height = Math.max(1, rect.height);
+        if (width == selectedImage.getWidth() && height == selectedImage.getHeight() && selectionAngle == 0) {
+            transformedImage = null;
+            return;
+        }
+        RasterizeEvent event = RasterizeEvent.start(preview ? SELECTION_PREVIEW : SELECTION_TRANSFORM);
+        transformedImage = preview
+                ? selectionTransformer.preview(selectedImage, width, height, selectionAngle)
+                : selectionTransformer.transform(selectedImage, width, height, selectionAngle, resampling);
+        event.finish((long) transformedImage.getWidth() * transformedImage.getHeight());
+    }
 
+    //pixely, které výběr nese - převzorkované, nebo přímo vybrané
+    private RegionBuffer getFloatingImage() {
+        return transformedImage != null ? transformedImage : selectedImage;
+    }
 
-        Graphics g = canvas.getGraphics();
-        g.drawImage(backupCanvas, 0, 0, null);
-
-
-        g.setColor(Color.BLACK);
-        g.fillRect(rect.x, rect.y, rect.width, rect.height);
-        g.dispose();
+    //kde na plátně leží pixely výběru (otočený výběr zabírá větší obdélník než výběr)
+    private Rectangle getFloatingBounds() {
+        Rectangle bounds = transformedImage != null ? transformedImage.getBounds()
+                : new Rectangle(0, 0, selectedImage.getWidth(), selectedImage.getHeight());
+        bounds.translate(Math.min(selectionStart.x, selectionEnd.x), Math.min(selectionStart.y, selectionEnd.y));
+        return bounds;
+    }
 
+    /*Překreslí výběr na hlavní plátno,
+    * předtím se vrátí pixely pod minulým vložením - záloha i vložení stojí jen plochu výběru
+    **/
+    private void applySelection() {
+        if (selectedImage == null || selectionStart == null || selectionEnd == null) return;
 
-        for (int y = 0; y < selectedImage.getHeight(); y++) {
-            for (int x = 0; x < selectedImage.getWidth(); x++) {
-                if (selectionStart.x + x >= 0 && selectionStart.x + x < canvas.getWidth() &&
-                        selectionStart.y + y >= 0 && selectionStart.y + y < canvas.getHeight()) {
-                    int rgb = selectedImage.getRGB(x, y);
-                    canvas.setRGB(selectionStart.x + x, selectionStart.y + y, rgb);
-                }
-            }
+        if (selectionUnder != null) {
+            selectionUnder.restore(canvasRaster);
         }
+        Rectangle floating = getFloatingBounds();
+        selectionUnder = selectionRasterizer.pasteSelection(canvasRaster, getFloatingImage(), floating.x, floating.y);
     }
 
     /*kreslí "body držení" pro manipulaci s měnitelnými tvary*/
-    private void drawHandle(BufferedImage img, Point center) {
+    private void drawHandle(Raster raster, Point center) {
         int size = 6;
         int half = size / 2;
-        int rgb = Color.YELLOW.getRGB();
-
-        for (int y = -half; y <= half; y++) {
-            for (int x = -half; x <= half; x++) {
-                int px = center.x + x;
-                int py = center.y + y;
-                if (px >= 0 && px < img.getWidth() && py >= 0 && py < img.getHeight()) {
-                    img.setRGB(px, py, rgb);
-                }
-            }
-        }
+        raster.fillRect(center.x - half, center.y - half, size + 1, size + 1, Color.YELLOW.getRGB());
     }
 
 
@@ -607,18 +966,9 @@ public class DrawingPanel extends JPanel {
     public void clearCanvas() {
 
         int blackRGB = Color.BLACK.getRGB();
-        for (int y = 0; y < canvas.getHeight(); y++) {
-            for (int x = 0; x < canvas.getWidth(); x++) {
-                canvas.setRGB(x, y, blackRGB);
-            }
-        }
-
-
-        for (int y = 0; y < backupCanvas.getHeight(); y++) {
-            for (int x = 0; x < backupCanvas.getWidth(); x++) {
-                backupCanvas.setRGB(x, y, blackRGB);
-            }
-        }
+        canvasRaster.fill(blackRGB);
+        selectionUnder = null;
+        bakeScene();
 
 
         clearTemp();
@@ -626,40 +976,71 @@ public class DrawingPanel extends JPanel {
 
     /*clear metoda pro reset plátna*/
     private void clearWholeCanvas() {
-        for (int y = 0; y < canvas.getHeight(); y++) {
-            for (int x = 0; x < canvas.getWidth(); x++) {
-                canvas.setRGB(x, y, 0x00000000);
-            }
-        }
         clearTemp();
         clearOverlayCanvas();
         clearCanvas();
 
-        lastShapeType = null;
-        lastShapeStart = null;
-        lastShapeEnd = null;
+        finishStep(false);
+    }
 
-        repaint();
+    /*uzavře krok historie (celá operace myší) a překreslí změny
+    * krok, který nebyl jen kreslením nebo úpravou tvaru, scénu zapeče*/
+    private void finishStep(boolean shapeStep) {
+        RasterizeEvent event = RasterizeEvent.start(HISTORY_COMMIT);
+        long pixels = pixelsWritten();
+        if (history.commit() && !shapeStep) bakeScene();
+        event.finish(pixelsWritten() - pixels);
+        repaintDamage(true);
     }
 
-    private void clearOverlayCanvas() {
-        if (overlay != null)
-        {
-            for (int y = 0; y < overlay.getHeight(); y++) {
-                for (int x = 0; x < overlay.getWidth(); x++) {}
-                overlay.setRGB(overlay.getWidth() - 1, y, 0x00000000);
-            }
+    public void undo() {
+        frameScheduler.flush();
+        if (history.undo()) {
+            resetEditing();
+            repaintDamage(true);
+        }
+    }
+
+    public void redo() {
+        frameScheduler.flush();
+        if (history.redo()) {
+            resetEditing();
+            repaintDamage(true);
         }
+    }
 
+    /*po kroku zpět / znovu plátno neodpovídá scéně ani výběru,
+    * takže se scéna zapeče a úchyty zahodí*/
+    private void resetEditing() {
+        clearTemp();
+        bakeScene();
+        selectedHandle = -1;
+        isEditingShape = false;
+        isPickingShape = false;
+        selectionStart = null;
+        selectionEnd = null;
+        selectedImage = null;
+        transformedImage = null;
+        selectionAngle = 0;
+        selectionUnder = null;
+        isDraggingSelection = false;
+        selectionHandleIndex = -1;
+    }
+
+    private void clearOverlayCanvas() {
+        handleLayer.clear();
+        previewLayer.clear();
     }
 
-    /*kompletně vyčístí backup na průhledno*/
+    /*vyčistí dočasné plátno na průhledno
+    * maže se jen v dlaždicích, do kterých se od minula kreslilo (tažení velkého tvaru
+    * tak stojí úměrně jeho obvodu, ne ploše plátna)*/
     private void clearTemp() {
-        for (int y = 0; y < temp.getHeight(); y++) {
-            for (int x = 0; x < temp.getWidth(); x++) {
-                temp.setRGB(x, y, 0x00000000);
-            }
-        }
+        RasterizeEvent event = RasterizeEvent.start(CLEAR_TEMP);
+        long pixels = pixelsWritten();
+        tempRaster.clearDirtyTiles(0x00000000);
+        event.finish(pixelsWritten() - pixels);
+        hoverRegion = null;
     }
 
 
@@ -676,19 +1057,106 @@ public class DrawingPanel extends JPanel {
         this.currentStyle = style;
     }
 
+    public void setCircleFilled(boolean filled) {
+        this.circleFilled = filled;
+    }
+
+    public void setCurrentTip(BrushTip tip) {
+        this.currentTip = tip;
+    }
+
+    //krytí štětce a gumy v procentech
+    public void setCurrentOpacity(int percent) {
+        this.currentOpacity = Math.round(percent * 255 / 100f);
+    }
+
+    //plný polygon podle pravidla, null = jen obrys
+    public void setPolygonFill(FillRule rule) {
+        this.polygonFill = rule;
+    }
+
+    //převzorkování pro další zvětšení / otočení výběru
+    public void setResampling(Resampling resampling) {
+        this.resampling = resampling;
+    }
+
+    /*Vyhlazování čar, kruhů, polygonů a tahů štětce a gumy
+    * platí pro další kreslení, tvary ve scéně si pamatují, jak se nakreslily*/
+    public void setAntialiased(boolean antialiased) {
+        frameScheduler.flush();
+        this.antialiased = antialiased;
+        lineRasterizer.setAntialiased(antialiased);
+        circleRasterizer.setAntialiased(antialiased);
+        brushRasterizer.setAntialiased(antialiased);
+        eraserRasterizer.setAntialiased(antialiased);
+    }
+
+    //kolikrát za sekundu se nejvýš zpracuje myš a překreslí okno (60, 120, 144 Hz...)
+    public void setFrameRate(int rate) {
+        frameScheduler.setRate(rate);
+    }
+
+    public int getFrameRate() {
+        return frameScheduler.getRate();
+    }
+
+    /*Přiblíží (steps > 0) nebo oddálí (steps < 0) pohled kolem bodu okna x, y
+    * měřítko se mění po dvojnásobcích, bod plátna pod x, y zůstane na místě*/
+    public void zoomAt(int x, int y, int steps) {
+        frameScheduler.flush();
+        viewport.setViewSize(getWidth(), getHeight());
+        if (viewport.zoomAt(x, y, steps)) repaint();
+    }
+
+    //posune pohled o dx, dy pixelů okna
+    public void panBy(int dx, int dy) {
+        viewport.setViewSize(getWidth(), getHeight());
+        viewport.pan(dx, dy);
+        repaint();
+    }
+
+    //pohled 1:1 s plátnem v levém horním rohu
+    public void resetView() {
+        viewport.reset();
+        repaint();
+    }
+
+    //HUD s měřením v levém horním rohu plátna - snímky, zpoždění vstupu, paint a nejdelší operace
+    public void setHudVisible(boolean visible) {
+        hudVisible = visible;
+        repaint(HUD_BOUNDS);
+    }
+
+    public void setFillEightConnected(boolean eightConnected) {
+        this.fillEightConnected = eightConnected;
+    }
+
+    public void setFillTolerance(int tolerance) {
+        this.fillTolerance = tolerance;
+    }
+
+    public void setFillDistance(ColorDistance distance) {
+        this.fillDistance = distance;
+    }
+
     public void setCurrentTool(ToolType tool) {
+        frameScheduler.flush();
         this.currentTool = tool;
+        clearFillHover();
 
-        lastShapeType = null;
-        lastShapeStart = null;
-        lastShapeEnd = null;
+        activeShape = null;
+        activeSaveUnder = null;
 
         if (tool != ToolType.SELECTION) {
             if (selectedImage != null && selectionStart != null && selectionEnd != null) {
 
                 applySelection();
+                finishStep(false);
             }
             selectedImage = null;
+            transformedImage = null;
+            selectionAngle = 0;
+            selectionUnder = null;
             selectionStart = null;
             selectionEnd = null;
             isDraggingSelection = false;
@@ -701,38 +1169,111 @@ public class DrawingPanel extends JPanel {
     * Překlesí komponentu
     * Vykreslí hlavní plátno
     * Vykreslí dočasné plátno
+    * Kreslí se jen uvnitř clipu - repaintDamage překresluje jen změněnou část okna
     * */
     @Override
     protected void paintComponent(Graphics g) {
+        PaintEvent event = new PaintEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
         super.paintComponent(g);
-        g.drawImage(canvas, 0, 0, null);
-        g.drawImage(temp, 0, 0, null);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        paintView(g, clip);
+        if (hudVisible && HUD_BOUNDS.intersects(clip)) drawHud(g);
+
+        long endNanos = System.nanoTime();
+        Metrics.record("paint", endNanos - startNanos);
+        event.width = clip.width;
+        event.height = clip.height;
+        event.commit();
+        //výsledek čekajících událostí myši je teď vykreslený
+        if (pendingInputNanos != 0) {
+            long latency = endNanos - pendingInputNanos;
+            pendingInputNanos = 0;
+            Metrics.record("input.latency", latency);
+            InputLatencyEvent latencyEvent = new InputLatencyEvent();
+            if (latencyEvent.shouldCommit()) {
+                latencyEvent.tool = currentTool.name();
+                latencyEvent.latency = latency;
+                latencyEvent.commit();
+            }
+        }
+    }
 
-        BufferedImage preview = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    /*Vykreslí plátno a vrstvy nad ním přes viewport
+    * clip okna se převede na obdélník plátna a kreslí se jen ten
+    * přiblížené plátno Java2D zvětší po celých pixelech (nejbližší pixel),
+    * oddálené se nezmenšuje - vykreslí se 1:1 úroveň mipmapy, ve které se přepočítaly jen změněné dlaždice
+    * temp plátno, náhledy a výběr se kreslí do Graphics posunutého a zvětšeného podle viewportu*/
+    private void paintView(Graphics g, Rectangle clip) {
+        Rectangle canvasClip = viewport.toCanvas(clip);
+        int level = viewport.getMipLevel();
+        if (level > 0) drawMipLevel(g, level, canvasClip);
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.translate(viewport.getOriginX(), viewport.getOriginY());
+            g2.scale(viewport.getScale(), viewport.getScale());
+            if (level == 0) drawClipped(g2, canvas, canvasClip);
+            paintLayers(g2, canvasClip);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    //úroveň mipmapy level v clipu (souřadnice plátna) - pixel úrovně je jeden pixel okna
+    private void drawMipLevel(Graphics g, int level, Rectangle canvasClip) {
+        BufferedImage mip = mipmaps.getLevel(level);
+        int x0 = Math.max(canvasClip.x >> level, 0);
+        int y0 = Math.max(canvasClip.y >> level, 0);
+        int x1 = Math.min((canvasClip.x + canvasClip.width + (1 << level) - 1) >> level, mip.getWidth());
+        int y1 = Math.min((canvasClip.y + canvasClip.height + (1 << level) - 1) >> level, mip.getHeight());
+        if (x0 >= x1 || y0 >= y1) return;
+        int ox = viewport.getOriginX();
+        int oy = viewport.getOriginY();
+        g.drawImage(mip, ox + x0, oy + y0, ox + x1, oy + y1, x0, y0, x1, y1, null);
+    }
 
-        if(lastShapeType !=null&&lastShapeStart !=null&&lastShapeEnd !=null)
+    /*temp plátno, úchyty a náhledy v clipu (souřadnice plátna)
+    * temp se kreslí jen v dlaždicích, do kterých se od posledního smazání kreslilo*/
+    private void paintLayers(Graphics g, Rectangle clip) {
+        Rectangle tempContent = tempRaster.getDirtyTileBounds();
+        if (tempContent != null && tempContent.intersects(clip)) {
+            drawClipped(g, temp, tempContent.intersection(clip));
+        }
 
-        {
-            overlay = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        //náhledy a úchyty se rasterizují jen tehdy, když do clipu vůbec zasahují
+        Rectangle overlayBounds = getOverlayBounds();
+        if (overlayBounds == null || !overlayBounds.intersects(clip)) return;
 
-            //zobrazí overlay úchyty pro editaci - pokud existuje poslední nakreslený tvar
+        //vrstvy pokrývají jen obdélník svého obsahu a obrázky se mezi překresleními znovu používají
+        Rectangle handleBounds = getHandleBounds();
+        Raster overlayRaster = handleBounds != null && handleBounds.intersects(clip) ? handleLayer.begin(handleBounds) : null;
+        if (overlayRaster != null) {
+            //zobrazí overlay úchyty pro editaci - pokud je vybraný tvar ze scény
             //vykreslí červeně orámovaný úchyt
-            switch (lastShapeType) {
-                case LINE -> lineRasterizer.drawLine(overlay, lastShapeStart, lastShapeEnd, Color.RED, 1, LineStyle.DASHED);
+            Point shapeStart = activeShape.getStart();
+            Point shapeEnd = activeShape.getEnd();
+            switch (activeShape.getType()) {
+                case LINE -> lineRasterizer.drawLine(overlayRaster, shapeStart, shapeEnd, Color.RED, 1, LineStyle.DASHED);
 
                 case RECTANGLE ->
-                        rectangleRasterizer.drawRectangle(overlay, lastShapeStart, lastShapeEnd, Color.RED, 1, LineStyle.DASHED, false);
+                        rectangleRasterizer.drawRectangle(overlayRaster, shapeStart, shapeEnd, Color.RED, 1, LineStyle.DASHED, activeShape.isSquareMode());
                 case CIRCLE ->
-                        circleRasterizer.drawCircle(overlay, lastShapeStart, lastShapeEnd, Color.RED, 1, LineStyle.DASHED);
+                        circleRasterizer.drawCircle(overlayRaster, shapeStart, shapeEnd, Color.RED, 1, LineStyle.DASHED);
             }
 
-            drawHandle(overlay, lastShapeStart);
-            drawHandle(overlay, lastShapeEnd);
-            drawHandle(overlay, new Point((lastShapeStart.x + lastShapeEnd.x) / 2, (lastShapeStart.y + lastShapeEnd.y) / 2));
+            drawHandle(overlayRaster, shapeStart);
+            drawHandle(overlayRaster, shapeEnd);
+            drawHandle(overlayRaster, new Point((shapeStart.x + shapeEnd.x) / 2, (shapeStart.y + shapeEnd.y) / 2));
 
-            g.drawImage(overlay, 0, 0, null);
+            handleLayer.draw(g, clip);
         }
 
+        Rectangle previewBounds = getPreviewBounds();
+        Raster preview = previewBounds != null && previewBounds.intersects(clip) ? previewLayer.begin(previewBounds) : null;
+
         /*
         * Pokud je aktivní nástroj výběr a je definován
         * vykresli ohraničovací rámeček a úchyty
@@ -741,16 +1282,16 @@ public class DrawingPanel extends JPanel {
         *
         *   během přetahování se vykresluje i selectedImage*/
         if (currentTool == ToolType.SELECTION && selectionStart != null && selectionEnd != null) {
-            Rectangle rect = selectionRasterizer.getSelectionRect(selectionStart, selectionEnd);
-            selectionRasterizer.drawSelectionBox(preview, selectionStart, selectionEnd);
-            selectionRasterizer.drawHandles(preview, rect);
-
+            if (preview != null) {
+                Rectangle rect = selectionRasterizer.getSelectionRect(selectionStart, selectionEnd);
+                selectionRasterizer.drawSelectionBox(preview, selectionStart, selectionEnd);
+                selectionRasterizer.drawHandles(preview, rect);
+            }
 
-            if (selectedImage != null && !isDraggingSelection) {
-                g.drawImage(selectedImage, selectionStart.x, selectionStart.y, null);
-            } else if (selectedImage != null) {
 
-                g.drawImage(selectedImage, selectionStart.x, selectionStart.y, null);
+            if (selectedImage != null) {
+                Rectangle floating = getFloatingBounds();
+                g.drawImage(getFloatingImage().getImage(), floating.x, floating.y, null);
             }
         }
 
@@ -758,7 +1299,7 @@ public class DrawingPanel extends JPanel {
         * pokud je aktivní nástroj Polygon a existují již nějaké body
         *   vykreslí čáry mezi nimi a dočasnou čáru od
         *   posledního bodu k aktuální pozici myši.*/
-        if (currentTool == ToolType.POLYGON && !polygonRasterizer.isEmpty()) {
+        if (preview != null && currentTool == ToolType.POLYGON && !polygonRasterizer.isEmpty()) {
             List<Point> pts = polygonRasterizer.getPoints();
             for (int i = 1; i < pts.size(); i++) {
                 lineRasterizer.drawLine(preview, pts.get(i - 1), pts.get(i), currentColor, currentThickness, currentStyle);
@@ -768,22 +1309,65 @@ public class DrawingPanel extends JPanel {
             }
         }
         /*
-        * Pokud se kreslí čára, obdélník nebo kruh (a neděje se nic jiného),
-        * vykreslí se šedý náhled tvaru na základě počátečního bodu
-        * (start) a aktuální pozice myši (currentMouse).*/
-        if (start != null && currentMouse != null && currentTool != ToolType.POLYGON && currentTool != ToolType.SELECTION && selectedHandle == -1) {
-            switch (currentTool) {
-                case LINE -> {
-                    currentMouse = shift ? lineRasterizer.snapTo45Degrees(start, currentMouse) : currentMouse;
-                    lineRasterizer.drawLine(preview, start, currentMouse, Color.GRAY, currentThickness, currentStyle);
-                }
-                case RECTANGLE -> rectangleRasterizer.drawRectangle(preview, start, currentMouse, Color.GRAY, currentThickness, currentStyle, false);
-                case CIRCLE -> circleRasterizer.drawCircle(preview, start, currentMouse, Color.GRAY, currentThickness, currentStyle);
-            }
-        }
+        * Náhled tažené čáry, obdélníku a kruhu se tady už nekreslí -
+        * mouseDragged ho jednou rasterizuje do temp plátna, které se vykreslilo výše*/
 
-        g.drawImage(preview, 0, 0, null);
         //vykresli pomocné plátno pro náhledy a výběr
+        if (preview != null) {
+            previewLayer.draw(g, clip);
+        }
+
+    }
+
+    //stejná operace pro každý nástroj, index je ToolType.ordinal()
+    private static RasterizeEvent.Operation[] perTool(String operation) {
+        ToolType[] tools = ToolType.values();
+        RasterizeEvent.Operation[] operations = new RasterizeEvent.Operation[tools.length];
+        for (int i = 0; i < tools.length; i++) {
+            operations[i] = RasterizeEvent.operation(tools[i].name(), operation);
+        }
+        return operations;
+    }
+
+    /*HUD - poloprůhledný panel s čísly z Metrics
+    * délka posledního snímku, zpoždění vstupu a paint (p50 / p99) a nejdelší operace nástroje od spuštění*/
+    private void drawHud(Graphics g) {
+        Histogram frame = Metrics.histogram("frame.interval");
+        Histogram latency = Metrics.histogram("input.latency");
+        Histogram paint = Metrics.histogram("paint");
+        String worstName = "-";
+        long worst = 0;
+        for (Map.Entry<String, Histogram> entry : Metrics.all().entrySet()) {
+            if (entry.getKey().startsWith("rasterize.") && entry.getValue().getMax() > worst) {
+                worst = entry.getValue().getMax();
+                worstName = entry.getKey().substring("rasterize.".length());
+            }
+        }
+        String[] lines = {
+                String.format(Locale.ROOT, "snímek %.1f ms (plán %d Hz)", frame.getLast() / 1e6, frameScheduler.getRate()),
+                String.format(Locale.ROOT, "vstup -> pixel p50 %.1f / p99 %.1f ms", latency.percentile(0.5) / 1e6, latency.percentile(0.99) / 1e6),
+                String.format(Locale.ROOT, "paint p50 %.2f / p99 %.2f ms", paint.percentile(0.5) / 1e6, paint.percentile(0.99) / 1e6),
+                String.format(Locale.ROOT, "nejdelší %s %.1f ms", worstName, worst / 1e6),
+                viewport.getZoomShift() >= 0
+                        ? String.format(Locale.ROOT, "pohled %d:1", 1 << viewport.getZoomShift())
+                        : String.format(Locale.ROOT, "pohled 1:%d (mipmapa %d)", 1 << -viewport.getZoomShift(), viewport.getMipLevel())
+        };
+        g.setColor(new Color(0, 0, 0, 180));
+        g.fillRect(HUD_BOUNDS.x, HUD_BOUNDS.y, HUD_BOUNDS.width, HUD_BOUNDS.height);
+        g.setColor(Color.GREEN);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], HUD_BOUNDS.x + 6, HUD_BOUNDS.y + 18 + i * 18);
+        }
+    }
 
+    //vykreslí z obrázku (umístěného v 0, 0) jen část, která leží v clipu
+    private void drawClipped(Graphics g, BufferedImage img, Rectangle clip) {
+        int x0 = Math.max(clip.x, 0);
+        int y0 = Math.max(clip.y, 0);
+        int x1 = Math.min(clip.x + clip.width, img.getWidth());
+        int y1 = Math.min(clip.y + clip.height, img.getHeight());
+        if (x0 >= x1 || y0 >= y1) return;
+        g.drawImage(img, x0, y0, x1, y1, x0, y0, x1, y1, null);
     }
 }
\ No newline at end of file
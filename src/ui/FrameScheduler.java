@@ -0,0 +1,85 @@
+package ui;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+
+/*
+* Plánovač snímků pro DrawingPanel - spustí práci snímku nejvýš jednou za periodu obrazovky
+*
+* requestFrame jen označí, že je co kreslit. Další požadavky před snímkem se spojí do jednoho,
+* takže se rasterizace náhledů a repaint dělá jednou za snímek, ne při každé události myši.
+* Když od minulého snímku uplynula celá perioda, snímek se spustí hned po událostech,
+* které už čekají ve frontě (invokeLater), jinak ho spustí Timer na začátku další periody.
+* Vše běží na vlákně Swingu (EDT)*/
+final class FrameScheduler {
+    private final Runnable frame;
+    private final Timer timer;
+    private long periodNanos;
+    private long lastFrameNanos;
+    private boolean requested;
+    private int rate;
+
+    FrameScheduler(int rate, Runnable frame) {
+        this.frame = frame;
+        this.timer = new Timer(0, e -> runFrame());
+        timer.setRepeats(false);
+        setRate(rate);
+    }
+
+    //frekvence snímků v Hz (60, 120, 144...)
+    void setRate(int rate) {
+        if (rate <= 0) throw new IllegalArgumentException("Frekvence snímků musí být kladná, ne " + rate);
+        this.rate = rate;
+        this.periodNanos = 1_000_000_000L / rate;
+    }
+
+    int getRate() {
+        return rate;
+    }
+
+    //vyžádá snímek - víc požadavků do dalšího snímku se spojí do jednoho
+    void requestFrame() {
+        if (requested) return;
+        requested = true;
+        long wait = lastFrameNanos + periodNanos - System.nanoTime();
+        if (wait <= 0) {
+            SwingUtilities.invokeLater(this::runFrame);
+        } else {
+            timer.setInitialDelay((int) ((wait + 999_999) / 1_000_000));
+            timer.restart();
+        }
+    }
+
+    //provede čekající snímek hned (třeba před stiskem nebo puštěním myši, aby se nic nepředběhlo)
+    void flush() {
+        if (requested) runFrame();
+    }
+
+    private void runFrame() {
+        if (!requested) return;
+        requested = false;
+        timer.stop();
+        lastFrameNanos = System.nanoTime();
+        frame.run();
+    }
+
+    /*Frekvence obrazovky - vlastnost drawtwo.fps, jinak obnovovací frekvence hlavního monitoru,
+    * když ji systém nezná (nebo běží bez okna), 60 Hz*/
+    static int defaultRate() {
+        Integer configured = Integer.getInteger("drawtwo.fps");
+        if (configured != null && configured > 0) return configured;
+        try {
+            if (!GraphicsEnvironment.isHeadless()) {
+                int refresh = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                        .getDisplayMode().getRefreshRate();
+                if (refresh != DisplayMode.REFRESH_RATE_UNKNOWN) return refresh;
+            }
+        } catch (HeadlessException e) {
+            //bez obrazovky zůstane výchozí frekvence
+        }
+        return 60;
+    }
+}
@@ -0,0 +1,79 @@
+package ui;
+
+import rasterizer.Raster;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/*
+* Průhledná vrstva pro náhledy a úchyty, která pokrývá jen obdélník kresleného obsahu
+* místo obrázku přes celé plátno alokovaného při každém překreslení
+*
+* Obrázek se mezi překresleními znovu používá - zvětší se jen tehdy, když se obsah nevejde,
+* a před dalším kreslením se vymaže jen to, kam se minule opravdu kreslilo (damage rastru)
+* Rasterizery kreslí v souřadnicích plátna, raster si je posune přes Raster.setOrigin*/
+final class OverlayLayer {
+    //obrázek roste po celých blocích, aby se při tažení myší nealokoval při každém pohybu
+    private static final int GROW_STEP = 64;
+
+    private final int canvasWidth;
+    private final int canvasHeight;
+    private BufferedImage image;
+    private Raster raster;
+
+    OverlayLayer(int canvasWidth, int canvasHeight) {
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+    }
+
+    /*Připraví vrstvu pro obsah v obdélníku area (souřadnice plátna)
+    * vrací raster, do kterého se kreslí, nebo null, když obsah leží celý mimo plátno*/
+    Raster begin(Rectangle area) {
+        clear();
+        int x0 = Math.max(area.x, 0);
+        int y0 = Math.max(area.y, 0);
+        int x1 = Math.min(area.x + area.width, canvasWidth);
+        int y1 = Math.min(area.y + area.height, canvasHeight);
+        if (x0 >= x1 || y0 >= y1) return null;
+
+        int w = x1 - x0;
+        int h = y1 - y0;
+        if (image == null || image.getWidth() < w || image.getHeight() < h) {
+            int newW = roundUp(Math.max(w, image == null ? 0 : image.getWidth()), canvasWidth);
+            int newH = roundUp(Math.max(h, image == null ? 0 : image.getHeight()), canvasHeight);
+            image = new BufferedImage(newW, newH, BufferedImage.TYPE_INT_ARGB);
+            raster = new Raster(image, canvasWidth, canvasHeight);
+        }
+        raster.setOrigin(x0, y0);
+        return raster;
+    }
+
+    //smaže to, co se do vrstvy kreslilo od minula (jen obdélník zápisů, ne celý obrázek)
+    void clear() {
+        if (raster == null) return;
+        Rectangle drawn = raster.takeDamage();
+        if (drawn != null) {
+            raster.fillRect(drawn.x, drawn.y, drawn.width, drawn.height, 0x00000000);
+            raster.takeDamage();
+        }
+    }
+
+    //vykreslí nakreslený obsah vrstvy, jen tu část, která leží v clipu
+    void draw(Graphics g, Rectangle clip) {
+        if (raster == null) return;
+        Rectangle drawn = raster.getDamage();
+        if (drawn == null) return;
+        int x0 = Math.max(clip.x, drawn.x);
+        int y0 = Math.max(clip.y, drawn.y);
+        int x1 = Math.min(clip.x + clip.width, drawn.x + drawn.width);
+        int y1 = Math.min(clip.y + clip.height, drawn.y + drawn.height);
+        if (x0 >= x1 || y0 >= y1) return;
+        int ox = raster.getOriginX();
+        int oy = raster.getOriginY();
+        g.drawImage(image, x0, y0, x1, y1, x0 - ox, y0 - oy, x1 - ox, y1 - oy, null);
+    }
+
+    private static int roundUp(int size, int max) {
+        return Math.min((size + GROW_STEP - 1) / GROW_STEP * GROW_STEP, max);
+    }
+}
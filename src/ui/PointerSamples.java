@@ -0,0 +1,63 @@
+package ui;
+
+import java.util.Arrays;
+
+/*
+* Fronta vzorků myši (poloha, modifikátory, jestli se táhlo) nasbíraných od minulého snímku
+*
+* Myš s vysokou frekvencí (1000 Hz) pošle mezi dvěma snímky obrazovky i desítky událostí.
+* DrawingPanel je tu jen uloží a zpracuje je najednou ve snímku - štětec a guma dostanou
+* všechny vzorky, náhledy a překreslení jen poslední polohu
+* Pole se mezi snímky znovu používají, vzorky se neukládají jako objekty*/
+final class PointerSamples {
+    private int[] xs = new int[32];
+    private int[] ys = new int[32];
+    private int[] modifiers = new int[32];
+    private boolean[] dragged = new boolean[32];
+    private int size;
+    //System.nanoTime() příchodu nejstaršího vzorku ve frontě - pro měření zpoždění vstupu
+    private long oldestArrival;
+
+    void add(int x, int y, int modifiersEx, boolean drag, long arrivalNanos) {
+        if (size == 0) oldestArrival = arrivalNanos;
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+            modifiers = Arrays.copyOf(modifiers, size * 2);
+            dragged = Arrays.copyOf(dragged, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        modifiers[size] = modifiersEx;
+        dragged[size] = drag;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int x(int index) {
+        return xs[index];
+    }
+
+    int y(int index) {
+        return ys[index];
+    }
+
+    int modifiers(int index) {
+        return modifiers[index];
+    }
+
+    boolean isDrag(int index) {
+        return dragged[index];
+    }
+
+    long oldestArrival() {
+        return oldestArrival;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
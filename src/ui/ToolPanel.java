@@ -2,8 +2,12 @@ package ui;
 
 import javax.swing.*;
 import java.awt.*;
+import model.BrushTip;
+import model.ColorDistance;
 import model.ColorPalette;
+import model.FillRule;
 import model.LineStyle;
+import model.Resampling;
 import model.ToolType;
 
 import java.util.function.Consumer;
@@ -19,7 +23,16 @@ public class ToolPanel extends JPanel {
     public ToolPanel(Consumer<Color> onColorChange,
                      Consumer<Integer> onThicknessChange,
                      Consumer<LineStyle> onStyleChange,
-                     Consumer<ToolType> onToolChange) {
+                     Consumer<Boolean> onCircleFilledChange,
+                     Consumer<Boolean> onAntialiasChange,
+                     Consumer<FillRule> onPolygonFillChange,
+                     Consumer<Resampling> onResamplingChange,
+                     Consumer<BrushTip> onTipChange,
+                     Consumer<Integer> onOpacityChange,
+                     Consumer<ToolType> onToolChange,
+                     Consumer<Boolean> onFillEightConnectedChange,
+                     Consumer<Integer> onFillToleranceChange,
+                     Consumer<ColorDistance> onFillDistanceChange) {
         setLayout(new GridBagLayout());
         setBackground(Color.DARK_GRAY);
         //tady se rozvrhuje hlavní panel
@@ -78,6 +91,93 @@ public class ToolPanel extends JPanel {
             }
         });
         stylePanel.add(styleCombo, BorderLayout.CENTER);
+        //kruh kreslí jako plný místo obrysu
+        JCheckBox circleFilledBox = new JCheckBox("Plný kruh");
+        circleFilledBox.setBackground(Color.DARK_GRAY);
+        circleFilledBox.addActionListener(e -> onCircleFilledChange.accept(circleFilledBox.isSelected()));
+        //vyhlazené hrany čar, kruhů a tahů
+        JCheckBox antialiasBox = new JCheckBox("Vyhlazování");
+        antialiasBox.setBackground(Color.DARK_GRAY);
+        antialiasBox.addActionListener(e -> onAntialiasChange.accept(antialiasBox.isSelected()));
+        //polygon jako obrys, nebo plný podle pravidla sudá-lichá / nenulové vinutí
+        String[] polygonFills = {"Obrys polygonu", "Plný (sudá-lichá)", "Plný (vinutí)"};
+        JComboBox<String> polygonFillCombo = new JComboBox<>(polygonFills);
+        polygonFillCombo.addActionListener(e -> {
+            String selected = (String) polygonFillCombo.getSelectedItem();
+            switch (selected) {
+                case "Obrys polygonu" -> onPolygonFillChange.accept(null);
+                case "Plný (sudá-lichá)" -> onPolygonFillChange.accept(FillRule.EVEN_ODD);
+                case "Plný (vinutí)" -> onPolygonFillChange.accept(FillRule.NON_ZERO);
+            }
+        });
+        //převzorkování výběru po zvětšení a otočení
+        String[] resamplings = {"Bilineární", "Bikubické", "Nejbližší pixel"};
+        JComboBox<String> resamplingCombo = new JComboBox<>(resamplings);
+        resamplingCombo.setToolTipText("Převzorkování výběru");
+        resamplingCombo.addActionListener(e -> {
+            String selected = (String) resamplingCombo.getSelectedItem();
+            switch (selected) {
+                case "Bilineární" -> onResamplingChange.accept(Resampling.BILINEAR);
+                case "Bikubické" -> onResamplingChange.accept(Resampling.BICUBIC);
+                case "Nejbližší pixel" -> onResamplingChange.accept(Resampling.NEAREST);
+            }
+        });
+        JPanel styleOptions = new JPanel(new GridLayout(2, 2));
+        styleOptions.setBackground(Color.DARK_GRAY);
+        styleOptions.add(circleFilledBox);
+        styleOptions.add(antialiasBox);
+        styleOptions.add(polygonFillCombo);
+        styleOptions.add(resamplingCombo);
+        stylePanel.add(styleOptions, BorderLayout.SOUTH);
+
+
+        JPanel brushPanel = new JPanel(new GridLayout(2, 1, 3, 3));
+        brushPanel.setBackground(Color.DARK_GRAY);
+        brushPanel.setBorder(BorderFactory.createTitledBorder("Štětec a guma"));
+        //tvar hrotu
+        String[] tips = {"Kulatý hrot", "Hranatý hrot"};
+        JComboBox<String> tipCombo = new JComboBox<>(tips);
+        tipCombo.addActionListener(e -> {
+            String selected = (String) tipCombo.getSelectedItem();
+            switch (selected) {
+                case "Kulatý hrot" -> onTipChange.accept(BrushTip.ROUND);
+                case "Hranatý hrot" -> onTipChange.accept(BrushTip.SQUARE);
+            }
+        });
+        brushPanel.add(tipCombo);
+        //krytí tahu v procentech
+        JSlider opacitySlider = new JSlider(1, 100, 100);
+        opacitySlider.setBackground(Color.DARK_GRAY);
+        opacitySlider.setToolTipText("Krytí");
+        opacitySlider.addChangeListener(e -> onOpacityChange.accept(opacitySlider.getValue()));
+        brushPanel.add(opacitySlider);
+
+
+        JPanel fillPanel = new JPanel(new GridLayout(3, 1, 3, 3));
+        fillPanel.setBackground(Color.DARK_GRAY);
+        fillPanel.setBorder(BorderFactory.createTitledBorder("Výplň"));
+        //vyplňování i přes rohy pixelů (8-okolí)
+        JCheckBox eightConnectedBox = new JCheckBox("8-okolí");
+        eightConnectedBox.setBackground(Color.DARK_GRAY);
+        eightConnectedBox.addActionListener(e -> onFillEightConnectedChange.accept(eightConnectedBox.isSelected()));
+        fillPanel.add(eightConnectedBox);
+        //tolerance barvy - 0 znamená jen přesně stejnou barvu
+        JSlider toleranceSlider = new JSlider(0, 128, 0);
+        toleranceSlider.setBackground(Color.DARK_GRAY);
+        toleranceSlider.setToolTipText("Tolerance barvy");
+        toleranceSlider.addChangeListener(e -> onFillToleranceChange.accept(toleranceSlider.getValue()));
+        fillPanel.add(toleranceSlider);
+        //způsob porovnání barev pro toleranci
+        String[] distances = {"Po kanálech", "Vzdálenost RGB"};
+        JComboBox<String> distanceCombo = new JComboBox<>(distances);
+        distanceCombo.addActionListener(e -> {
+            String selected = (String) distanceCombo.getSelectedItem();
+            switch (selected) {
+                case "Po kanálech" -> onFillDistanceChange.accept(ColorDistance.PER_CHANNEL);
+                case "Vzdálenost RGB" -> onFillDistanceChange.accept(ColorDistance.EUCLIDEAN);
+            }
+        });
+        fillPanel.add(distanceCombo);
 
 
         JPanel toolPanel = new JPanel(new GridLayout(2, 4, 3, 3));
@@ -156,6 +256,22 @@ public class ToolPanel extends JPanel {
         gbc.weighty = 1.0;
         add(toolPanel, gbc);
 
+
+        gbc.gridx = 3;
+        gbc.gridy = 0;
+        gbc.gridheight = 2;
+        gbc.weightx = 0.2;
+        gbc.weighty = 1.0;
+        add(fillPanel, gbc);
+
+
+        gbc.gridx = 4;
+        gbc.gridy = 0;
+        gbc.gridheight = 2;
+        gbc.weightx = 0.2;
+        gbc.weighty = 1.0;
+        add(brushPanel, gbc);
+
         //rozvržení mřížky - generováno primárně AI
         //funguje to podobně jako CSS
     }
@@ -0,0 +1,141 @@
+package ui;
+
+import model.Point;
+
+import java.awt.*;
+
+/*
+* Přiblížení a posun pohledu na plátno
+*
+* Měřítko je mocnina dvou od 1/32 do 32 (zoomShift -5 až 5), takže každé oddálení
+* odpovídá přesně jedné úrovni mipmapy (MipmapPyramid) a přiblížení je celý počet pixelů obrazovky na pixel plátna.
+* originX, originY je místo v okně, kde leží pixel plátna 0, 0.
+*
+* Všechny nástroje pracují v souřadnicích plátna - myš se převádí přes toCanvas,
+* damage plátna na obdélník okna přes toScreen*/
+final class Viewport {
+    static final int MIN_ZOOM_SHIFT = -5;
+    static final int MAX_ZOOM_SHIFT = 5;
+    //kolik pixelů okna z plátna musí zůstat vidět při posunu
+    private static final int KEEP_VISIBLE = 32;
+
+    private final int canvasWidth;
+    private final int canvasHeight;
+    private int zoomShift;
+    private int originX;
+    private int originY;
+    //velikost okna, do kterého se kreslí (0 dokud ji panel nenastaví)
+    private int viewWidth;
+    private int viewHeight;
+
+    Viewport(int canvasWidth, int canvasHeight) {
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+    }
+
+    void setViewSize(int width, int height) {
+        viewWidth = width;
+        viewHeight = height;
+    }
+
+    int getZoomShift() {
+        return zoomShift;
+    }
+
+    double getScale() {
+        return Math.scalb(1.0, zoomShift);
+    }
+
+    int getOriginX() {
+        return originX;
+    }
+
+    int getOriginY() {
+        return originY;
+    }
+
+    //úroveň mipmapy pro oddálený pohled, 0 při měřítku 1 a víc
+    int getMipLevel() {
+        return Math.max(0, -zoomShift);
+    }
+
+    /*Bod okna na pixel plátna, pod kterým leží
+    * při oddálení vrací prostřední pixel z těch, které se slily do jednoho pixelu okna*/
+    Point toCanvas(int screenX, int screenY) {
+        return new Point(toCanvasCoord(screenX - originX), toCanvasCoord(screenY - originY));
+    }
+
+    private int toCanvasCoord(int d) {
+        if (zoomShift >= 0) return d >> zoomShift;
+        int k = -zoomShift;
+        return (d << k) + (1 << (k - 1));
+    }
+
+    //obdélník plátna na obdélník okna, který ho celý pokryje
+    Rectangle toScreen(Rectangle canvasRect) {
+        int x0 = originX + scaleFloor(canvasRect.x);
+        int y0 = originY + scaleFloor(canvasRect.y);
+        int x1 = originX + scaleCeil(canvasRect.x + canvasRect.width);
+        int y1 = originY + scaleCeil(canvasRect.y + canvasRect.height);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    //obdélník okna (clip) na obdélník plátna, jehož pixely do něj zasahují
+    Rectangle toCanvas(Rectangle screenRect) {
+        int x0 = unscaleFloor(screenRect.x - originX);
+        int y0 = unscaleFloor(screenRect.y - originY);
+        int x1 = unscaleCeil(screenRect.x + screenRect.width - originX);
+        int y1 = unscaleCeil(screenRect.y + screenRect.height - originY);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    private int scaleFloor(int v) {
+        return zoomShift >= 0 ? v << zoomShift : v >> -zoomShift;
+    }
+
+    private int scaleCeil(int v) {
+        return zoomShift >= 0 ? v << zoomShift : -((-v) >> -zoomShift);
+    }
+
+    private int unscaleFloor(int v) {
+        return zoomShift >= 0 ? v >> zoomShift : v << -zoomShift;
+    }
+
+    private int unscaleCeil(int v) {
+        return zoomShift >= 0 ? -((-v) >> zoomShift) : v << -zoomShift;
+    }
+
+    /*Přiblíží (steps > 0) nebo oddálí (steps < 0) o steps dvojnásobků
+    * pixel plátna pod bodem okna screenX, screenY zůstane na místě
+    * vrací false, když už je měřítko na hranici*/
+    boolean zoomAt(int screenX, int screenY, int steps) {
+        int shift = Math.clamp(zoomShift + steps, MIN_ZOOM_SHIFT, MAX_ZOOM_SHIFT);
+        if (shift == zoomShift) return false;
+        double canvasX = (screenX - originX) / getScale();
+        double canvasY = (screenY - originY) / getScale();
+        zoomShift = shift;
+        originX = (int) Math.round(screenX - canvasX * getScale());
+        originY = (int) Math.round(screenY - canvasY * getScale());
+        clampOrigin();
+        return true;
+    }
+
+    void pan(int dx, int dy) {
+        originX += dx;
+        originY += dy;
+        clampOrigin();
+    }
+
+    //měřítko 1:1 a plátno v levém horním rohu okna
+    void reset() {
+        zoomShift = 0;
+        originX = 0;
+        originY = 0;
+    }
+
+    //plátno se nesmí odsunout celé z okna - na každé straně z něj zůstane vidět aspoň KEEP_VISIBLE pixelů okna
+    private void clampOrigin() {
+        originX = Math.clamp(originX, Math.min(0, KEEP_VISIBLE - scaleCeil(canvasWidth)), Math.max(0, viewWidth - KEEP_VISIBLE));
+        originY = Math.clamp(originY, Math.min(0, KEEP_VISIBLE - scaleCeil(canvasHeight)), Math.max(0, viewHeight - KEEP_VISIBLE));
+    }
+}